@@ -0,0 +1,306 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search results kept in a memory-mapped file, so what the engine learned survives a restart. The engine consults it
+ * behind its in-memory {@link TranspositionTable}: a deep node the table does not know is looked up here, and every
+ * deep node searched is stored here as well as in the table.
+ * <p>
+ * The file is a 16-byte header (the magic number, the record count and the number of times the file was opened)
+ * followed by a power-of-two number of 16-byte records, each holding a Zobrist hash and a transposition table entry
+ * (see {@link TranspositionTable#probe(long)}) whose spare top bits are a checksum of both. The records are an
+ * open-addressing hash table: a position goes in the first free record from the one its hash picks, looking at most
+ * {@link #PROBE_LENGTH} records along. Once those are all taken, a store replaces the one from the oldest run, then
+ * the shallowest, so the file never grows past the size it was created with.
+ * <p>
+ * Like the transposition table it is shared by every search thread without locks. A record torn by two threads
+ * writing at once, or by the process dying in the middle of a write, fails its checksum and reads as empty. Writes go
+ * to the mapped pages and a background thread flushes them to disk every few seconds, so the search never waits for
+ * the disk; {@link #close()} flushes what is left. Only one process can have a file open at a time.
+ * <p>
+ * The stored scores come from the evaluation that searched them, so a file should be cleared or deleted when the
+ * pattern weights change.
+ */
+public class AnalysisCache implements Closeable {
+    /** The shallowest remaining depth stored; shallower nodes are cheaper to search again than to keep on disk. */
+    public static final int MIN_DEPTH = 5;
+    /** The size of a new file in megabytes if none is given. */
+    public static final int DEFAULT_SIZE_MB = 256;
+    /** The most records a position may be placed along from the one its hash picks. */
+    static final int PROBE_LENGTH = 4;
+    static final int MAGIC = 0x4F414331;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 16;
+    private static final int MAX_SIZE_MB = 1024;
+    private static final long FLUSH_INTERVAL_SECONDS = 5;
+    /** The bits of a record's data word that hold the entry; the bits above hold the checksum. */
+    private static final int ENTRY_BITS = 41;
+    private static final long ENTRY_MASK = (1L << ENTRY_BITS) - 1;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int mask;
+    private final int generation;
+    private final ScheduledExecutorService flusher;
+    private volatile boolean dirty;
+    private volatile boolean closed;
+
+    private AnalysisCache(Path file, FileChannel channel, FileLock lock, MappedByteBuffer buffer, int capacity,
+            int generation) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.buffer = buffer;
+        this.generation = generation;
+        mask = capacity - 1;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "analysis-cache-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushIfDirty, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Opens a cache file, creating it if it does not exist.
+     * @param file The file.
+     * @param sizeMb The size of a new file in megabytes, rounded down to a power of two records. An existing file
+     *               keeps the size it was created with.
+     * @return The cache.
+     * @throws IOException If the file cannot be created or mapped, is not a cache, or is open in another process.
+     */
+    public static AnalysisCache open(Path file, int sizeMb) throws IOException {
+        if (sizeMb < 1 || sizeMb > MAX_SIZE_MB) {
+            throw new IllegalArgumentException("sizeMb must be from 1 to " + MAX_SIZE_MB);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            }
+            catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException(file + " is in use");
+            }
+            boolean created = channel.size() == 0;
+            int capacity;
+            if (created) {
+                capacity = (int) Long.highestOneBit(sizeMb * (1L << 20) / RECORD_BYTES);
+            }
+            else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                channel.read(header, 0);
+                capacity = header.getInt(4);
+                if (header.getInt(0) != MAGIC || capacity <= 0 || Integer.bitCount(capacity) != 1) {
+                    throw new IOException(file + " is not an analysis cache");
+                }
+                if (channel.size() < HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+                    throw new IOException(file + " is truncated");
+                }
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) capacity * RECORD_BYTES);
+            int generation = created ? 0 : (buffer.getInt(8) + 1) & 0xFF;
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, capacity);
+            buffer.putInt(8, generation);
+            buffer.force(0, HEADER_BYTES);
+            return new AnalysisCache(file, channel, lock, buffer, capacity, generation);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up a position.
+     * @param hash The Zobrist hash of the position.
+     * @return The entry in the format of {@link TranspositionTable#probe(long)}, to be read with its accessors, or
+     * {@link TranspositionTable#MISS}.
+     */
+    public long probe(long hash) {
+        int index = (int) hash & mask;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int offset = offset((index + i) & mask);
+            if (buffer.getLong(offset) == hash) {
+                long entry = entry(hash, buffer.getLong(offset + 8));
+                if (entry != TranspositionTable.MISS) {
+                    return entry;
+                }
+            }
+        }
+        return TranspositionTable.MISS;
+    }
+
+    /**
+     * Stores the result of searching a position. A position already stored is only replaced by a search at least as
+     * deep. Nothing is stored once the cache is closed.
+     * @param hash The Zobrist hash of the position.
+     * @param depth The depth the position was searched to.
+     * @param bound {@link TranspositionTable#EXACT}, {@link TranspositionTable#LOWER_BOUND} or
+     *              {@link TranspositionTable#UPPER_BOUND}.
+     * @param score The score found.
+     * @param move The best move found, or -1 if there is none.
+     */
+    public void store(long hash, int depth, int bound, int score, int move) {
+        if (closed) {
+            return;
+        }
+        int index = (int) hash & mask;
+        int victim = -1;
+        int victimPriority = Integer.MAX_VALUE;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int offset = offset((index + i) & mask);
+            long key = buffer.getLong(offset);
+            long entry = entry(key, buffer.getLong(offset + 8));
+            if (entry != TranspositionTable.MISS && key == hash) {
+                if (TranspositionTable.depth(entry) > depth) {
+                    return;
+                }
+                victim = offset;
+                break;
+            }
+            int priority = priority(entry);
+            if (priority < victimPriority) {
+                victim = offset;
+                victimPriority = priority;
+            }
+        }
+        long entry = TranspositionTable.pack(depth, bound, score, move, generation);
+        buffer.putLong(victim, hash);
+        buffer.putLong(victim + 8, entry | (long) checksum(hash, entry) << ENTRY_BITS);
+        dirty = true;
+    }
+
+    /**
+     * Returns how valuable a record is to keep; empty and damaged records are worth the least, then those from the
+     * oldest runs.
+     */
+    private int priority(long entry) {
+        if (entry == TranspositionTable.MISS) {
+            return Integer.MIN_VALUE;
+        }
+        int age = (generation - TranspositionTable.generation(entry)) & 0xFF;
+        return TranspositionTable.depth(entry) - 8 * age;
+    }
+
+    private static int offset(int record) {
+        return HEADER_BYTES + record * RECORD_BYTES;
+    }
+
+    /**
+     * Checks a record's data word against its key.
+     * @return The entry, or {@link TranspositionTable#MISS} if the record is empty or damaged.
+     */
+    private static long entry(long key, long data) {
+        long entry = data & ENTRY_MASK;
+        return (data >>> ENTRY_BITS) == checksum(key, entry) ? entry : TranspositionTable.MISS;
+    }
+
+    /**
+     * Mixes a key and an entry into the bits left above the entry, so a change to any bit of either changes it.
+     */
+    private static int checksum(long key, long entry) {
+        long x = key ^ Long.rotateLeft(entry * 0x9E3779B97F4A7C15L, 29);
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return (int) ((x ^ (x >>> 31)) >>> ENTRY_BITS);
+    }
+
+    /**
+     * Counts the records in use. It reads the whole file, so it is meant for reports rather than the search.
+     * @return The number of valid records.
+     */
+    public int size() {
+        int count = 0;
+        for (int record = 0; record <= mask; record++) {
+            int offset = offset(record);
+            if (entry(buffer.getLong(offset), buffer.getLong(offset + 8)) != TranspositionTable.MISS) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of records the file holds.
+     * @return The capacity of the cache.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the file the cache is kept in.
+     * @return The path of the file.
+     */
+    public Path returnFile() {
+        return file;
+    }
+
+    /**
+     * Empties the cache, for when the evaluation it was filled with has changed.
+     */
+    public synchronized void clear() {
+        for (int record = 0; record <= mask; record++) {
+            buffer.putLong(offset(record), 0);
+            buffer.putLong(offset(record) + 8, 0);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Writes every change so far to disk and waits until it is there.
+     */
+    public synchronized void flush() {
+        dirty = false;
+        buffer.force();
+    }
+
+    private void flushIfDirty() {
+        if (dirty) {
+            flush();
+        }
+    }
+
+    /**
+     * Stops the background flushes, writes what is left to disk and releases the file. Searches still running may go
+     * on probing, but store nothing more.
+     * @throws IOException If the file cannot be released.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        lock.release();
+        channel.close();
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link BotPlayer} on a background thread, so a user interface stays responsive however long the bot thinks.
+ * <p>
+ * Progress and the chosen move are handed to a {@link Listener} through a callback executor, for example
+ * {@code SwingUtilities::invokeLater} to receive them on the Event Dispatch Thread. A request can be cancelled at any
+ * time; once it is, none of its callbacks are delivered, even ones already queued.
+ * <p>
+ * While the opponent thinks, the bot can ponder: it searches the position after the reply it expects, with no time
+ * limit. If the opponent plays that reply (a ponder hit), the running search becomes the answer: the time already
+ * spent pondering counts towards the usual time limit, so the bot answers sooner at the same depth, or at once if the
+ * ponder search used up the limit or finished. Otherwise the ponder search is stopped, and the new search starts with
+ * the results it left in the transposition table.
+ */
+public class AsyncBot {
+    private final BotPlayer bot;
+    private final Executor callbackExecutor;
+    private final ExecutorService searchThread;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong generation = new AtomicLong();
+    // The current ponder search, guarded by this object's lock.
+    private long ponderId = -1;
+    private Othello ponderPosition;
+    private SearchResult ponderResult;
+    private Listener ponderListener;
+    private long ponderStartNanos;
+    private int ponderHits;
+    private int ponderMisses;
+
+    /**
+     * Receives the progress and result of a move request.
+     */
+    public interface Listener {
+        /**
+         * Called after every completed search iteration.
+         * @param progress The deepest result so far.
+         */
+        void progress(SearchResult progress);
+
+        /**
+         * Called once the bot has chosen its move.
+         * @param result The final result, with the move as its best move ({@link Bitboard#PASS} if there are no
+         *               legal moves).
+         */
+        void moveChosen(SearchResult result);
+    }
+
+    /**
+     * Constructor for an asynchronous bot.
+     * @param bot The bot to choose moves with. It must not be used elsewhere while this wrapper uses it.
+     * @param callbackExecutor Where listener callbacks are run.
+     */
+    public AsyncBot(BotPlayer bot, Executor callbackExecutor) {
+        this.bot = bot;
+        this.callbackExecutor = callbackExecutor;
+        searchThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bot-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bot-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts choosing a move for a position, cancelling any earlier request unless it is a ponder search of this very
+     * position.
+     * @param position The position to move in. It is copied, so the caller may keep changing it.
+     * @param listener The listener to deliver progress and the move to.
+     */
+    public void think(Othello position, Listener listener) {
+        synchronized (this) {
+            long id = ponderId;
+            if (id == generation.get() && ponderPosition != null && samePosition(ponderPosition, position)) {
+                ponderHits++;
+                ponderPosition = null;
+                if (ponderResult != null) {
+                    SearchResult result = ponderResult;
+                    deliver(id, () -> listener.moveChosen(result));
+                    return;
+                }
+                ponderListener = listener;
+                bot.setProgressListener(progress -> deliver(id, () -> listener.progress(progress)));
+                long limit = bot.returnTimeLimitMillis();
+                if (limit > 0) {
+                    long remaining = limit * 1_000_000L - (System.nanoTime() - ponderStartNanos);
+                    timer.schedule(() -> {
+                        if (generation.get() == id) {
+                            bot.stop();
+                        }
+                    }, Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+            if (id == generation.get()) {
+                ponderMisses++;
+            }
+        }
+        long id = cancel();
+        Othello copy = new Othello(position);
+        searchThread.execute(() -> {
+            // The stop of an earlier request is withdrawn before this one is checked, so a cancel that comes after
+            // the check still reaches the search.
+            bot.resetStop();
+            if (generation.get() != id) {
+                return;
+            }
+            bot.setProgressListener(progress -> deliver(id, () -> listener.progress(progress)));
+            int move;
+            try {
+                move = bot.chooseSquare(copy);
+            }
+            finally {
+                bot.setProgressListener(null);
+            }
+            SearchResult result = bot.returnLastResult() != null ? bot.returnLastResult()
+                    : new SearchResult(move, 0, 0, 0, 0, new int[] {move});
+            deliver(id, () -> listener.moveChosen(result));
+        });
+    }
+
+    /**
+     * Starts choosing a move on a board of another size than 8 by 8, cancelling any earlier request. Only the chosen
+     * move is delivered; the search of such boards reports no progress.
+     * @param position The position to move in. It is copied, so the caller may keep changing it.
+     * @param listener The listener to deliver the move to, with {@link SizedOthello#PASS} if there are no legal
+     *                 moves.
+     */
+    public void think(SizedOthello position, Listener listener) {
+        long id = cancel();
+        SizedOthello copy = new SizedOthello(position);
+        searchThread.execute(() -> {
+            bot.resetStop();
+            if (generation.get() != id) {
+                return;
+            }
+            int move = bot.chooseSquare(copy);
+            SearchResult result = bot.returnLastResult() != null ? bot.returnLastResult()
+                    : new SearchResult(move, 0, 0, 0, 0, new int[] {move});
+            deliver(id, () -> listener.moveChosen(result));
+        });
+    }
+
+    /**
+     * Starts pondering while the opponent is to move, cancelling any earlier request.
+     * @param position The position with the opponent to move. It is copied, so the caller may keep changing it.
+     * @param expectedReply The square the opponent is expected to play, usually the second move of the bot's last
+     *                      principal variation, or -1 if there is no guess. Without a legal guess the bot searches the
+     *                      opponent's position instead, which still fills the transposition table for its replies.
+     */
+    public void ponder(Othello position, int expectedReply) {
+        long id = cancel();
+        Othello copy = new Othello(position);
+        boolean guessed = expectedReply >= 0 && expectedReply < 64
+                && (copy.legalMoves() & (1L << expectedReply)) != 0;
+        if (guessed) {
+            copy.makeMove(expectedReply >>> 3, expectedReply & 7);
+        }
+        synchronized (this) {
+            ponderId = id;
+            ponderPosition = guessed ? copy : null;
+            ponderResult = null;
+            ponderListener = null;
+            ponderStartNanos = System.nanoTime();
+        }
+        searchThread.execute(() -> {
+            bot.resetStop();
+            if (generation.get() != id) {
+                return;
+            }
+            SearchResult result;
+            try {
+                result = bot.ponder(new Othello(copy));
+            }
+            finally {
+                bot.setProgressListener(null);
+            }
+            synchronized (this) {
+                if (ponderId == id) {
+                    ponderResult = result;
+                    Listener listener = ponderListener;
+                    if (listener != null) {
+                        deliver(id, () -> listener.moveChosen(result));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the current request, if there is one. Its search is stopped and its callbacks are dropped.
+     * @return The id of the next request.
+     */
+    public long cancel() {
+        long id = generation.incrementAndGet();
+        bot.stop();
+        return id;
+    }
+
+    /**
+     * Returns how many moves were answered from a ponder search of the right position.
+     * @return The number of ponder hits.
+     */
+    public synchronized int returnPonderHits() {
+        return ponderHits;
+    }
+
+    /**
+     * Returns how many moves were asked for while pondering a different position.
+     * @return The number of ponder misses.
+     */
+    public synchronized int returnPonderMisses() {
+        return ponderMisses;
+    }
+
+    /**
+     * Cancels the current request and stops the background threads.
+     */
+    public void shutdown() {
+        cancel();
+        searchThread.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Runs a callback on the callback executor unless its request has been cancelled by then.
+     */
+    private void deliver(long id, Runnable callback) {
+        if (generation.get() == id) {
+            callbackExecutor.execute(() -> {
+                if (generation.get() == id) {
+                    callback.run();
+                }
+            });
+        }
+    }
+
+    private static boolean samePosition(Othello a, Othello b) {
+        return a.returnWhiteDiscs() == b.returnWhiteDiscs() && a.returnBlackDiscs() == b.returnBlackDiscs()
+                && a.returnPlayer() == b.returnPlayer();
+    }
+}
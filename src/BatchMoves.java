@@ -0,0 +1,95 @@
+/**
+ * Move generation for many independent positions at once, for self-play, training and analysis jobs that handle
+ * large numbers of positions rather than one game. Positions are passed as structure-of-arrays bitboards: element i
+ * of a players array and of an opponents array together make position i, with the same layout as {@link Bitboard}.
+ * <p>
+ * When the JVM runs with the incubating Vector API ("--add-modules jdk.incubator.vector", which compiling this class's
+ * vector kernels also needs) and the processor has SIMD registers of at least two longs, each operation processes a
+ * whole register of positions per instruction (see {@link VectorBatchMoves}); otherwise, and for the positions left
+ * over after the last full register, it falls back to calling {@link Bitboard} once per position. Both give the same
+ * results.
+ */
+public final class BatchMoves {
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorBatchMoves.isUseful();
+
+    private BatchMoves() {
+    }
+
+    /**
+     * Checks if the operations use the Vector API.
+     * @return true if the positions are processed in SIMD lanes, false if one at a time.
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Finds the legal moves of the player to move in every position.
+     * @param players The pieces of the player to move, one element per position.
+     * @param opponents The pieces of the other player, one element per position.
+     * @param moves Filled with a mask of the legal moves of each position.
+     * @param count The number of positions, from the start of the arrays.
+     */
+    public static void legalMoves(long[] players, long[] opponents, long[] moves, int count) {
+        int from = VECTORIZED ? VectorBatchMoves.legalMoves(players, opponents, moves, count) : 0;
+        legalMovesScalar(players, opponents, moves, from, count);
+    }
+
+    /**
+     * Finds the opposing pieces flipped by one move in every position.
+     * @param players The pieces of the player to move, one element per position.
+     * @param opponents The pieces of the other player, one element per position.
+     * @param squares The empty square each player moves to, or {@link Bitboard#PASS} for a position with no move.
+     * @param flipped Filled with a mask of the pieces each move flips, 0 for a pass or a move that is not legal.
+     * @param count The number of positions, from the start of the arrays.
+     */
+    public static void flips(long[] players, long[] opponents, int[] squares, long[] flipped, int count) {
+        int from = VECTORIZED ? VectorBatchMoves.flips(players, opponents, squares, flipped, count) : 0;
+        flipsScalar(players, opponents, squares, flipped, from, count);
+    }
+
+    /**
+     * Counts the squares set in every bitboard, such as the discs of each position's player or its legal moves.
+     * @param boards The bitboards.
+     * @param counts Filled with the number of squares set in each bitboard.
+     * @param count The number of bitboards, from the start of the arrays.
+     */
+    public static void counts(long[] boards, int[] counts, int count) {
+        int from = VECTORIZED ? VectorBatchMoves.counts(boards, counts, count) : 0;
+        countsScalar(boards, counts, from, count);
+    }
+
+    /**
+     * Finds the legal moves of a range of positions one at a time.
+     * @param from The first position.
+     * @param to One past the last position.
+     */
+    static void legalMovesScalar(long[] players, long[] opponents, long[] moves, int from, int to) {
+        for (int i = from; i < to; i++) {
+            moves[i] = Bitboard.legalMoves(players[i], opponents[i]);
+        }
+    }
+
+    /**
+     * Finds the flips of a range of positions one at a time.
+     * @param from The first position.
+     * @param to One past the last position.
+     */
+    static void flipsScalar(long[] players, long[] opponents, int[] squares, long[] flipped, int from, int to) {
+        for (int i = from; i < to; i++) {
+            flipped[i] = squares[i] == Bitboard.PASS ? 0 : Bitboard.flips(squares[i], players[i], opponents[i]);
+        }
+    }
+
+    /**
+     * Counts the squares of a range of bitboards one at a time.
+     * @param from The first bitboard.
+     * @param to One past the last bitboard.
+     */
+    static void countsScalar(long[] boards, int[] counts, int from, int to) {
+        for (int i = from; i < to; i++) {
+            counts[i] = Long.bitCount(boards[i]);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Microbenchmarks for the engine hot paths: move generation, applying a move, playing out a whole game, reducing a
+ * position to its canonical symmetric form, evaluation and bot move selection, each over a fixed corpus of midgame and
+ * endgame positions. The "batch" benchmarks time {@link BatchMoves} on batches of {@value #BATCH_SIZE} positions, so
+ * their rates are batches per second; run with "--add-modules jdk.incubator.vector" to time the vector kernels.
+ * <p>
+ * Every benchmark is warmed up and then timed over several fixed-length iterations, reporting the mean throughput,
+ * its 99.9% confidence half-width and the bytes allocated per operation (the same figure JMH's "-prof gc" reports as
+ * gc.alloc.rate.norm). Results can be written as JSON in the layout JMH uses for "-rf json" so existing tooling can
+ * track regressions.
+ */
+public class Benchmarks {
+    /** Positions 24 to 31 plies into random games. */
+    static final String[] MIDGAME = {
+            "----------X-X-X--OOX-XX--OOOXXX--XOOXXO---OOOXOO-----XX--------- O",
+            "----------O-OX----XOXO----XXO-O--OXXXXXXO--X-OO---OXXO---O---O-- O",
+            "-X-X-O-X--XXOOOO--XOOOOO--OXXX-O---OX------XXXX----X------------ O",
+            "-XXX--X---XXOX---X-XOO---XXXOXX--XOOXXO----XX--O--X------------- O",
+            "-X-O------O--O--XOOOOO---XOOOO-X--XOXXX----OXXX----O-X--------X- O",
+            "--OO--X--X-OOX--OOXOXOO---OXX--O-O-XXXOX--X--X---X---X---------- O",
+            "---XO----XXXO---OOOXO-X---XOXOXX--XXXXXX--X-XOO----------------- O",
+            "----------O--X----O--X----OOOXX--OOOOXXO---XXXO---XOOOOO---X-X-- O",
+            "--O--O--OOO-O----OXXX---X-OXXXX-XXXOX---XXXXXXXXX-X--OOO---X---- X",
+            "--O----X--OOXOX----OOOXX-O-OOOX-XOOOOOOO-OXOXO---O-OO------OX--- X",
+            "--O-----X--O-----XOXOOO---XXO-O--XXXOXOO-XXXO-O--XXOOO-X--OOOO-- X",
+            "--O------O------OXOOO----XXXXX--OXXXXX--OXXXXXOO-XXXX-X---X-OX-X X",
+    };
+    /** Positions 47 or 48 plies into random games, with 10 to 16 empty squares. */
+    static final String[] ENDGAME = {
+            "X----O--OX---OOOXOXX-XOXXXOOXXOXXOXOXXOXXOOXOOO-XOO-XOOXXXXXXXXO O",
+            "-X-X-XX--XXOXOXOX-XXOOXOXXOXXOX-XXOXXOXO-OXOOOOO-XOXOO-OXXXXO-O- O",
+            "XXXXOOO-XXXXX-O-XXOXOXX-XXXXXXX-XXXOOX--XXOXOXX-XXXOOX--OXX-OXX- O",
+            "OOOOO---O-OOOOX--XXXOXOXXXXOXOOO-XOXOOOOXXXXOXOOXXOOXXOO--O-O--O O",
+            "-OX-O-XXXX-XOXXXXXXXXOOXXXOOOOXO-OXOOOOOOXX-XOOOOOXXXXO-O---X--O O",
+            "-XXXX--XXXXOOOXOXXXOOX--XOXXXXOXXXOXXXOOX-XOOOOO-XO-OOXX--OOX--X O",
+            "-XXXXXXXOOOOX-XO-OOXOXOXXOXXXXXXOXOOOOXX--XXXXXXXOXX----OXXXX--- O",
+            "--XOXXXX--OOOXXXXXXXXXXX-XXXOXX-OXOXOXOX-XXXXOOX---OOOOX--XXXXXX O",
+            "-OXXOOOO-OXOOOO-XXOXXOX-XXXOOOX-XXOOXOX-XOXOOOX---XXXOO--XXXX--O X",
+            "OOOOXXXX-OOOXXXX-OOOXXXOXOOXXXXO-OXOXOOO-O--XOOO-O-OXOOO----XX-O O",
+            "XXXXXXOOXXOXXXO-XXXXXXXX-OOOXXX-OOOOXXXXOOOOOXX---O-X-X----OOOO- X",
+            "---XXX-XOOXXX-X-XXOXXX---OOOX-X-OOOOOOOOXXXXXXX--XXXXXXXXXXXXXXO X",
+    };
+    private static final double Z_999 = 3.29;
+    /** The number of positions in each operation of the batch benchmarks. */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * One benchmarked operation. It returns a value that depends on its work so the JIT cannot remove it.
+     */
+    interface Operation {
+        long run();
+    }
+
+    /**
+     * The measured throughput and allocation of one benchmark.
+     */
+    static class Result {
+        final String name;
+        final double opsPerSecond;
+        final double error;
+        final double bytesPerOp;
+        final int iterations;
+
+        Result(String name, double opsPerSecond, double error, double bytesPerOp, int iterations) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+            this.iterations = iterations;
+        }
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final Pattern filter;
+    private final List<Result> results = new ArrayList<>();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private long sink;
+
+    /**
+     * Constructor for a benchmark run.
+     * @param warmupIterations The number of untimed iterations before measuring.
+     * @param measurementIterations The number of timed iterations.
+     * @param iterationMillis The length of each iteration.
+     * @param filter Only benchmarks whose name matches this pattern are run.
+     */
+    Benchmarks(int warmupIterations, int measurementIterations, long iterationMillis, Pattern filter) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        this.filter = filter;
+    }
+
+    /**
+     * Reads a corpus of positions.
+     * @param corpus Positions in the format read by {@link Othello#Othello(String)}.
+     * @return The positions.
+     */
+    static Othello[] load(String[] corpus) {
+        Othello[] positions = new Othello[corpus.length];
+        for (int i = 0; i < corpus.length; i++) {
+            positions[i] = new Othello(corpus[i]);
+        }
+        return positions;
+    }
+
+    /**
+     * Plays random games on a larger board to build a corpus for it, stopping each when about 40% of the squares are
+     * filled.
+     * @param size The board size.
+     * @param count The number of positions.
+     * @return The positions, the same on every run.
+     */
+    static SizedOthello[] wideCorpus(int size, int count) {
+        Random random = new Random(size);
+        SizedOthello[] positions = new SizedOthello[count];
+        long[] moves = new long[WideBitboard.forSize(size).returnWords()];
+        for (int i = 0; i < count; i++) {
+            SizedOthello position = new SizedOthello(size);
+            for (int filled = 4; filled < size * size * 2 / 5 && !position.isGameOver(); ) {
+                position.legalMoves(moves);
+                if (WideBitboard.isEmpty(moves)) {
+                    position.pass();
+                    continue;
+                }
+                int square = WideBitboard.nthSquare(moves, random.nextInt(WideBitboard.count(moves)));
+                position.makeMove(square / size, square % size);
+                filled++;
+            }
+            positions[i] = position;
+        }
+        return positions;
+    }
+
+    /**
+     * Measures one operation, if its name passes the filter.
+     * @param name The name to report the benchmark under.
+     * @param operation The operation to time.
+     */
+    void run(String name, Operation operation) {
+        if (!filter.matcher(name).find()) {
+            return;
+        }
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+        double[] rates = new double[measurementIterations];
+        long totalOps = 0;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < measurementIterations; i++) {
+            long start = System.nanoTime();
+            long ops = iteration(operation);
+            rates[i] = ops * 1e9 / (System.nanoTime() - start);
+            totalOps += ops;
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate;
+        }
+        mean /= rates.length;
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean);
+        }
+        double error = rates.length > 1 ? Z_999 * Math.sqrt(variance / (rates.length - 1) / rates.length) : 0;
+        Result result = new Result(name, mean, error, (double) allocated / totalOps, rates.length);
+        results.add(result);
+        System.out.printf("%-28s %16.1f +- %12.1f ops/s %10.1f B/op%n", name, mean, error, result.bytesPerOp);
+    }
+
+    /**
+     * Runs an operation in batches until one iteration's time is up.
+     * @return The number of times the operation ran.
+     */
+    private long iteration(Operation operation) {
+        long deadline = System.nanoTime() + iterationNanos;
+        long ops = 0;
+        long batch = 1;
+        do {
+            for (long i = 0; i < batch; i++) {
+                sink += operation.run();
+            }
+            ops += batch;
+            if (batch < 1 << 16) {
+                batch <<= 1;
+            }
+        } while (System.nanoTime() < deadline);
+        return ops;
+    }
+
+    /**
+     * Writes the results as a JSON array in JMH's result-file layout.
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void writeJson(String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                out.println("    {");
+                out.printf("        \"benchmark\" : \"%s\",%n", r.name);
+                out.println("        \"mode\" : \"thrpt\",");
+                out.printf("        \"measurementIterations\" : %d,%n", r.iterations);
+                out.printf("        \"measurementTime\" : \"%d ms\",%n", iterationNanos / 1_000_000);
+                out.println("        \"primaryMetric\" : {");
+                out.printf("            \"score\" : %.3f,%n", r.opsPerSecond);
+                out.printf("            \"scoreError\" : %.3f,%n", r.error);
+                out.println("            \"scoreUnit\" : \"ops/s\"");
+                out.println("        },");
+                out.println("        \"secondaryMetrics\" : {");
+                out.println("            \"gc.alloc.rate.norm\" : {");
+                out.printf("                \"score\" : %.3f,%n", r.bytesPerOp);
+                out.println("                \"scoreUnit\" : \"B/op\"");
+                out.println("            }");
+                out.println("        }");
+                out.println(i + 1 < results.size() ? "    }," : "    }");
+            }
+            out.println("]");
+        }
+    }
+
+    /**
+     * Registers and runs every benchmark.
+     */
+    void runAll() {
+        Othello[] midgame = load(MIDGAME);
+        Othello[] endgame = load(ENDGAME);
+        Othello[] all = new Othello[midgame.length + endgame.length];
+        System.arraycopy(midgame, 0, all, 0, midgame.length);
+        System.arraycopy(endgame, 0, all, midgame.length, endgame.length);
+        long[] players = new long[all.length];
+        long[] opponents = new long[all.length];
+        for (int i = 0; i < all.length; i++) {
+            boolean white = all[i].returnPlayer();
+            players[i] = white ? all[i].returnWhiteDiscs() : all[i].returnBlackDiscs();
+            opponents[i] = white ? all[i].returnBlackDiscs() : all[i].returnWhiteDiscs();
+        }
+        int[] next = new int[1];
+
+        run("movegen.bitboard", () -> {
+            int i = next[0]++ % all.length;
+            return Bitboard.legalMoves(players[i], opponents[i]);
+        });
+        run("movegen.isValidScan", () -> {
+            Othello position = all[next[0]++ % all.length];
+            long moves = 0;
+            for (int row = 0; row < 8; row++) {
+                for (int column = 0; column < 8; column++) {
+                    if (position.isValid(row, column)) {
+                        moves |= 1L << Bitboard.square(row, column);
+                    }
+                }
+            }
+            return moves;
+        });
+        int[] squares = new int[64];
+        run("movegen.squareList", () -> {
+            Othello position = all[next[0]++ % all.length];
+            int count = position.legalMoves(squares);
+            return count == 0 ? 0 : squares[count - 1];
+        });
+        for (int size : new int[] {8, 10, 16}) {
+            SizedOthello[] wide = wideCorpus(size, 16);
+            long[] wideMoves = new long[wide[0].returnLayout().returnWords()];
+            run("movegen.wide" + size, () -> {
+                wide[next[0]++ % wide.length].legalMoves(wideMoves);
+                return wideMoves[0];
+            });
+        }
+        // Checking every square of the largest board on its own, for comparison with the shifts above.
+        SizedOthello[] wide16 = wideCorpus(16, 16);
+        run("movegen.wide16.isValidScan", () -> {
+            SizedOthello position = wide16[next[0]++ % wide16.length];
+            long count = 0;
+            for (int row = 0; row < 16; row++) {
+                for (int column = 0; column < 16; column++) {
+                    if (position.isValid(row, column)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        });
+        // Batches of positions from random games, one operation being a whole batch.
+        Random batchRandom = new Random(20240901L);
+        long[] batchPlayers = new long[BATCH_SIZE];
+        long[] batchOpponents = new long[BATCH_SIZE];
+        Othello[] batchPositions = new Othello[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batchPositions[i] = SmpBenchmark.randomPosition(batchRandom, 8 + batchRandom.nextInt(44));
+            boolean white = batchPositions[i].returnPlayer();
+            batchPlayers[i] = white ? batchPositions[i].returnWhiteDiscs() : batchPositions[i].returnBlackDiscs();
+            batchOpponents[i] = white ? batchPositions[i].returnBlackDiscs() : batchPositions[i].returnWhiteDiscs();
+        }
+        long[] batchMoves = new long[BATCH_SIZE];
+        long[] batchFlipped = new long[BATCH_SIZE];
+        int[] batchSquares = new int[BATCH_SIZE];
+        int[] batchCounts = new int[BATCH_SIZE];
+        BatchMoves.legalMoves(batchPlayers, batchOpponents, batchMoves, BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batchSquares[i] = batchMoves[i] == 0 ? Bitboard.PASS : Long.numberOfTrailingZeros(batchMoves[i]);
+        }
+        String batchKind = BatchMoves.isVectorized() ? ".vector" : ".fallback";
+        run("batch.legalMoves" + batchKind, () -> {
+            BatchMoves.legalMoves(batchPlayers, batchOpponents, batchMoves, BATCH_SIZE);
+            return batchMoves[next[0]++ % BATCH_SIZE];
+        });
+        run("batch.legalMoves.scalar", () -> {
+            BatchMoves.legalMovesScalar(batchPlayers, batchOpponents, batchMoves, 0, BATCH_SIZE);
+            return batchMoves[next[0]++ % BATCH_SIZE];
+        });
+        // The per-position path the batches replace, checking each square of each board on its own.
+        run("batch.legalMoves.isValidScan", () -> {
+            long total = 0;
+            for (Othello position : batchPositions) {
+                for (int row = 0; row < 8; row++) {
+                    for (int column = 0; column < 8; column++) {
+                        if (position.isValid(row, column)) {
+                            total += Bitboard.square(row, column);
+                        }
+                    }
+                }
+            }
+            return total;
+        });
+        run("batch.flips" + batchKind, () -> {
+            BatchMoves.flips(batchPlayers, batchOpponents, batchSquares, batchFlipped, BATCH_SIZE);
+            return batchFlipped[next[0]++ % BATCH_SIZE];
+        });
+        run("batch.flips.scalar", () -> {
+            BatchMoves.flipsScalar(batchPlayers, batchOpponents, batchSquares, batchFlipped, 0, BATCH_SIZE);
+            return batchFlipped[next[0]++ % BATCH_SIZE];
+        });
+        run("batch.counts" + batchKind, () -> {
+            BatchMoves.counts(batchPlayers, batchCounts, BATCH_SIZE);
+            return batchCounts[next[0]++ % BATCH_SIZE];
+        });
+        run("batch.counts.scalar", () -> {
+            BatchMoves.countsScalar(batchPlayers, batchCounts, 0, BATCH_SIZE);
+            return batchCounts[next[0]++ % BATCH_SIZE];
+        });
+        run("makemove.flips", () -> {
+            int i = next[0]++ % all.length;
+            long total = 0;
+            for (long moves = Bitboard.legalMoves(players[i], opponents[i]); moves != 0; moves &= moves - 1) {
+                total += Bitboard.flips(Long.numberOfTrailingZeros(moves), players[i], opponents[i]);
+            }
+            return total;
+        });
+        run("makemove.makeUndo", () -> {
+            Othello position = all[next[0]++ % all.length];
+            long total = 0;
+            for (long moves = position.legalMoves(); moves != 0; moves &= moves - 1) {
+                int square = Long.numberOfTrailingZeros(moves);
+                position.makeMove(square >>> 3, square & 7);
+                total += position.returnHash();
+                position.undoMove();
+            }
+            return total;
+        });
+        long[] seed = {0x9E3779B97F4A7C15L};
+        run("playout.game", () -> {
+            Othello game = new Othello();
+            while (game.areThereAnyMoves()) {
+                if (!game.playerHasMoves()) {
+                    continue;
+                }
+                long moves = game.legalMoves();
+                seed[0] ^= seed[0] << 13;
+                seed[0] ^= seed[0] >>> 7;
+                seed[0] ^= seed[0] << 17;
+                for (int skip = (int) ((seed[0] >>> 1) % Long.bitCount(moves)); skip > 0; skip--) {
+                    moves &= moves - 1;
+                }
+                int square = Long.numberOfTrailingZeros(moves);
+                game.makeMove(square >>> 3, square & 7);
+            }
+            return game.returnFinalScores()[0];
+        });
+        long[] canonical = new long[2];
+        run("symmetry.canonicalize", () -> {
+            int i = next[0]++ % all.length;
+            return Symmetry.canonicalize(players[i], opponents[i], canonical) + canonical[0] + canonical[1];
+        });
+        // The straightforward way, applying each symmetry to both bitboards from scratch, for comparison.
+        run("symmetry.transformEach", () -> {
+            int i = next[0]++ % all.length;
+            long bestPlayer = players[i];
+            long bestOpponent = opponents[i];
+            for (int s = 1; s < Symmetry.COUNT; s++) {
+                long p = Symmetry.transform(players[i], s);
+                long o = Symmetry.transform(opponents[i], s);
+                int order = Long.compareUnsigned(p, bestPlayer);
+                if (order < 0 || (order == 0 && Long.compareUnsigned(o, bestOpponent) < 0)) {
+                    bestPlayer = p;
+                    bestOpponent = o;
+                }
+            }
+            return bestPlayer + bestOpponent;
+        });
+        run("symmetry.canonicalPosition", () -> CanonicalPosition.of(all[next[0]++ % all.length]).hashCode());
+        run("eval.static", () -> {
+            int i = next[0]++ % all.length;
+            return Evaluation.evaluate(players[i], opponents[i]);
+        });
+        PatternWeights weights = PatternWeights.defaultWeights();
+        PatternEvaluator[] patterns = new PatternEvaluator[all.length];
+        for (int i = 0; i < all.length; i++) {
+            patterns[i] = new PatternEvaluator(weights);
+            patterns[i].setPosition(all[i].returnWhiteDiscs(), all[i].returnBlackDiscs());
+        }
+        run("eval.pattern", () -> {
+            int i = next[0]++ % all.length;
+            return patterns[i].evaluate(all[i].returnPlayer(), players[i], opponents[i]);
+        });
+        run("eval.patternMakeUndo", () -> {
+            int i = next[0]++ % all.length;
+            long moves = Bitboard.legalMoves(players[i], opponents[i]);
+            if (moves == 0) {
+                return 0;
+            }
+            int square = Long.numberOfTrailingZeros(moves);
+            long flipped = Bitboard.flips(square, players[i], opponents[i]);
+            boolean white = all[i].returnPlayer();
+            patterns[i].makeMove(square, flipped, white);
+            int score = patterns[i].evaluate(!white, opponents[i] & ~flipped, players[i] | flipped | (1L << square));
+            patterns[i].undoMove(square, flipped, white);
+            return score;
+        });
+        run("eval.finalScores", () -> all[next[0]++ % all.length].returnFinalScores()[1]);
+        BotPlayer heuristic = new BotPlayer(null);
+        run("bot.heuristic", () -> heuristic.chooseSquare(midgame[next[0]++ % midgame.length]));
+        // The table is cleared before every move so repeated positions are searched rather than looked up.
+        SearchEngine engine = new SearchEngine(5, 0, 1, 1);
+        BotPlayer searching = new BotPlayer(engine);
+        run("bot.search5.midgame", () -> {
+            engine.returnTable().clear();
+            int[] move = searching.chooseMove(midgame[next[0]++ % midgame.length]);
+            return move == null ? 0 : move[0];
+        });
+        run("bot.search5.endgame", () -> {
+            engine.returnTable().clear();
+            int[] move = searching.chooseMove(endgame[next[0]++ % endgame.length]);
+            return move == null ? 0 : move[0];
+        });
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Runs the benchmarks from the command line.
+     * @param args Any of "-json FILE" to write the results, "-filter REGEX" to pick benchmarks, "-warmup N",
+     *             "-iterations N" and "-time MS" for the iteration count and length.
+     * @throws IOException If the JSON file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        String json = null;
+        String filter = "";
+        int warmup = 5;
+        int iterations = 5;
+        long time = 1000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-json":
+                    json = args[++i];
+                    break;
+                case "-filter":
+                    filter = args[++i];
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    time = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Benchmarks benchmarks = new Benchmarks(warmup, iterations, time, Pattern.compile(filter));
+        benchmarks.runAll();
+        if (json != null) {
+            benchmarks.writeJson(json);
+        }
+    }
+}
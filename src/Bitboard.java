@@ -0,0 +1,223 @@
+/**
+ * Bitboard move generation for an 8 by 8 Othello board.
+ * A position is stored as two longs, one per color, where bit (row * 8 + column) is set if that color has a piece on
+ * that square. Legal moves and flips are found by shifting whole boards at once instead of walking one square at a time.
+ */
+public final class Bitboard {
+    /** Every square except those in column 0, used to stop shifts towards higher columns from wrapping around. */
+    public static final long NOT_COLUMN_0 = 0xFEFEFEFEFEFEFEFEL;
+    /** Every square except those in column 7, used to stop shifts towards lower columns from wrapping around. */
+    public static final long NOT_COLUMN_7 = 0x7F7F7F7F7F7F7F7FL;
+    /** Every square except those in columns 0 and 7. */
+    private static final long INNER_COLUMNS = 0x7E7E7E7E7E7E7E7EL;
+    /** The four corners. */
+    public static final long CORNERS = 0x8100000000000081L;
+    /** The squares next to a corner, diagonally (the X-squares proper) and along the edges. */
+    public static final long X_SQUARES = 0x42C300000000C342L;
+    /** The pseudo square index used to record a pass in move lists and principal variations. */
+    public static final int PASS = 64;
+
+    private Bitboard() {
+    }
+
+    /**
+     * Returns the square index for a row and column.
+     * @param row The row of the square.
+     * @param column The column of the square.
+     * @return The index of the square, from 0 to 63.
+     */
+    public static int square(int row, int column) {
+        return row * 8 + column;
+    }
+
+    /**
+     * Returns the usual name of a square, with columns a to h and rows 1 to 8.
+     * @param square The index of the square, or {@link #PASS}.
+     * @return The name of the square, for example "d3", or "pass".
+     */
+    public static String squareName(int square) {
+        if (square == PASS) {
+            return "pass";
+        }
+        return "" + (char) ('a' + (square & 7)) + (char) ('1' + (square >>> 3));
+    }
+
+    /**
+     * Lists the squares of a mask in increasing order.
+     * @param mask The squares to list.
+     * @param squares Filled with the index of every square in the mask. It must have room for all of them; 64 is
+     *                always enough.
+     * @return The number of squares written.
+     */
+    public static int toSquares(long mask, int[] squares) {
+        int count = 0;
+        for (; mask != 0; mask &= mask - 1) {
+            squares[count++] = Long.numberOfTrailingZeros(mask);
+        }
+        return count;
+    }
+
+    /**
+     * Finds the square of the n-th lowest set bit of a mask.
+     * @param mask The squares to choose from.
+     * @param n The position of the square to find, from 0 to one less than the number of squares in the mask.
+     * @return The index of the square.
+     */
+    public static int nthSquare(long mask, int n) {
+        for (; n > 0; n--) {
+            mask &= mask - 1;
+        }
+        return Long.numberOfTrailingZeros(mask);
+    }
+
+    /**
+     * Finds all legal moves for a player.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @return A mask with a bit set for every square the player can legally move to.
+     */
+    public static long legalMoves(long player, long opponent) {
+        long empty = ~(player | opponent);
+        long inner = opponent & INNER_COLUMNS;
+        long moves = 0;
+        long t;
+
+        // right (column + 1)
+        t = inner & (player << 1);
+        t |= inner & (t << 1);
+        t |= inner & (t << 1);
+        t |= inner & (t << 1);
+        t |= inner & (t << 1);
+        t |= inner & (t << 1);
+        moves |= t << 1;
+        // left (column - 1)
+        t = inner & (player >>> 1);
+        t |= inner & (t >>> 1);
+        t |= inner & (t >>> 1);
+        t |= inner & (t >>> 1);
+        t |= inner & (t >>> 1);
+        t |= inner & (t >>> 1);
+        moves |= t >>> 1;
+        // down (row + 1)
+        t = opponent & (player << 8);
+        t |= opponent & (t << 8);
+        t |= opponent & (t << 8);
+        t |= opponent & (t << 8);
+        t |= opponent & (t << 8);
+        t |= opponent & (t << 8);
+        moves |= t << 8;
+        // up (row - 1)
+        t = opponent & (player >>> 8);
+        t |= opponent & (t >>> 8);
+        t |= opponent & (t >>> 8);
+        t |= opponent & (t >>> 8);
+        t |= opponent & (t >>> 8);
+        t |= opponent & (t >>> 8);
+        moves |= t >>> 8;
+        // down-right (row + 1, column + 1)
+        t = inner & (player << 9);
+        t |= inner & (t << 9);
+        t |= inner & (t << 9);
+        t |= inner & (t << 9);
+        t |= inner & (t << 9);
+        t |= inner & (t << 9);
+        moves |= t << 9;
+        // up-left (row - 1, column - 1)
+        t = inner & (player >>> 9);
+        t |= inner & (t >>> 9);
+        t |= inner & (t >>> 9);
+        t |= inner & (t >>> 9);
+        t |= inner & (t >>> 9);
+        t |= inner & (t >>> 9);
+        moves |= t >>> 9;
+        // down-left (row + 1, column - 1)
+        t = inner & (player << 7);
+        t |= inner & (t << 7);
+        t |= inner & (t << 7);
+        t |= inner & (t << 7);
+        t |= inner & (t << 7);
+        t |= inner & (t << 7);
+        moves |= t << 7;
+        // up-right (row - 1, column + 1)
+        t = inner & (player >>> 7);
+        t |= inner & (t >>> 7);
+        t |= inner & (t >>> 7);
+        t |= inner & (t >>> 7);
+        t |= inner & (t >>> 7);
+        t |= inner & (t >>> 7);
+        moves |= t >>> 7;
+
+        return moves & empty;
+    }
+
+    /**
+     * Finds the opposing pieces that would be flipped by a player moving to a square. The square is assumed to be empty.
+     * @param square The index of the square being moved to.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @return A mask of the pieces that flip, or 0 if the move does not flip anything (and so is not legal).
+     */
+    public static long flips(int square, long player, long opponent) {
+        long move = 1L << square;
+        return flipsUp(move, player, opponent, 8, -1L)
+                | flipsUp(move, player, opponent, 7, NOT_COLUMN_0)
+                | flipsUp(move, player, opponent, 1, NOT_COLUMN_7)
+                | flipsUp(move, player, opponent, 9, NOT_COLUMN_7)
+                | flipsDown(move, player, opponent, 8, -1L)
+                | flipsDown(move, player, opponent, 7, NOT_COLUMN_7)
+                | flipsDown(move, player, opponent, 1, NOT_COLUMN_0)
+                | flipsDown(move, player, opponent, 9, NOT_COLUMN_0);
+    }
+
+    /**
+     * Finds the opposing pieces that would be flipped by a move in one specific direction.
+     * @param square The index of the square being moved to.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @param direction The direction to check (1 = up, 2 = up-right, 3 = right, 4 = down-right, 5 = down, 6 = down-left,
+     *                  7 = left, 8 = up-left).
+     * @return A mask of the pieces that flip in that direction, or 0 if none do.
+     */
+    public static long flipsInDirection(int square, long player, long opponent, int direction) {
+        long move = 1L << square;
+        switch (direction) {
+            case 1: return flipsUp(move, player, opponent, 8, -1L);
+            case 2: return flipsUp(move, player, opponent, 7, NOT_COLUMN_0);
+            case 3: return flipsDown(move, player, opponent, 1, NOT_COLUMN_0);
+            case 4: return flipsDown(move, player, opponent, 9, NOT_COLUMN_0);
+            case 5: return flipsDown(move, player, opponent, 8, -1L);
+            case 6: return flipsDown(move, player, opponent, 7, NOT_COLUMN_7);
+            case 7: return flipsUp(move, player, opponent, 1, NOT_COLUMN_7);
+            case 8: return flipsUp(move, player, opponent, 9, NOT_COLUMN_7);
+            default: return 0;
+        }
+    }
+
+    /**
+     * Walks from a move towards lower square indices (shifting right), collecting opposing pieces until one of the
+     * player's pieces closes the line.
+     */
+    private static long flipsUp(long move, long player, long opponent, int shift, long mask) {
+        long flipped = 0;
+        long x = (move >>> shift) & mask;
+        while ((x & opponent) != 0) {
+            flipped |= x;
+            x = (x >>> shift) & mask;
+        }
+        return (x & player) != 0 ? flipped : 0;
+    }
+
+    /**
+     * Walks from a move towards higher square indices (shifting left), collecting opposing pieces until one of the
+     * player's pieces closes the line.
+     */
+    private static long flipsDown(long move, long player, long opponent, int shift, long mask) {
+        long flipped = 0;
+        long x = (move << shift) & mask;
+        while ((x & opponent) != 0) {
+            flipped |= x;
+            x = (x << shift) & mask;
+        }
+        return (x & player) != 0 ? flipped : 0;
+    }
+}
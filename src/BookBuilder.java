@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Grows an {@link OpeningBook} by searching the opening tree from the start position. Every legal move of a book
+ * position is searched and scored; the best few moves are then expanded further, up to a fixed number of plies.
+ * Positions are deduplicated in their canonical symmetric form, and moves already in an existing book are reused
+ * instead of searched again, so a book can be extended run after run.
+ */
+public class BookBuilder {
+    private final SearchEngine engine;
+    private final int plies;
+    private final int width;
+    private final int marginCentiDiscs;
+    private final Map<Long, List<OpeningBook.Entry>> known = new HashMap<>();
+    private final Set<Long> expanded = new HashSet<>();
+    private final List<OpeningBook.Entry> added = new ArrayList<>();
+    private int searches;
+
+    /**
+     * Constructor for a book builder.
+     * @param engine The engine to score moves with.
+     * @param plies The number of plies from the start position to cover.
+     * @param width The most moves to expand from each position.
+     * @param marginCentiDiscs How far below the best move, in hundredths of a disc, a move may score and still be
+     *                         expanded.
+     */
+    public BookBuilder(SearchEngine engine, int plies, int width, int marginCentiDiscs) {
+        this.engine = engine;
+        this.plies = plies;
+        this.width = width;
+        this.marginCentiDiscs = marginCentiDiscs;
+    }
+
+    /**
+     * Adds the moves of an existing book, so they are kept and not searched again.
+     * @param book The book to merge.
+     */
+    public void merge(OpeningBook book) {
+        for (OpeningBook.Entry entry : book.entries()) {
+            known.computeIfAbsent(key(entry.player, entry.opponent), k -> new ArrayList<>()).add(entry);
+            added.add(entry);
+        }
+    }
+
+    /**
+     * Scores and expands the opening tree below a position.
+     * @param position The position to start from. It is not modified.
+     */
+    public void grow(Othello position) {
+        expand(new Othello(position), 0);
+    }
+
+    /**
+     * Writes every known move, old and new, to a book file.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        OpeningBook.write(file, added);
+    }
+
+    /**
+     * Returns the number of searches run so far.
+     * @return The number of moves that were searched rather than taken from a merged book.
+     */
+    public int returnSearches() {
+        return searches;
+    }
+
+    private void expand(Othello position, int ply) {
+        if (ply >= plies) {
+            return;
+        }
+        long moves = position.legalMoves();
+        if (moves == 0) {
+            if (position.isGameOver()) {
+                return;
+            }
+            position.pass();
+            expand(position, ply + 1);
+            position.undoMove();
+            return;
+        }
+        boolean white = position.returnPlayer();
+        long player = white ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+        long opponent = white ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+        long[] canonical = new long[2];
+        int symmetry = Symmetry.canonicalize(player, opponent, canonical);
+        long p = canonical[0];
+        long o = canonical[1];
+        Long key = key(p, o);
+        if (!expanded.add(key)) {
+            return;
+        }
+
+        // Score every move, reusing the merged book where it has one.
+        int count = Long.bitCount(moves);
+        int[] squares = new int[count];
+        int[] scores = new int[count];
+        List<OpeningBook.Entry> entries = known.computeIfAbsent(key, k -> new ArrayList<>());
+        for (int i = 0; i < count; i++) {
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            int canonicalSquare = Symmetry.transformSquare(square, symmetry);
+            OpeningBook.Entry entry = find(entries, p, o, canonicalSquare);
+            if (entry == null) {
+                position.makeMove(square >>> 3, square & 7);
+                SearchResult reply = engine.search(position);
+                position.undoMove();
+                searches++;
+                entry = new OpeningBook.Entry(p, o, canonicalSquare, reply.returnDepth() + 1, -reply.returnScore());
+                entries.add(entry);
+                added.add(entry);
+            }
+            squares[i] = square;
+            scores[i] = entry.score;
+        }
+
+        // Expand the best moves, best first.
+        int best = Integer.MIN_VALUE;
+        for (int score : scores) {
+            best = Math.max(best, score);
+        }
+        for (int n = 0; n < width; n++) {
+            int pick = -1;
+            for (int i = 0; i < count; i++) {
+                if (squares[i] >= 0 && (pick < 0 || scores[i] > scores[pick])) {
+                    pick = i;
+                }
+            }
+            if (pick < 0 || scores[pick] < best - marginCentiDiscs) {
+                break;
+            }
+            int square = squares[pick];
+            squares[pick] = -1;
+            position.makeMove(square >>> 3, square & 7);
+            expand(position, ply + 1);
+            position.undoMove();
+        }
+    }
+
+    /**
+     * Finds the entry for a move among the entries of a position.
+     */
+    private OpeningBook.Entry find(List<OpeningBook.Entry> entries, long player, long opponent, int move) {
+        for (OpeningBook.Entry entry : entries) {
+            if (entry.player == player && entry.opponent == opponent && entry.move == move) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Combines a canonical position into one map key. Collisions only cost a linear scan, since entries keep the
+     * full position.
+     */
+    private static Long key(long player, long opponent) {
+        return player * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(opponent, 29);
+    }
+
+    /**
+     * Builds or extends an opening book from the command line.
+     * @param args Any of "-plies N" for how deep the book goes (default 6), "-depth N" and "-time MS" for each
+     *             search (default 10 plies, 2000 ms), "-width N" and "-margin CENTIDISCS" for how many moves are
+     *             expanded (default 3 and 400), "-threads N", "-hash MB", "-in FILE" for a book to extend and
+     *             "-out FILE" for where to write it (both default to book.bin).
+     * @throws IOException If a book cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        int plies = 6;
+        int depth = 10;
+        long timeMillis = 2000;
+        int width = 3;
+        int margin = 400;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hashMb = 64;
+        Path in = Paths.get(OpeningBook.DEFAULT_FILE);
+        Path out = in;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    timeMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-width":
+                    width = Integer.parseInt(args[++i]);
+                    break;
+                case "-margin":
+                    margin = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-hash":
+                    hashMb = Integer.parseInt(args[++i]);
+                    break;
+                case "-in":
+                    in = Paths.get(args[++i]);
+                    break;
+                case "-out":
+                    out = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SearchEngine engine = new SearchEngine(depth, timeMillis, hashMb, threads);
+        BookBuilder builder = new BookBuilder(engine, plies, width, margin);
+        if (Files.isRegularFile(in)) {
+            OpeningBook existing = OpeningBook.open(in);
+            builder.merge(existing);
+            System.out.println("Merged " + existing.size() + " moves from " + in);
+        }
+        long start = System.nanoTime();
+        builder.grow(new Othello());
+        builder.write(out);
+        engine.shutdown();
+        OpeningBook book = OpeningBook.open(out);
+        System.out.printf("Wrote %d moves to %s after %d searches in %.1f s%n", book.size(), out,
+                builder.returnSearches(), (System.nanoTime() - start) / 1e9);
+    }
+}
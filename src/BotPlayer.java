@@ -1,42 +1,372 @@
-import java.util.*;
+import java.util.Random;
+import java.util.function.Consumer;
 
 /**
  * BotPlayer for Othello. Plays as black (-1).
- * Heuristics: prefers corners, avoids X-squares (adjacent to corners), otherwise random valid move.
+ * Plays from its opening book while the position is in it, chooses its move with an iterative deepening alpha-beta
+ * search after that, and solves the game exactly once few enough squares are empty. Given a {@link MctsEngine} it
+ * chooses its moves with Monte Carlo tree search instead. Without an engine it falls back to the old heuristics:
+ * prefers corners, avoids X-squares (adjacent to corners), otherwise random valid move.
  */
 public class BotPlayer {
-    private static final int[][] CORNERS = { {0,0}, {0,7}, {7,0}, {7,7} };
-    private static final int[][] X_SQUARES = { {1,1}, {1,6}, {6,1}, {6,6}, {0,1}, {1,0}, {0,6}, {1,7}, {6,0}, {7,1}, {6,7}, {7,6} };
+    private static final int DEFAULT_DEPTH = 10;
+    private static final long DEFAULT_TIME_MILLIS = 1000;
+    private static final int DEFAULT_HASH_MB = 64;
+    private static final int SOLVER_HASH_MB = 16;
+    private static final int DEFAULT_SOLVE_EMPTIES = 14;
+    private final Random random = new Random();
+    private final SearchEngine engine;
+    private final MctsEngine mcts;
+    private final EndgameSolver solver;
+    private final int solveEmpties;
+    private OpeningBook book;
+    private EngineStats stats;
+    private SearchResult lastResult;
+    private volatile SizedSearchEngine sizedEngine;
+    private volatile boolean stopRequested;
+    private long[] sizedMoves;
 
+    /**
+     * Default constructor for a bot that searches up to 10 plies deep for at most one second per move, on every
+     * available core, and plays from the opening book in {@link OpeningBook#DEFAULT_FILE} if there is one.
+     */
+    public BotPlayer() {
+        this(new SearchEngine(DEFAULT_DEPTH, DEFAULT_TIME_MILLIS, DEFAULT_HASH_MB,
+                Runtime.getRuntime().availableProcessors()));
+        book = OpeningBook.openDefault();
+    }
+
+    /**
+     * Constructor for a bot that uses a given search engine.
+     * Positions with 14 or fewer empty squares are solved exactly instead.
+     * @param engine The engine to choose moves with, or null to play by the corner and X-square heuristics alone.
+     */
+    public BotPlayer(SearchEngine engine) {
+        this(engine, DEFAULT_SOLVE_EMPTIES);
+    }
+
+    /**
+     * Constructor for a bot that uses a given search engine and solves the endgame exactly from a given point.
+     * @param engine The engine to choose moves with, or null to play by the corner and X-square heuristics alone.
+     * @param solveEmpties The number of empty squares at or below which the bot solves the game instead of
+     *                     searching, or 0 to never solve.
+     */
+    public BotPlayer(SearchEngine engine, int solveEmpties) {
+        this(engine, null, solveEmpties);
+    }
+
+    /**
+     * Constructor for a bot that chooses its moves by Monte Carlo tree search and solves the endgame exactly from a
+     * given point. The bot keeps the engine's tree from one move to the next, so it should see every position of
+     * its games.
+     * @param mcts The engine to choose moves with.
+     * @param solveEmpties The number of empty squares at or below which the bot solves the game instead of
+     *                     searching, or 0 to never solve.
+     */
+    public BotPlayer(MctsEngine mcts, int solveEmpties) {
+        this(null, mcts, solveEmpties);
+    }
+
+    private BotPlayer(SearchEngine engine, MctsEngine mcts, int solveEmpties) {
+        this.engine = engine;
+        this.mcts = mcts;
+        this.solveEmpties = solveEmpties;
+        solver = (engine != null || mcts != null) && solveEmpties > 0 ? new EndgameSolver(SOLVER_HASH_MB) : null;
+    }
+
+    /**
+     * Sets the opening book the bot looks positions up in before searching them.
+     * @param book The book to play from, or null to always search.
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Chooses a move for the player whose turn it is.
+     * @param othello The current position. It is not modified.
+     * @return The row and column of the chosen move, or null if there are no valid moves.
+     */
     public int[] chooseMove(Othello othello) {
-        List<int[]> validMoves = new ArrayList<>();
-        List<int[]> cornerMoves = new ArrayList<>();
-        List<int[]> safeMoves = new ArrayList<>();
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (othello.isValid(i, j)) {
-                    validMoves.add(new int[]{i, j});
-                    if (isCorner(i, j)) cornerMoves.add(new int[]{i, j});
-                    else if (!isXSquare(i, j)) safeMoves.add(new int[]{i, j});
+        int move = chooseSquare(othello);
+        if (move == Bitboard.PASS) {
+            return null; // No valid moves
+        }
+        return new int[]{move >>> 3, move & 7};
+    }
+
+    /**
+     * Chooses a move for the player whose turn it is, as a square index. Unlike {@link #chooseMove(Othello)} this does
+     * not allocate when playing by the heuristics.
+     * @param othello The current position. It is not modified.
+     * @return The index (row * 8 + column) of the chosen move, or {@link Bitboard#PASS} if there are no valid moves.
+     */
+    public int chooseSquare(Othello othello) {
+        if (engine == null && mcts == null) {
+            lastResult = null;
+            ChooseMoveEvent event = new ChooseMoveEvent();
+            event.begin();
+            // These moves take nanoseconds, so the clock is only read when someone is counting.
+            long start = stats != null ? System.nanoTime() : 0;
+            int move = chooseHeuristicSquare(othello.legalMoves());
+            if (stats != null) {
+                stats.recordMove(EngineStats.Source.HEURISTIC, System.nanoTime() - start, 0);
+            }
+            if (event.shouldCommit()) {
+                event.source = EngineStats.Source.HEURISTIC.name();
+                event.move = Bitboard.squareName(move);
+                event.empties = Long.bitCount(~(othello.returnWhiteDiscs() | othello.returnBlackDiscs()));
+                event.commit();
+            }
+            return move;
+        }
+        lastResult = choose(othello, false);
+        return lastResult.returnBestMove();
+    }
+
+    /**
+     * Chooses a move without a time limit, to search ahead while the opponent thinks. The search fills the tables the
+     * next {@link #chooseMove(Othello)} uses, and runs until it reaches the bot's depth limit or {@link #stop()} is
+     * called.
+     * @param othello The position to search. It is not modified.
+     * @return The result of the search.
+     */
+    public SearchResult ponder(Othello othello) {
+        if (engine == null && mcts == null) {
+            int move = chooseSquare(othello);
+            return new SearchResult(move, 0, 0, 0, 0, new int[] {move});
+        }
+        lastResult = choose(othello, true);
+        return lastResult;
+    }
+
+    /**
+     * Chooses a move on a board of another size than 8 by 8. Boards of that size have no book, endgame solver or
+     * pattern weights, so the bot searches with a {@link SizedSearchEngine} as deep and as long as its own engine
+     * would, or plays by the same corner and X-square heuristics if it has no engine.
+     * @param othello The current position. It is not modified.
+     * @return The index (row * size + column) of the chosen move, or {@link SizedOthello#PASS} if there are no valid
+     * moves.
+     */
+    public int chooseSquare(SizedOthello othello) {
+        long start = System.nanoTime();
+        int move;
+        if (engine == null) {
+            lastResult = null;
+            move = chooseHeuristicSquare(othello);
+        }
+        else {
+            SizedSearchEngine sized = sizedEngine;
+            if (sized == null || sized.returnSize() != othello.returnSize()) {
+                sized = new SizedSearchEngine(othello.returnSize(), engine.returnMaxDepth(),
+                        engine.returnTimeLimitMillis());
+                sizedEngine = sized;
+                if (stopRequested) {
+                    sized.stop();
                 }
             }
+            lastResult = sized.search(othello);
+            move = lastResult.returnBestMove();
+        }
+        if (stats != null) {
+            stats.recordMove(engine == null ? EngineStats.Source.HEURISTIC : EngineStats.Source.SEARCH,
+                    System.nanoTime() - start, lastResult != null ? lastResult.returnNodes() : 0);
+        }
+        return move;
+    }
+
+    private SearchResult choose(Othello othello, boolean ponder) {
+        ChooseMoveEvent event = new ChooseMoveEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int empties = Long.bitCount(~(othello.returnWhiteDiscs() | othello.returnBlackDiscs()));
+        EngineStats.Source source = EngineStats.Source.BOOK;
+        SearchResult result = book != null ? book.probe(othello) : null;
+        if (result == null && solver != null && empties <= solveEmpties) {
+            source = EngineStats.Source.SOLVE;
+            result = solver.solve(othello, true);
+        }
+        else if (result == null) {
+            source = EngineStats.Source.SEARCH;
+            if (mcts != null) {
+                result = ponder ? mcts.ponder(othello) : mcts.search(othello);
+            }
+            else {
+                result = ponder ? engine.ponder(othello) : engine.search(othello);
+            }
         }
-        if (!cornerMoves.isEmpty()) {
-            return cornerMoves.get(0);
-        } else if (!safeMoves.isEmpty()) {
-            return safeMoves.get(new Random().nextInt(safeMoves.size()));
-        } else if (!validMoves.isEmpty()) {
-            return validMoves.get(new Random().nextInt(validMoves.size()));
+        // Pondering takes as long as the opponent does, so it is not a move time. The search engine counts its nodes.
+        if (stats != null && !ponder) {
+            stats.recordMove(source, System.nanoTime() - start,
+                    source == EngineStats.Source.SEARCH && mcts == null ? 0 : result.returnNodes());
         }
-        return null; // No valid moves
+        if (event.shouldCommit()) {
+            event.source = source.name();
+            event.move = Bitboard.squareName(result.returnBestMove());
+            event.score = result.returnScore();
+            event.depth = result.returnDepth();
+            event.nodes = result.returnNodes();
+            event.empties = empties;
+            event.ponder = ponder;
+            event.commit();
+        }
+        return result;
     }
 
-    private boolean isCorner(int i, int j) {
-        for (int[] c : CORNERS) if (c[0] == i && c[1] == j) return true;
-        return false;
+    /**
+     * Sets the statistics the bot counts its moves, and its engine its searches, in. Several bots may share one.
+     * @param stats The statistics, or null to count nothing.
+     */
+    public void setStats(EngineStats stats) {
+        this.stats = stats;
+        if (engine != null) {
+            engine.setStats(stats);
+        }
     }
-    private boolean isXSquare(int i, int j) {
-        for (int[] x : X_SQUARES) if (x[0] == i && x[1] == j) return true;
-        return false;
+
+    /**
+     * Sets a persistent cache for the bot's engine to consult behind its transposition table. It has no effect on a
+     * bot without an engine.
+     * @param cache The cache, or null for none.
+     */
+    public void setAnalysisCache(AnalysisCache cache) {
+        if (engine != null) {
+            engine.setAnalysisCache(cache);
+        }
+    }
+
+    /**
+     * Changes how deep and how long the bot searches its next moves. It has no effect on a bot without an engine, and
+     * a Monte Carlo bot only takes the time limit.
+     * @param maxDepth The deepest iteration to search, in plies.
+     * @param timeLimitMillis The longest time a search may take in milliseconds, or 0 for no limit.
+     */
+    public void setLimits(int maxDepth, long timeLimitMillis) {
+        if (engine != null) {
+            engine.setLimits(maxDepth, timeLimitMillis);
+        }
+        if (mcts != null) {
+            mcts.setTimeLimit(timeLimitMillis);
+        }
+    }
+
+    /**
+     * Returns how long the bot may think about a move.
+     * @return The time limit of the bot's searches in milliseconds, or 0 for none.
+     */
+    public long returnTimeLimitMillis() {
+        if (mcts != null) {
+            return mcts.returnTimeLimitMillis();
+        }
+        return engine != null ? engine.returnTimeLimitMillis() : 0;
+    }
+
+    /**
+     * Sets a listener to be given the result of every completed search iteration, so a caller can show the bot's
+     * progress while it thinks. Book moves and endgame solves are only reported by their final result.
+     * @param listener The listener, called on the thread that chooses the move, or null for none.
+     */
+    public void setProgressListener(Consumer<SearchResult> listener) {
+        if (engine != null) {
+            engine.setProgressListener(listener);
+        }
+    }
+
+    /**
+     * Asks a move being chosen on another thread to be chosen as soon as possible. The bot still answers with the
+     * best move it has found. The request stays until {@link #resetStop()}, so a stop sent just before a move is
+     * started makes that move quick too.
+     */
+    public void stop() {
+        stopRequested = true;
+        if (engine != null) {
+            engine.stop();
+        }
+        if (mcts != null) {
+            mcts.stop();
+        }
+        if (solver != null) {
+            solver.stop();
+        }
+        SizedSearchEngine sized = sizedEngine;
+        if (sized != null) {
+            sized.stop();
+        }
+    }
+
+    /**
+     * Withdraws a stop, so the moves that follow are searched to the bot's limits. A caller that stops the bot from
+     * another thread resets it when it starts a new request, rather than leaving it to the search, which could start
+     * after the next stop had already come.
+     */
+    public void resetStop() {
+        stopRequested = false;
+        if (engine != null) {
+            engine.resetStop();
+        }
+        if (mcts != null) {
+            mcts.resetStop();
+        }
+        if (solver != null) {
+            solver.resetStop();
+        }
+        SizedSearchEngine sized = sizedEngine;
+        if (sized != null) {
+            sized.resetStop();
+        }
+    }
+
+    /**
+     * Returns the result of the last search, including the nodes searched and the principal variation.
+     * @return The last search result, or null if the bot has not searched yet or chose its last move by the
+     * heuristics.
+     */
+    public SearchResult returnLastResult() {
+        return lastResult;
+    }
+
+    private int chooseHeuristicSquare(SizedOthello othello) {
+        WideBitboard layout = othello.returnLayout();
+        int words = layout.returnWords();
+        if (sizedMoves == null || sizedMoves.length != words) {
+            sizedMoves = new long[words];
+        }
+        long[] moves = sizedMoves;
+        othello.legalMoves(moves);
+        if (WideBitboard.isEmpty(moves)) {
+            return SizedOthello.PASS; // No valid moves
+        }
+        long[] corners = layout.returnCorners();
+        for (int i = 0; i < words; i++) {
+            if ((moves[i] & corners[i]) != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(moves[i] & corners[i]);
+            }
+        }
+        long[] xSquares = layout.returnXSquares();
+        boolean safe = false;
+        for (int i = 0; i < words; i++) {
+            safe |= (moves[i] & ~xSquares[i]) != 0;
+        }
+        if (safe) {
+            for (int i = 0; i < words; i++) {
+                moves[i] &= ~xSquares[i];
+            }
+        }
+        return WideBitboard.nthSquare(moves, random.nextInt(WideBitboard.count(moves)));
+    }
+
+    private int chooseHeuristicSquare(long moves) {
+        if (moves == 0) {
+            return Bitboard.PASS; // No valid moves
+        }
+        long corners = moves & Bitboard.CORNERS;
+        if (corners != 0) {
+            return Long.numberOfTrailingZeros(corners);
+        }
+        long safe = moves & ~Bitboard.X_SQUARES;
+        if (safe != 0) {
+            moves = safe;
+        }
+        return Bitboard.nthSquare(moves, random.nextInt(Long.bitCount(moves)));
     }
-} 
\ No newline at end of file
+}
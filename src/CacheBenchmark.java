@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Measures what an {@link AnalysisCache} saves across a restart. Searches the midgame positions of {@link Benchmarks}
+ * to a fixed depth four times:
+ * <ul>
+ * <li>cold, with an empty cache file;</li>
+ * <li>again with the same engine, whose transposition table still holds the first searches: the latency of a process
+ * that never stopped;</li>
+ * <li>after a restart, with a new engine and the cache file opened again, which is what the cache is for;</li>
+ * <li>after a restart without the cache, for comparison.</li>
+ * </ul>
+ */
+public class CacheBenchmark {
+    private static final int HASH_MB = 64;
+
+    /**
+     * Runs the benchmark.
+     * @param args Any of "-depth N" (default 12), "-file FILE" for the cache (default a temporary file, deleted
+     *             afterwards; an existing file is emptied first) and "-mb MB" for its size (default 64).
+     * @throws IOException If the cache file cannot be created.
+     */
+    public static void main(String[] args) throws IOException {
+        int depth = 12;
+        Path file = null;
+        int sizeMb = 64;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-file":
+                    file = Paths.get(args[++i]);
+                    break;
+                case "-mb":
+                    sizeMb = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        boolean temporary = file == null;
+        if (temporary) {
+            file = Files.createTempFile("analysis", ".cache");
+            Files.delete(file);
+        }
+        Othello[] positions = Benchmarks.load(Benchmarks.MIDGAME);
+        System.out.printf("%d positions, depth %d%n", positions.length, depth);
+        System.out.println("run                       time ms  ms/position        nodes  cache hits");
+        try {
+            SearchEngine engine = new SearchEngine(depth, 0, HASH_MB, 1);
+            EngineStats stats = new EngineStats();
+            try (AnalysisCache cache = AnalysisCache.open(file, sizeMb)) {
+                cache.clear();
+                engine.setAnalysisCache(cache);
+                run("cold", engine, stats, positions);
+                run("warm, same process", engine, stats, positions);
+                System.out.printf("%d of %d records used%n", cache.size(), cache.capacity());
+            }
+            try (AnalysisCache cache = AnalysisCache.open(file, sizeMb)) {
+                SearchEngine restarted = new SearchEngine(depth, 0, HASH_MB, 1);
+                restarted.setAnalysisCache(cache);
+                run("restarted with cache", restarted, stats, positions);
+            }
+            run("restarted without cache", new SearchEngine(depth, 0, HASH_MB, 1), stats, positions);
+        }
+        finally {
+            if (temporary) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void run(String name, SearchEngine engine, EngineStats stats, Othello[] positions) {
+        engine.setStats(stats);
+        stats.reset();
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (Othello position : positions) {
+            nodes += engine.search(position).returnNodes();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf(Locale.ROOT, "%-23s %9d %12.1f %12d %11d%n", name, elapsed / 1_000_000,
+                elapsed / 1e6 / positions.length, nodes, stats.snapshot().returnCounters().get("cacheHits"));
+    }
+}
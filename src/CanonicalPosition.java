@@ -0,0 +1,97 @@
+/**
+ * A position reduced to its smallest symmetric form (see {@link Symmetry#canonicalize(long, long, long[])}), to key
+ * caches, books and analysis stores on: the eight rotations and reflections of a position all give equal keys, so a
+ * store holds each of them once. The key remembers the symmetry that reduced the position it was made from, so moves
+ * can be mapped to the stored form and back.
+ */
+public final class CanonicalPosition {
+    private final long player;
+    private final long opponent;
+    private final int symmetry;
+
+    /**
+     * Constructor for the canonical form of a position.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     */
+    public CanonicalPosition(long player, long opponent) {
+        long[] canonical = new long[2];
+        symmetry = Symmetry.canonicalize(player, opponent, canonical);
+        this.player = canonical[0];
+        this.opponent = canonical[1];
+    }
+
+    /**
+     * Returns the canonical form of a board's position.
+     * @param position The position. It is not modified.
+     * @return The key of the position, seen from the player to move.
+     */
+    public static CanonicalPosition of(Othello position) {
+        boolean white = position.returnPlayer();
+        return new CanonicalPosition(white ? position.returnWhiteDiscs() : position.returnBlackDiscs(),
+                white ? position.returnBlackDiscs() : position.returnWhiteDiscs());
+    }
+
+    /**
+     * Returns the pieces of the player to move in the canonical form.
+     * @return The player's bitboard.
+     */
+    public long returnPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the pieces of the other player in the canonical form.
+     * @return The opponent's bitboard.
+     */
+    public long returnOpponent() {
+        return opponent;
+    }
+
+    /**
+     * Returns the symmetry that reduced the original position to the canonical form.
+     * @return The symmetry number, from 0 to 7.
+     */
+    public int returnSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     * Maps a move of the original position to the canonical form.
+     * @param square The index of the square in the original position, or {@link Bitboard#PASS}.
+     * @return The index of the same move in the canonical form.
+     */
+    public int toCanonicalSquare(int square) {
+        return Symmetry.transformSquare(square, symmetry);
+    }
+
+    /**
+     * Maps a move of the canonical form back to the original position.
+     * @param square The index of the square in the canonical form, or {@link Bitboard#PASS}.
+     * @return The index of the same move in the original position.
+     */
+    public int fromCanonicalSquare(int square) {
+        return Symmetry.transformSquare(square, Symmetry.inverse(symmetry));
+    }
+
+    /**
+     * Checks if two keys stand for the same position, whichever symmetry each was made from.
+     * @param other The object to compare with.
+     * @return true if the other object is a key of the same canonical position.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CanonicalPosition)) {
+            return false;
+        }
+        CanonicalPosition key = (CanonicalPosition) other;
+        return key.player == player && key.opponent == opponent;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = player * 0x9E3779B97F4A7C15L + opponent;
+        h ^= h >>> 29;
+        return (int) (h ^ (h >>> 32));
+    }
+}
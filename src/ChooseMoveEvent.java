@@ -0,0 +1,37 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one move chosen by a {@link BotPlayer}, from the book, a search, an endgame solve or the
+ * heuristics. Its duration is the time the bot took.
+ */
+@Name("othello.ChooseMove")
+@Label("Choose Move")
+@Category("Othello")
+@Description("A bot choosing a move")
+class ChooseMoveEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Move")
+    String move;
+
+    @Label("Score")
+    @Description("The score of the move in hundredths of a disc for the player to move")
+    int score;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Empty Squares")
+    int empties;
+
+    @Label("Ponder")
+    boolean ponder;
+}
@@ -0,0 +1,157 @@
+import java.util.Random;
+
+/**
+ * Benchmarks the endgame solver over a fixed test set and checks every result, so changes to the solver can be
+ * timed and verified in one run.
+ * <p>
+ * The set has six positions each with 16, 18 and 20 empty squares taken from random games, with the exact scores
+ * the solver proved for them, and position 41 of the FFO endgame test suite (22 empties, a draw). After the set,
+ * the solver is checked against plain minimax on random positions with a few empties left, which reach the passes and
+ * early game ends that a fixed set can miss.
+ */
+public class EndgameBenchmark {
+    /** Test positions, in the format read by {@link Othello#Othello(String)}. */
+    static final String[] POSITIONS = {
+            "XXX-O--XOOXOOOX---OOOOOO-OOOOXX--XOXOOXX--XOOXXXOXO-OXOOXXX-X--- O",
+            "--OOOX-----OOOOOX-OXOXXXOOOOOXX-OOXOXXXOXXXXXXXX-OXOOOX--X-X---X O",
+            "-OOOX------OXXX-OO-OXOXXXOXXXOX-XXXXOO-OXXXOXOOO-XOOOOO---XXXOO- O",
+            "----X-OX--OXXXXX-XOOXXO--XOXOOO-XOOXXOOXOOOOOXOX---OOOXX-OOOO-OX O",
+            "-OOOO-X---O-OO--OOOOOOO-OOOOOOO-OXXOOXOO-XXOO-OX-XXXXOXX---OXXXX O",
+            "-O-OOO-O-XOOOXXXO-XOOOXOOOXXOX--OXXXXXXXOXXXXXO-XXXXX---XO--X--- O",
+            "XXXX-XO-OOOOOXX--OOOOX---OOOOXOO-OOOOXX-OOOOOOXX-OOOOXO-----X--- O",
+            "-XXOXXX--XOOXXXXOXXXOOXOXXXOOOOOXXXOO-O-XO-XOO--X---XO--X---OX-- O",
+            "--OO-OOO-XOXOOOO-OXOXO-OOOOXOXXXOOOOXOOO-XOXX-OO-X-X---OOXX----- O",
+            "-OOOXO--OOOOX-O--XOXXO-O-OXXOOO-OX-XX-X-OOOXXX-XOOOOXXX-O--O-XX- O",
+            "----X-----XXXXXXX--OOOXXXXOOOXOXXOOOXOOXXXOXXOOX-OX-XOO-OOX-O--- O",
+            "OX-OX---OOX-XXX-XOOXXXXO-OXXXXXOOOXXOOOX--XXXXX--OOOOOX----X---X O",
+            "OOX--O-XOOXXOOX-OOOXXO--OOOOXO-OOOOXOXO-OOO--O--O-OOOXO---O--X-- O",
+            "-X-O-XXX-X-OXXX-OXXXXXXO-O-OXXXO--OOXOXO--OOOOXO--XXOO-O--X--O-O O",
+            "OOOX----OOOO-O--OXOXXXXXOOOOOOXXO-XOOO-XOX-OOOX---XX-XO----X--XO O",
+            "-OOOOXO--OOO-OXX-OOOO-OX-OOOOOX--OOOOXXXXXXXOXXO----OOO------OO- O",
+            "-XXX--X-X-XOOOX-OXOOOOXX-OXOXOXXOOOXOOX---XXXOXO--X-XXX---XX---- O",
+            "----X-O--OXXXXXX--OXOXX--OOOXXXX--OOX-X-XXXOXO-XOOOXXOOO-O-OXX-- O",
+            "-OOOOO----OOOOX--OOOOOO-XXXXXOO--XXOOX--OOXOXX----OXXO---OOO--O- X",
+    };
+    /** The exact final margin of each test position for the side to move. */
+    static final int[] SCORES = {-40, -14, -8, -30, -38, 2, -24, 14, 14, -6, 32, 14, 0, 16, 48, -56, 48, 6, 0};
+    /** The most empty squares in a random position, so plain minimax stays quick. */
+    private static final int RANDOM_MAX_EMPTIES = 9;
+
+    /**
+     * Runs the benchmark.
+     * @param args Any of "-max-empties N" to skip larger positions, "-wld" to only solve for win, loss or draw,
+     *             "-hash MB" for the size of the solver's transposition table, "-random N" for the number of random
+     *             positions checked against minimax (default 2000) and "-seed N" for the random positions.
+     */
+    public static void main(String[] args) {
+        int maxEmpties = 64;
+        boolean exact = true;
+        int hashMb = 64;
+        int randomPositions = 2000;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-max-empties":
+                    maxEmpties = Integer.parseInt(args[++i]);
+                    break;
+                case "-wld":
+                    exact = false;
+                    break;
+                case "-hash":
+                    hashMb = Integer.parseInt(args[++i]);
+                    break;
+                case "-random":
+                    randomPositions = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        EndgameSolver solver = new EndgameSolver(hashMb);
+        long totalNodes = 0;
+        long totalNanos = 0;
+        int failures = 0;
+        System.out.println(" # empties  score   move        nodes    time ms      nodes/s");
+        for (int i = 0; i < POSITIONS.length; i++) {
+            Othello position = new Othello(POSITIONS[i]);
+            int empties = Long.bitCount(~(position.returnWhiteDiscs() | position.returnBlackDiscs()));
+            if (empties > maxEmpties) {
+                continue;
+            }
+            int expected = SCORES[i];
+            if (!exact) {
+                expected = Integer.signum(expected);
+            }
+            SearchResult result = solver.solve(position, exact);
+            int score = result.returnScore() / Evaluation.DISC;
+            boolean ok = score == expected;
+            if (!ok) {
+                failures++;
+            }
+            totalNodes += result.returnNodes();
+            totalNanos += result.returnElapsedNanos();
+            System.out.printf("%2d %7d %+6d %6s %12d %10d %12d%s%n", i + 1, empties, score,
+                    Bitboard.squareName(result.returnBestMove()), result.returnNodes(),
+                    result.returnElapsedNanos() / 1_000_000, result.returnNodesPerSecond(),
+                    ok ? "" : "  WRONG, expected " + expected);
+        }
+        System.out.printf("total %d nodes in %d ms (%.0f nodes/s), %d wrong%n", totalNodes, totalNanos / 1_000_000,
+                totalNodes * 1e9 / Math.max(1, totalNanos), failures);
+        int randomFailures = checkRandomPositions(solver, exact, randomPositions, seed);
+        System.out.printf("%d random positions checked against minimax, %d wrong%n", randomPositions, randomFailures);
+        if (failures > 0 || randomFailures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Solves positions from random games with 2 to {@link #RANDOM_MAX_EMPTIES} empties and compares the scores with
+     * plain minimax, printing each one the solver gets wrong.
+     * @return The number of positions the solver got wrong.
+     */
+    private static int checkRandomPositions(EndgameSolver solver, boolean exact, int count, long seed) {
+        Random random = new Random(seed);
+        int failures = 0;
+        for (int i = 0; i < count; i++) {
+            int empties = 2 + random.nextInt(RANDOM_MAX_EMPTIES - 1);
+            Othello position = SmpBenchmark.randomPosition(random, 60 - empties);
+            boolean white = position.returnPlayer();
+            long player = white ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+            long opponent = white ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+            int expected = minimax(player, opponent);
+            if (!exact) {
+                expected = Integer.signum(expected);
+            }
+            int score = solver.solve(position, exact).returnScore() / Evaluation.DISC;
+            if (score != expected) {
+                failures++;
+                System.out.printf("random %s: %+d, expected %+d%n", position, score, expected);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Finds the final margin for the player to move by searching every line to the end of the game, without pruning.
+     */
+    private static int minimax(long player, long opponent) {
+        long moves = Bitboard.legalMoves(player, opponent);
+        if (moves == 0) {
+            if (Bitboard.legalMoves(opponent, player) == 0) {
+                return Long.bitCount(player) - Long.bitCount(opponent);
+            }
+            return -minimax(opponent, player);
+        }
+        int best = -65;
+        for (; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long flipped = Bitboard.flips(move, player, opponent);
+            best = Math.max(best, -minimax(opponent & ~flipped, player | flipped | (1L << move)));
+        }
+        return best;
+    }
+}
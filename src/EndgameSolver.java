@@ -0,0 +1,429 @@
+/**
+ * Exact endgame solver for the last empty squares. Searches to the end of the game and scores finished positions the
+ * same way as {@link Othello#returnFinalScores()}: the difference in disc counts, with empty squares left to nobody.
+ * <p>
+ * It can either prove the exact final margin or only whether the game is won, lost or drawn, which is faster. With
+ * many empties, moves are ordered fastest-first (fewest replies for the opponent) and positions are remembered in a
+ * transposition table; with few empties, moves into regions with an odd number of empties are tried first (parity),
+ * and the last four empties are solved by routines that test the empty squares directly instead of generating moves.
+ */
+public class EndgameSolver {
+    private static final int FASTEST_FIRST_EMPTIES = 7;
+    private static final int MIN_HASHED_EMPTIES = 8;
+    private static final int CHECK_INTERVAL = 0xFFFF;
+    private static final long[] QUADRANTS = {
+            0x000000000F0F0F0FL, 0x00000000F0F0F0F0L, 0x0F0F0F0F00000000L, 0xF0F0F0F000000000L
+    };
+    private static final long EDGE_COLUMNS = 0x8181818181818181L;
+    private static final long EDGE_ROWS = 0xFF000000000000FFL;
+    private static final long BORDER = EDGE_COLUMNS | EDGE_ROWS;
+    private static final long[] ROWS = new long[8];
+    private static final long[] COLUMNS = new long[8];
+    /** Lines running from upper-left to lower-right (shift by 9), and from upper-right to lower-left (shift by 7). */
+    private static final long[] DIAGONALS_9 = new long[15];
+    private static final long[] DIAGONALS_7 = new long[15];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            int row = square >>> 3;
+            int column = square & 7;
+            ROWS[row] |= 1L << square;
+            COLUMNS[column] |= 1L << square;
+            DIAGONALS_9[row - column + 7] |= 1L << square;
+            DIAGONALS_7[row + column] |= 1L << square;
+        }
+    }
+
+    private final TranspositionTable table;
+    private final int[][] moveBuffer = new int[65][64];
+    private final int[][] keyBuffer = new int[65][64];
+    private volatile boolean stopRequested;
+    private boolean aborted;
+    private long nodes;
+
+    /**
+     * Constructor for a solver with a transposition table of a given size.
+     * @param hashSizeMb The size of the transposition table in megabytes.
+     */
+    public EndgameSolver(int hashSizeMb) {
+        table = new TranspositionTable(hashSizeMb);
+    }
+
+    /**
+     * Solves a position for the player whose turn it is.
+     * @param position The position to solve. It is not modified.
+     * @param exact true to find the exact final margin, false to only find if the game is won, lost or drawn.
+     * @return The best move and its score in hundredths of a disc. In win/loss/draw mode the score is +1, 0 or -1 disc
+     * rather than the margin. The depth is the number of empty squares. If the solve was stopped with {@link #stop()},
+     * the depth is 0 and the move is not proven.
+     */
+    public SearchResult solve(Othello position, boolean exact) {
+        long start = System.nanoTime();
+        aborted = false;
+        nodes = 0;
+        table.newSearch();
+        boolean white = position.returnPlayer();
+        long player = white ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+        long opponent = white ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+        int empties = Long.bitCount(~(player | opponent));
+        long moves = Bitboard.legalMoves(player, opponent);
+        if (moves == 0) {
+            int score = Bitboard.legalMoves(opponent, player) == 0 ? finalScore(player, opponent)
+                    : -search(opponent, player, exact ? -65 : -2, exact ? 65 : 2, empties, 1);
+            if (!exact) {
+                score = Integer.signum(score);
+            }
+            return new SearchResult(Bitboard.PASS, score * Evaluation.DISC, aborted ? 0 : empties, nodes,
+                    System.nanoTime() - start, new int[] {Bitboard.PASS});
+        }
+
+        int alpha = exact ? -65 : -2;
+        int beta = exact ? 65 : 2;
+        int count = orderMoves(0, player, opponent, moves, -1, true);
+        int bestMove = moveBuffer[0][0];
+        int best = -65;
+        for (int i = 0; i < count && !aborted; i++) {
+            int move = moveBuffer[0][i];
+            long flipped = Bitboard.flips(move, player, opponent);
+            long nextPlayer = opponent & ~flipped;
+            long nextOpponent = player | flipped | (1L << move);
+            int score;
+            if (i == 0) {
+                score = -search(nextPlayer, nextOpponent, -beta, -alpha, empties - 1, 1);
+            }
+            else {
+                score = -search(nextPlayer, nextOpponent, -alpha - 1, -alpha, empties - 1, 1);
+                if (score > alpha && score < beta) {
+                    score = -search(nextPlayer, nextOpponent, -beta, -score, empties - 1, 1);
+                }
+            }
+            if (aborted) {
+                break;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                alpha = Math.max(alpha, score);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        if (!exact) {
+            best = Integer.signum(best);
+        }
+        return new SearchResult(bestMove, best * Evaluation.DISC, aborted ? 0 : empties, nodes,
+                System.nanoTime() - start, new int[] {bestMove});
+    }
+
+    /**
+     * Asks a running solve to stop as soon as possible. The request stays until {@link #resetStop()}, so it also stops
+     * a solve that had not started yet.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Withdraws a stop, so the solves that follow run to the end.
+     */
+    public void resetStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Returns the final score of a finished game with the same counting as {@link Othello#returnFinalScores()}.
+     */
+    private static int finalScore(long player, long opponent) {
+        return Long.bitCount(player) - Long.bitCount(opponent);
+    }
+
+    private int search(long player, long opponent, int alpha, int beta, int empties, int ply) {
+        if (empties <= 4) {
+            return solveSmall(player, opponent, alpha, beta, ~(player | opponent), false);
+        }
+        if ((++nodes & CHECK_INTERVAL) == 0 && stopRequested) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        long moves = Bitboard.legalMoves(player, opponent);
+        if (moves == 0) {
+            if (Bitboard.legalMoves(opponent, player) == 0) {
+                return finalScore(player, opponent);
+            }
+            return -search(opponent, player, -beta, -alpha, empties, ply + 1);
+        }
+        if (alpha > 0) {
+            // The player can at best take every disc the opponent cannot lose.
+            int upperBound = 64 - 2 * Long.bitCount(stableDiscs(opponent, player | opponent));
+            if (upperBound <= alpha) {
+                return upperBound;
+            }
+        }
+
+        long key = 0;
+        int hashMove = -1;
+        if (empties >= MIN_HASHED_EMPTIES) {
+            key = key(player, opponent);
+            long entry = table.probe(key);
+            if (entry != TranspositionTable.MISS) {
+                hashMove = TranspositionTable.move(entry);
+                int stored = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && stored >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && stored <= alpha)) {
+                    return stored;
+                }
+                if (bound == TranspositionTable.LOWER_BOUND) {
+                    alpha = Math.max(alpha, stored);
+                }
+                else {
+                    beta = Math.min(beta, stored);
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -65;
+        int bestMove = -1;
+        if (empties > FASTEST_FIRST_EMPTIES) {
+            int count = orderMoves(ply, player, opponent, moves, hashMove, false);
+            int[] ordered = moveBuffer[ply];
+            for (int i = 0; i < count; i++) {
+                int move = ordered[i];
+                long flipped = Bitboard.flips(move, player, opponent);
+                long nextPlayer = opponent & ~flipped;
+                long nextOpponent = player | flipped | (1L << move);
+                int score;
+                if (i == 0) {
+                    score = -search(nextPlayer, nextOpponent, -beta, -alpha, empties - 1, ply + 1);
+                }
+                else {
+                    score = -search(nextPlayer, nextOpponent, -alpha - 1, -alpha, empties - 1, ply + 1);
+                    if (score > alpha && score < beta) {
+                        score = -search(nextPlayer, nextOpponent, -beta, -score, empties - 1, ply + 1);
+                    }
+                }
+                if (aborted) {
+                    return 0;
+                }
+                if (score > best) {
+                    best = score;
+                    bestMove = move;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        else {
+            long odd = oddQuadrants(~(player | opponent));
+            // Moves in regions with an odd number of empties first, then the rest.
+            for (int pass = 0; pass < 2 && alpha < beta; pass++) {
+                for (long m = moves & (pass == 0 ? odd : ~odd); m != 0; m &= m - 1) {
+                    int move = Long.numberOfTrailingZeros(m);
+                    long flipped = Bitboard.flips(move, player, opponent);
+                    int score = -search(opponent & ~flipped, player | flipped | (1L << move), -beta, -alpha,
+                            empties - 1, ply + 1);
+                    if (aborted) {
+                        return 0;
+                    }
+                    if (score > best) {
+                        best = score;
+                        bestMove = move;
+                        if (score > alpha) {
+                            alpha = score;
+                            if (alpha >= beta) {
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (empties >= MIN_HASHED_EMPTIES) {
+            int bound = best >= beta ? TranspositionTable.LOWER_BOUND
+                    : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+            table.store(key, empties, bound, best, bestMove);
+        }
+        return best;
+    }
+
+    /**
+     * Solves a position with at most four empty squares without calling the move generator: each empty square is
+     * tested for flips directly, in parity order.
+     */
+    private int solveSmall(long player, long opponent, int alpha, int beta, long empty, boolean passed) {
+        nodes++;
+        if (Long.bitCount(empty) == 1) {
+            return solveLast(player, opponent, Long.numberOfTrailingZeros(empty));
+        }
+        long odd = oddQuadrants(empty);
+        int best = -65;
+        for (int pass = 0; pass < 2; pass++) {
+            for (long e = empty & (pass == 0 ? odd : ~odd); e != 0; e &= e - 1) {
+                int move = Long.numberOfTrailingZeros(e);
+                long flipped = Bitboard.flips(move, player, opponent);
+                if (flipped == 0) {
+                    continue;
+                }
+                long bit = 1L << move;
+                int score = -solveSmall(opponent & ~flipped, player | flipped | bit, -beta, -alpha, empty & ~bit,
+                        false);
+                if (score > best) {
+                    best = score;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            return best;
+                        }
+                    }
+                }
+            }
+        }
+        if (best == -65) {
+            if (passed) {
+                return finalScore(player, opponent);
+            }
+            return -solveSmall(opponent, player, -beta, -alpha, empty, true);
+        }
+        return best;
+    }
+
+    /**
+     * Solves a position with one empty square: the player moves there if it can, otherwise the opponent does.
+     */
+    private int solveLast(long player, long opponent, int square) {
+        nodes++;
+        long bit = 1L << square;
+        long flipped = Bitboard.flips(square, player, opponent);
+        if (flipped != 0) {
+            return finalScore(player | flipped | bit, opponent & ~flipped);
+        }
+        flipped = Bitboard.flips(square, opponent, player);
+        if (flipped != 0) {
+            return finalScore(player & ~flipped, opponent | flipped | bit);
+        }
+        return finalScore(player, opponent);
+    }
+
+    /**
+     * Sorts moves fastest-first into the move buffer for a ply: the hash move, then moves leaving the opponent the
+     * fewest replies, with corners preferred.
+     * @return The number of moves.
+     */
+    private int orderMoves(int ply, long player, long opponent, long moves, int hashMove, boolean root) {
+        int[] ordered = moveBuffer[ply];
+        int[] keys = keyBuffer[ply];
+        int count = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long bit = 1L << move;
+            long flipped = Bitboard.flips(move, player, opponent);
+            long replies = Bitboard.legalMoves(opponent & ~flipped, player | flipped | bit);
+            // Replies into corners count twice, since they are the ones that hurt.
+            int key = (Long.bitCount(replies) + Long.bitCount(replies & Bitboard.CORNERS)) * 16
+                    + Long.bitCount(frontier(player | flipped | bit, ~(player | opponent | bit))) * 2;
+            if ((bit & Bitboard.CORNERS) != 0) {
+                key -= 8;
+            }
+            if (move == hashMove) {
+                key = Integer.MIN_VALUE;
+            }
+            int i = count++;
+            while (i > 0 && keys[i - 1] > key) {
+                keys[i] = keys[i - 1];
+                ordered[i] = ordered[i - 1];
+                i--;
+            }
+            keys[i] = key;
+            ordered[i] = move;
+        }
+        return count;
+    }
+
+    /**
+     * Finds discs that can never be flipped. A disc is stable if, along each of the four lines through it, the line is
+     * full or the disc is next to the edge of the board or to another stable disc of its color. Starting from the
+     * corners, stable discs are grown until nothing changes.
+     * @param own The discs of the player whose stable discs are wanted.
+     * @param occupied Every disc on the board.
+     * @return A mask of stable discs, which may miss some stable discs but never includes an unstable one.
+     */
+    static long stableDiscs(long own, long occupied) {
+        long fullRows = 0;
+        long fullColumns = 0;
+        for (int i = 0; i < 8; i++) {
+            if ((occupied & ROWS[i]) == ROWS[i]) {
+                fullRows |= ROWS[i];
+            }
+            if ((occupied & COLUMNS[i]) == COLUMNS[i]) {
+                fullColumns |= COLUMNS[i];
+            }
+        }
+        long full9 = 0;
+        long full7 = 0;
+        for (int i = 0; i < 15; i++) {
+            if ((occupied & DIAGONALS_9[i]) == DIAGONALS_9[i]) {
+                full9 |= DIAGONALS_9[i];
+            }
+            if ((occupied & DIAGONALS_7[i]) == DIAGONALS_7[i]) {
+                full7 |= DIAGONALS_7[i];
+            }
+        }
+        long horizontal = fullRows | EDGE_COLUMNS;
+        long vertical = fullColumns | EDGE_ROWS;
+        long diagonal9 = full9 | BORDER;
+        long diagonal7 = full7 | BORDER;
+        long stable = 0;
+        while (true) {
+            long next = own
+                    & (horizontal | ((stable << 1) & Bitboard.NOT_COLUMN_0) | ((stable >>> 1) & Bitboard.NOT_COLUMN_7))
+                    & (vertical | (stable << 8) | (stable >>> 8))
+                    & (diagonal9 | ((stable << 9) & Bitboard.NOT_COLUMN_0) | ((stable >>> 9) & Bitboard.NOT_COLUMN_7))
+                    & (diagonal7 | ((stable << 7) & Bitboard.NOT_COLUMN_7) | ((stable >>> 7) & Bitboard.NOT_COLUMN_0));
+            if (next == stable) {
+                return stable;
+            }
+            stable = next;
+        }
+    }
+
+    /**
+     * Finds the empty squares next to any of a player's discs, which are where the other player could later move.
+     */
+    private static long frontier(long discs, long empty) {
+        long around = (discs << 8) | (discs >>> 8)
+                | (((discs << 1) | (discs << 9) | (discs >>> 7)) & Bitboard.NOT_COLUMN_0)
+                | (((discs >>> 1) | (discs >>> 9) | (discs << 7)) & Bitboard.NOT_COLUMN_7);
+        return around & empty;
+    }
+
+    private static long oddQuadrants(long empty) {
+        long odd = 0;
+        for (long quadrant : QUADRANTS) {
+            if ((Long.bitCount(empty & quadrant) & 1) != 0) {
+                odd |= quadrant;
+            }
+        }
+        return odd;
+    }
+
+    /**
+     * Hashes a position from the point of view of the player to move. The solver's scores depend only on whose
+     * pieces are whose, not on their colors, so the side to move does not need to be part of the key.
+     */
+    private static long key(long player, long opponent) {
+        long h = player * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(opponent * 0xC2B2AE3D27D4EB4FL, 31);
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+}
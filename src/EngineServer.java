@@ -0,0 +1,484 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * A headless engine that serves bot moves over a line-based text protocol, modelled on NBoard's, on standard input
+ * and output or to any number of clients on a local TCP port.
+ * <p>
+ * Every session has its own board and settings and runs on its own virtual thread, so thousands of mostly idle
+ * connections cost little. The searches themselves run on a fixed pool of worker threads, one per core by default,
+ * with a bounded queue: a request that finds the queue full is answered "error busy" at once. Each worker keeps its
+ * own bot, with its own transposition table; what the bots share is read-only, the pattern weights and the opening
+ * book, or lock-free, the {@link AnalysisCache} if the server has one. Every bot counts into one {@link EngineStats},
+ * which the "stats" command returns.
+ * <p>
+ * Commands, one per line. Squares and positions are in the standard notation that NBoard and recorded games use,
+ * where black moves first and opens with d3, c4, f5 or e6; the server converts them to and from this board's own
+ * orientation (see {@link GameReader}). Positions are written in the format of {@link Othello#Othello(String)}, with
+ * 'X' or '*' for black:
+ * <pre>
+ * new                  start a new game
+ * set position TEXT    set the board, 64 squares and the side to move, "X" for black
+ * set depth N          search up to N plies deep (default 8)
+ * set time MS          think up to MS milliseconds a move (default 1000, 0 for no limit)
+ * move SQUARE|pass     play a move on the board
+ * go                   answers "=== SQUARE/SCORE/SECONDS", the best move, its score in discs and the time taken
+ * hint N               answers "search SQUARE SCORE 0 DEPTH" for the N best moves, best first, then "hint done"
+ * stop                 makes a running go or hint answer as soon as possible
+ * ping N               answers "pong N" once every earlier command has been answered
+ * stats                answers "stats JSON" with the engine statistics of the whole server
+ * quit                 ends the session
+ * </pre>
+ * The engine does not play its own moves; the client sends them back with "move", as with NBoard. Anything else is
+ * answered with a line starting "error".
+ */
+public class EngineServer {
+    private static final int DEFAULT_DEPTH = 8;
+    private static final long DEFAULT_TIME_MILLIS = 1000;
+    private final ThreadPoolExecutor workers;
+    private final ThreadLocal<BotPlayer> bots;
+    private final EngineStats stats = new EngineStats();
+    private final OpeningBook book;
+    private volatile AnalysisCache cache;
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Constructor for a server.
+     * @param workerCount The number of searches that can run at once.
+     * @param queueSize The number of searches that can wait for a worker before requests are turned away.
+     * @param hashMb The size of each bot's transposition table in megabytes.
+     */
+    public EngineServer(int workerCount, int queueSize, int hashMb) {
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "engine-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        book = OpeningBook.openDefault();
+        bots = ThreadLocal.withInitial(() -> {
+            BotPlayer bot = Tournament.createBot("depth=" + DEFAULT_DEPTH + ",hash=" + hashMb);
+            bot.setOpeningBook(book);
+            bot.setStats(stats);
+            bot.setAnalysisCache(cache);
+            return bot;
+        });
+    }
+
+    /**
+     * Sets a persistent cache for every bot of the server to share, so a restarted server answers positions it has
+     * searched before as quickly as it did before the restart. It has to be set before the first request.
+     * @param cache The cache, or null for none.
+     */
+    public void setAnalysisCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the statistics every bot of the server counts into.
+     * @return The server's statistics.
+     */
+    public EngineStats returnStats() {
+        return stats;
+    }
+
+    /**
+     * Serves one session until the client quits or closes its input.
+     * @param in The commands.
+     * @param out Where to write the answers.
+     * @throws IOException If the commands cannot be read.
+     */
+    public void serve(Reader in, Writer out) throws IOException {
+        new Session(new BufferedReader(in), new PrintWriter(out, true)).run();
+    }
+
+    /**
+     * Accepts clients on a local TCP port until {@link #close()} is called, serving each on its own virtual thread.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param ready Called with the port once the server is listening, or null.
+     * @throws IOException If the port cannot be opened.
+     */
+    public void listen(int port, IntConsumer ready) throws IOException {
+        try (ServerSocket socket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress())) {
+            serverSocket = socket;
+            if (ready != null) {
+                ready.accept(socket.getLocalPort());
+            }
+            while (!socket.isClosed()) {
+                Socket client;
+                try {
+                    client = socket.accept();
+                }
+                catch (IOException e) {
+                    if (socket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                Thread.ofVirtual().name("session-" + client.getPort()).start(() -> {
+                    try (Socket connection = client) {
+                        serve(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8),
+                                new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+                    }
+                    catch (IOException e) {
+                        // The client went away; its session simply ends.
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Stops accepting clients and stops the search workers.
+     */
+    public void close() {
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Closing is best effort.
+            }
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Returns the calling worker's bot, set to a search depth and time limit. A worker keeps one bot, and one
+     * transposition table, for every session it serves.
+     */
+    private BotPlayer bot(int depth, long timeMillis) {
+        BotPlayer bot = bots.get();
+        bot.setLimits(depth, timeMillis);
+        return bot;
+    }
+
+    /**
+     * One client's board, settings and running search.
+     */
+    private class Session {
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private Othello board = new Othello();
+        private int depth = DEFAULT_DEPTH;
+        private long timeMillis = DEFAULT_TIME_MILLIS;
+        private Future<?> search;
+        // The bot running this session's search, guarded by this session's lock.
+        private BotPlayer searchingBot;
+        private boolean stopRequested;
+
+        Session(BufferedReader in, PrintWriter out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        void run() throws IOException {
+            try {
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    String[] words = line.trim().split("\\s+", 3);
+                    if (words[0].isEmpty()) {
+                        continue;
+                    }
+                    if (words[0].equals("stop")) {
+                        stop();
+                        continue;
+                    }
+                    awaitSearch();
+                    if (words[0].equals("quit")) {
+                        return;
+                    }
+                    handle(words);
+                }
+            }
+            finally {
+                stop();
+                awaitSearch();
+            }
+        }
+
+        private void handle(String[] words) {
+            try {
+                switch (words[0]) {
+                    case "new":
+                        board.resetBoard();
+                        break;
+                    case "set":
+                        set(words);
+                        break;
+                    case "move":
+                        move(argument(words, 1));
+                        break;
+                    case "go":
+                        submit(() -> go(new Othello(board), depth, timeMillis));
+                        break;
+                    case "hint":
+                        int count = Integer.parseInt(argument(words, 1));
+                        submit(() -> hint(new Othello(board), depth, timeMillis, count));
+                        break;
+                    case "ping":
+                        send("pong " + (words.length > 1 ? words[1] : ""));
+                        break;
+                    case "stats":
+                        send("stats " + stats.snapshot().toJson());
+                        break;
+                    default:
+                        send("error unknown command " + words[0]);
+                }
+            }
+            catch (IllegalArgumentException e) {
+                send("error " + e.getMessage());
+            }
+        }
+
+        private void set(String[] words) {
+            String value = argument(words, 2);
+            switch (argument(words, 1)) {
+                case "position":
+                    board = GameReader.fromStandardPosition(value);
+                    break;
+                case "depth":
+                    int newDepth = Integer.parseInt(value);
+                    if (newDepth < 1 || newDepth > 60) {
+                        throw new IllegalArgumentException("depth must be from 1 to 60");
+                    }
+                    depth = newDepth;
+                    break;
+                case "time":
+                    long newTime = Long.parseLong(value);
+                    if (newTime < 0) {
+                        throw new IllegalArgumentException("time must not be negative");
+                    }
+                    timeMillis = newTime;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown setting " + words[1]);
+            }
+        }
+
+        private void move(String name) {
+            if (name.equals("pass")) {
+                if (board.legalMoves() != 0) {
+                    throw new IllegalArgumentException("cannot pass with legal moves");
+                }
+                board.pass();
+                return;
+            }
+            int square = parseSquare(name);
+            if ((board.legalMoves() & (1L << square)) == 0) {
+                throw new IllegalArgumentException("illegal move " + name);
+            }
+            board.makeMove(square >>> 3, square & 7);
+        }
+
+        /**
+         * Runs a search on a worker, or answers at once if the workers are all busy and the queue is full.
+         */
+        private void submit(Runnable task) {
+            synchronized (this) {
+                stopRequested = false;
+            }
+            try {
+                search = workers.submit(task);
+            }
+            catch (RejectedExecutionException e) {
+                send("error busy");
+            }
+        }
+
+        private void go(Othello position, int depth, long timeMillis) {
+            BotPlayer bot = startSearch(depth, timeMillis);
+            try {
+                long start = System.nanoTime();
+                int move = bot.chooseSquare(position);
+                SearchResult result = bot.returnLastResult();
+                int score = result != null ? result.returnScore() : 0;
+                send(String.format(Locale.ROOT, "=== %s/%.2f/%.3f", GameReader.standardName(move),
+                        score / (double) Evaluation.DISC, (System.nanoTime() - start) / 1e9));
+            }
+            finally {
+                endSearch();
+            }
+        }
+
+        private void hint(Othello position, int depth, long timeMillis, int count) {
+            long moves = position.legalMoves();
+            if (moves == 0) {
+                send("search pass 0 0 0");
+                send("hint done");
+                return;
+            }
+            // Every move gets an equal share of the time, and is searched one ply less deep from the next position.
+            long share = timeMillis == 0 ? 0 : Math.max(1, timeMillis / Long.bitCount(moves));
+            BotPlayer bot = startSearch(Math.max(1, depth - 1), share);
+            try {
+                List<int[]> scored = new ArrayList<>();
+                for (; moves != 0; moves &= moves - 1) {
+                    // A stop only reaches the reply being searched, so the moves not searched yet are left out.
+                    synchronized (this) {
+                        if (stopRequested) {
+                            break;
+                        }
+                    }
+                    int square = Long.numberOfTrailingZeros(moves);
+                    Othello next = new Othello(position);
+                    next.makeMove(square >>> 3, square & 7);
+                    bot.chooseSquare(next);
+                    SearchResult reply = bot.returnLastResult();
+                    scored.add(new int[] {square, -reply.returnScore(), reply.returnDepth() + 1});
+                }
+                scored.sort((a, b) -> Integer.compare(b[1], a[1]));
+                for (int i = 0; i < Math.min(count, scored.size()); i++) {
+                    int[] hint = scored.get(i);
+                    send(String.format(Locale.ROOT, "search %s %.2f 0 %d", GameReader.standardName(hint[0]),
+                            hint[1] / (double) Evaluation.DISC, hint[2]));
+                }
+                send("hint done");
+            }
+            finally {
+                endSearch();
+            }
+        }
+
+        /**
+         * Records which bot runs this session's search, so "stop" can reach it, and honours a stop that came first.
+         * The bot's own stop, which may be left from another session on this worker, is withdrawn under the same lock
+         * as {@link #stop()} takes, so a stop is either seen here or reaches the bot.
+         */
+        private synchronized BotPlayer startSearch(int depth, long timeMillis) {
+            BotPlayer bot = stopRequested ? bot(1, timeMillis) : bot(depth, timeMillis);
+            bot.resetStop();
+            searchingBot = bot;
+            return bot;
+        }
+
+        private synchronized void endSearch() {
+            searchingBot = null;
+        }
+
+        private synchronized void stop() {
+            stopRequested = true;
+            if (searchingBot != null) {
+                searchingBot.stop();
+            }
+        }
+
+        private void awaitSearch() {
+            Future<?> running = search;
+            if (running == null) {
+                return;
+            }
+            search = null;
+            try {
+                running.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                send("error search failed: " + e.getCause());
+            }
+        }
+
+        private void send(String line) {
+            synchronized (out) {
+                out.println(line);
+            }
+        }
+    }
+
+    private static String argument(String[] words, int index) {
+        if (index >= words.length) {
+            throw new IllegalArgumentException("missing argument");
+        }
+        return words[index];
+    }
+
+    /**
+     * Reads a square name in the standard notation, such as "d3".
+     * @param name The name, a column letter from a to h and a row from 1 to 8.
+     * @return The index of the square on this board.
+     */
+    static int parseSquare(String name) {
+        String text = name.toLowerCase(Locale.ROOT);
+        if (text.length() != 2 || text.charAt(0) < 'a' || text.charAt(0) > 'h' || text.charAt(1) < '1'
+                || text.charAt(1) > '8') {
+            throw new IllegalArgumentException("bad square " + name);
+        }
+        return GameReader.fromStandard(text.charAt(1) - '1', text.charAt(0) - 'a');
+    }
+
+    /**
+     * Runs the server from the command line.
+     * @param args Any of "-port N" to listen on a local TCP port instead of serving one session on standard input
+     *             and output, "-workers N" (default all cores), "-queue N" for the searches that may wait for a worker
+     *             (default 1024), "-hash MB" for each bot's transposition table (default 16), "-cache FILE" for an
+     *             {@link AnalysisCache} shared by the bots and kept across restarts, and "-cache-mb MB" for its size
+     *             if it is created (default {@link AnalysisCache#DEFAULT_SIZE_MB}).
+     * @throws IOException If the port cannot be opened or standard input cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = -1;
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        int queueSize = 1024;
+        int hashMb = 16;
+        Path cacheFile = null;
+        int cacheMb = AnalysisCache.DEFAULT_SIZE_MB;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-workers":
+                    workerCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-queue":
+                    queueSize = Integer.parseInt(args[++i]);
+                    break;
+                case "-hash":
+                    hashMb = Integer.parseInt(args[++i]);
+                    break;
+                case "-cache":
+                    cacheFile = Paths.get(args[++i]);
+                    break;
+                case "-cache-mb":
+                    cacheMb = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        EngineServer server = new EngineServer(workerCount, queueSize, hashMb);
+        try (AnalysisCache cache = cacheFile != null ? AnalysisCache.open(cacheFile, cacheMb) : null) {
+            server.setAnalysisCache(cache);
+            if (port < 0) {
+                server.serve(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                        new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                server.close();
+                return;
+            }
+            server.listen(port, actual -> System.err.println("Listening on port " + actual));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the bots and search engines that share it, safe to update from any number of
+ * threads and to poll from another. Give one to {@link BotPlayer#setStats(EngineStats)}; bots without one count
+ * nothing.
+ * <p>
+ * The searchers count nodes, cutoffs, table probes and move generations in plain fields of their own and add them
+ * here once per root search, so the search itself pays nothing for the instrumentation. The same events are also
+ * reported to Java Flight Recorder (see {@link ChooseMoveEvent} and {@link SearchIterationEvent}) whenever a recording
+ * asks for them.
+ */
+public class EngineStats {
+    /** Where a bot's move came from. */
+    public enum Source {
+        BOOK, SEARCH, SOLVE, HEURISTIC
+    }
+
+    private final LongAdder[] moves = new LongAdder[Source.values().length];
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder iterations = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder cacheProbes = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder moveGenerations = new LongAdder();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram iterationLatency = new LatencyHistogram();
+
+    /**
+     * Constructor for a set of statistics with every counter at zero.
+     */
+    public EngineStats() {
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a move a bot chose.
+     * @param source Where the move came from.
+     * @param nanos How long choosing it took.
+     * @param nodes The positions visited to choose it, if they were not already counted by a search engine.
+     */
+    void recordMove(Source source, long nanos, long nodes) {
+        moves[source.ordinal()].increment();
+        moveLatency.record(nanos);
+        this.nodes.add(nodes);
+    }
+
+    /**
+     * Records a completed search iteration.
+     * @param nanos The time since the search started.
+     */
+    void recordIteration(long nanos) {
+        iterations.increment();
+        iterationLatency.record(nanos);
+    }
+
+    /**
+     * Adds the counts of one searcher's root search.
+     * @param searcher The searcher, which has finished searching.
+     */
+    void recordSearcher(Searcher searcher) {
+        nodes.add(searcher.nodes());
+        cutoffs.add(searcher.cutoffs());
+        tableProbes.add(searcher.tableProbes());
+        tableHits.add(searcher.tableHits());
+        cacheProbes.add(searcher.cacheProbes());
+        cacheHits.add(searcher.cacheHits());
+        moveGenerations.add(searcher.moveGenerations());
+    }
+
+    /**
+     * Records the start of a search.
+     */
+    void recordSearch() {
+        searches.increment();
+    }
+
+    /**
+     * Sets every counter back to zero.
+     */
+    public void reset() {
+        for (LongAdder counter : moves) {
+            counter.reset();
+        }
+        searches.reset();
+        iterations.reset();
+        nodes.reset();
+        cutoffs.reset();
+        tableProbes.reset();
+        tableHits.reset();
+        cacheProbes.reset();
+        cacheHits.reset();
+        moveGenerations.reset();
+        moveLatency.reset();
+        iterationLatency.reset();
+    }
+
+    /**
+     * Copies the statistics as they are now, for polling or dumping.
+     * @return The copy.
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        long total = 0;
+        for (Source source : Source.values()) {
+            total += moves[source.ordinal()].sum();
+        }
+        counters.put("moves", total);
+        for (Source source : Source.values()) {
+            counters.put("moves." + source.name().toLowerCase(Locale.ROOT), moves[source.ordinal()].sum());
+        }
+        counters.put("searches", searches.sum());
+        counters.put("iterations", iterations.sum());
+        counters.put("nodes", nodes.sum());
+        counters.put("cutoffs", cutoffs.sum());
+        counters.put("tableProbes", tableProbes.sum());
+        counters.put("tableHits", tableHits.sum());
+        counters.put("cacheProbes", cacheProbes.sum());
+        counters.put("cacheHits", cacheHits.sum());
+        counters.put("moveGenerations", moveGenerations.sum());
+        return new Snapshot(counters, moveLatency.snapshot(), iterationLatency.snapshot());
+    }
+
+    /**
+     * The statistics at one moment.
+     */
+    public static class Snapshot {
+        private final Map<String, Long> counters;
+        private final LatencyHistogram.Snapshot moveLatency;
+        private final LatencyHistogram.Snapshot iterationLatency;
+
+        Snapshot(Map<String, Long> counters, LatencyHistogram.Snapshot moveLatency,
+                 LatencyHistogram.Snapshot iterationLatency) {
+            this.counters = Collections.unmodifiableMap(counters);
+            this.moveLatency = moveLatency;
+            this.iterationLatency = iterationLatency;
+        }
+
+        /**
+         * Returns the counters by name: "moves" and "moves.book", "moves.search", "moves.solve" and
+         * "moves.heuristic" by source, then "searches", "iterations", "nodes", "cutoffs", "tableProbes", "tableHits",
+         * "cacheProbes", "cacheHits" and "moveGenerations".
+         * @return The counters, in that order.
+         */
+        public Map<String, Long> returnCounters() {
+            return counters;
+        }
+
+        /**
+         * Returns the time the bots took per move, including book moves and endgame solves.
+         * @return The move latency histogram.
+         */
+        public LatencyHistogram.Snapshot returnMoveLatency() {
+            return moveLatency;
+        }
+
+        /**
+         * Returns the time from the start of a search to the end of each of its iterations.
+         * @return The iteration latency histogram.
+         */
+        public LatencyHistogram.Snapshot returnIterationLatency() {
+            return iterationLatency;
+        }
+
+        /**
+         * Writes the snapshot as a JSON object.
+         * @return The JSON text.
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder("{\"counters\": {");
+            String separator = "";
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                json.append(separator).append('"').append(counter.getKey()).append("\": ").append(counter.getValue());
+                separator = ", ";
+            }
+            return json.append("}, \"moveLatency\": ").append(moveLatency.toJson())
+                    .append(", \"iterationLatency\": ").append(iterationLatency.toJson()).append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Static evaluation of a position for the search, from the point of view of the player to move.
+ * Scores are in hundredths of a disc, so a finished game worth +2 discs scores 200.
+ */
+public final class Evaluation {
+    /** A score larger than any evaluation or final result. */
+    public static final int INFINITY = 30000;
+    /** The value of one disc of final margin. */
+    public static final int DISC = 100;
+
+    private static final int MOBILITY_WEIGHT = 40;
+    private static final int[] SQUARE_WEIGHTS = {
+            400, -80,  40,  20,  20,  40, -80, 400,
+            -80, -200, -8,  -8,  -8,  -8, -200, -80,
+             40,  -8,   4,   4,   4,   4,  -8,  40,
+             20,  -8,   4,   0,   0,   4,  -8,  20,
+             20,  -8,   4,   0,   0,   4,  -8,  20,
+             40,  -8,   4,   4,   4,   4,  -8,  40,
+            -80, -200, -8,  -8,  -8,  -8, -200, -80,
+            400, -80,  40,  20,  20,  40, -80, 400
+    };
+
+    private Evaluation() {
+    }
+
+    /**
+     * Evaluates a position that is not yet finished.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @return An estimate of the final disc margin for the player to move, in hundredths of a disc.
+     */
+    public static int evaluate(long player, long opponent) {
+        int score = 0;
+        for (long b = player; b != 0; b &= b - 1) {
+            score += SQUARE_WEIGHTS[Long.numberOfTrailingZeros(b)];
+        }
+        for (long b = opponent; b != 0; b &= b - 1) {
+            score -= SQUARE_WEIGHTS[Long.numberOfTrailingZeros(b)];
+        }
+        int mobility = Long.bitCount(Bitboard.legalMoves(player, opponent))
+                - Long.bitCount(Bitboard.legalMoves(opponent, player));
+        score += MOBILITY_WEIGHT * mobility;
+        return Math.max(-63 * DISC, Math.min(63 * DISC, score));
+    }
+
+    /**
+     * Returns the weight of holding one square in {@link #evaluate(long, long)}.
+     * @param square The index of the square.
+     * @return The value of a disc on that square, in hundredths of a disc.
+     */
+    static int squareWeight(int square) {
+        return SQUARE_WEIGHTS[square];
+    }
+
+    /**
+     * Scores a finished game, counting discs the same way as {@link Othello#returnFinalScores()}.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @return The final disc margin for the player to move, in hundredths of a disc.
+     */
+    public static int finalScore(long player, long opponent) {
+        return (Long.bitCount(player) - Long.bitCount(opponent)) * DISC;
+    }
+}
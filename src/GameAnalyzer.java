@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes a database of recorded games in parallel. The games are streamed from a {@link GameReader} in batches and
+ * replayed on a fixed pool of threads through {@link Othello#makeMove(int, int)}, each thread gathering its own
+ * statistics, which are merged at the end:
+ * <ul>
+ *     <li>how often each square is played at each ply,</li>
+ *     <li>the results of the games through every position of the opening, with symmetric positions counted as one,</li>
+ *     <li>optionally, how often a bot would have played the recorded move, on one sampled position per game.</li>
+ * </ul>
+ * A game's result is the one recorded in the database if it has one, else the final score of the replayed game. A
+ * game that stops before the end without a recorded result still counts towards the squares played, but is counted
+ * apart as incomplete and left out of the results.
+ * <p>
+ * The queue of batches is bounded, so reading never runs far ahead of the analysis and memory use stays flat.
+ */
+public class GameAnalyzer {
+    private static final int BATCH_SIZE = 1024;
+
+    private final int threads;
+    private final int openingPlies;
+    private final int botDepth;
+    private AnalysisCache cache;
+
+    /**
+     * Constructor for an analyzer.
+     * @param threads The number of threads to replay games on.
+     * @param openingPlies The number of plies from the start for which positions are tracked.
+     * @param botDepth The search depth of the bot whose agreement with the games is measured, or 0 to skip it.
+     */
+    public GameAnalyzer(int threads, int openingPlies, int botDepth) {
+        this.threads = threads;
+        this.openingPlies = openingPlies;
+        this.botDepth = botDepth;
+    }
+
+    /**
+     * Sets a persistent cache for the bot searches, so a database analyzed again, or a run started over, does not
+     * search the same positions again.
+     * @param cache The cache, or null for none.
+     */
+    public void setAnalysisCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * The results of the games through one position of the opening.
+     */
+    static class PositionStats {
+        final CanonicalPosition position;
+        long games;
+        long wins;
+        long draws;
+        long marginSum;
+
+        PositionStats(CanonicalPosition position) {
+            this.position = position;
+        }
+    }
+
+    /**
+     * The statistics of part of the database. Each worker fills its own, so nothing is shared while replaying.
+     */
+    static class Summary {
+        long games;
+        long invalidGames;
+        long incompleteGames;
+        long moves;
+        long firstPlayerWins;
+        long draws;
+        final long[][] squareCounts = new long[GameReader.MAX_MOVES][64];
+        final Map<CanonicalPosition, PositionStats> positions = new HashMap<>();
+        long botSamples;
+        long botAgreements;
+
+        void add(Summary other) {
+            games += other.games;
+            invalidGames += other.invalidGames;
+            incompleteGames += other.incompleteGames;
+            moves += other.moves;
+            firstPlayerWins += other.firstPlayerWins;
+            draws += other.draws;
+            for (int ply = 0; ply < squareCounts.length; ply++) {
+                for (int square = 0; square < 64; square++) {
+                    squareCounts[ply][square] += other.squareCounts[ply][square];
+                }
+            }
+            for (PositionStats stats : other.positions.values()) {
+                PositionStats mine = positions.get(stats.position);
+                if (mine == null) {
+                    positions.put(stats.position, stats);
+                }
+                else {
+                    mine.games += stats.games;
+                    mine.wins += stats.wins;
+                    mine.draws += stats.draws;
+                    mine.marginSum += stats.marginSum;
+                }
+            }
+            botSamples += other.botSamples;
+            botAgreements += other.botAgreements;
+        }
+    }
+
+    /**
+     * Analyzes every game a reader returns.
+     * @param reader The games to analyze.
+     * @return The merged statistics.
+     * @throws IOException If the games cannot be read.
+     */
+    public Summary analyze(GameReader reader) throws IOException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        List<Worker> allWorkers = new ArrayList<>();
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            long index = 0;
+            boolean more = true;
+            while (more) {
+                int[][] games = new int[BATCH_SIZE][GameReader.MAX_MOVES];
+                int[] lengths = new int[BATCH_SIZE];
+                int[] results = new int[BATCH_SIZE];
+                int count = 0;
+                while (count < BATCH_SIZE && (lengths[count] = reader.next(games[count])) >= 0) {
+                    results[count++] = reader.returnResult();
+                }
+                more = count == BATCH_SIZE;
+                if (count == 0) {
+                    break;
+                }
+                int batchCount = count;
+                long firstIndex = index;
+                index += count;
+                pending.add(pool.submit(() -> {
+                    Worker worker = workers.get();
+                    if (!worker.registered) {
+                        worker.registered = true;
+                        synchronized (allWorkers) {
+                            allWorkers.add(worker);
+                        }
+                    }
+                    for (int i = 0; i < batchCount; i++) {
+                        worker.replay(games[i], lengths[i], results[i], firstIndex + i);
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Game analysis failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        Summary total = new Summary();
+        for (Worker worker : allWorkers) {
+            total.add(worker.summary);
+        }
+        return total;
+    }
+
+    /**
+     * Replays games into one thread's statistics.
+     */
+    private class Worker {
+        final Summary summary = new Summary();
+        final BotPlayer bot = botDepth > 0 ? new BotPlayer(new SearchEngine(botDepth, 0, 4, 1), 0) : null;
+        final long[] players = new long[GameReader.MAX_MOVES];
+        final long[] opponents = new long[GameReader.MAX_MOVES];
+        final boolean[] firstPlayerToMove = new boolean[GameReader.MAX_MOVES];
+        boolean registered;
+
+        Worker() {
+            if (bot != null) {
+                bot.setAnalysisCache(cache);
+            }
+        }
+
+        void replay(int[] moves, int length, int result, long index) {
+            Othello game = new Othello();
+            int sample = bot != null && length > 0 ? (int) ((index * 0x9E3779B97F4A7C15L >>> 40) % length) : -1;
+            for (int ply = 0; ply < length; ply++) {
+                if (game.legalMoves() == 0) {
+                    if (game.isGameOver()) {
+                        summary.invalidGames++;
+                        return;
+                    }
+                    game.pass();
+                }
+                int square = moves[ply];
+                if ((game.legalMoves() & (1L << square)) == 0) {
+                    summary.invalidGames++;
+                    return;
+                }
+                boolean first = game.returnPlayer();
+                firstPlayerToMove[ply] = first;
+                players[ply] = first ? game.returnWhiteDiscs() : game.returnBlackDiscs();
+                opponents[ply] = first ? game.returnBlackDiscs() : game.returnWhiteDiscs();
+                if (ply == sample) {
+                    summary.botSamples++;
+                    if (bot.chooseSquare(game) == square) {
+                        summary.botAgreements++;
+                    }
+                }
+                game.makeMove(square >>> 3, square & 7);
+            }
+
+            summary.moves += length;
+            for (int ply = 0; ply < length; ply++) {
+                summary.squareCounts[ply][moves[ply]]++;
+            }
+            int margin;
+            if (result != GameReader.NO_RESULT) {
+                margin = 2 * result - 64;
+            }
+            else if (game.isGameOver()) {
+                int[] discs = game.returnFinalScores();
+                margin = discs[0] - discs[1];
+            }
+            else {
+                summary.incompleteGames++;
+                return;
+            }
+            summary.games++;
+            if (margin > 0) {
+                summary.firstPlayerWins++;
+            }
+            else if (margin == 0) {
+                summary.draws++;
+            }
+            for (int ply = 0; ply < Math.min(length, openingPlies); ply++) {
+                record(players[ply], opponents[ply], firstPlayerToMove[ply] ? margin : -margin);
+            }
+        }
+
+        private void record(long player, long opponent, int margin) {
+            PositionStats stats = summary.positions.computeIfAbsent(new CanonicalPosition(player, opponent),
+                    PositionStats::new);
+            stats.games++;
+            if (margin > 0) {
+                stats.wins++;
+            }
+            else if (margin == 0) {
+                stats.draws++;
+            }
+            stats.marginSum += margin;
+        }
+    }
+
+    /**
+     * Writes a summary as text: the totals, the most played squares of the first plies, and the most common opening
+     * positions with their results. Squares are named in the standard orientation of the database.
+     * @param summary The statistics to write.
+     * @param out Where to write them.
+     * @param topPositions The number of opening positions to list.
+     */
+    static void write(Summary summary, PrintWriter out, int topPositions) {
+        out.printf("games %d, incomplete %d, invalid %d, moves %d%n", summary.games, summary.incompleteGames,
+                summary.invalidGames, summary.moves);
+        if (summary.games > 0) {
+            out.printf("first player wins %.1f%%, draws %.1f%%%n", 100.0 * summary.firstPlayerWins / summary.games,
+                    100.0 * summary.draws / summary.games);
+        }
+        if (summary.botSamples > 0) {
+            out.printf("bot agreement %.1f%% of %d sampled moves%n",
+                    100.0 * summary.botAgreements / summary.botSamples, summary.botSamples);
+        }
+        out.println("ply  most played squares");
+        for (int ply = 0; ply < Math.min(20, GameReader.MAX_MOVES); ply++) {
+            long[] counts = summary.squareCounts[ply];
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0) {
+                break;
+            }
+            StringBuilder line = new StringBuilder(String.format("%3d ", ply + 1));
+            boolean[] used = new boolean[64];
+            for (int rank = 0; rank < 4; rank++) {
+                int best = -1;
+                for (int square = 0; square < 64; square++) {
+                    if (!used[square] && counts[square] > 0 && (best < 0 || counts[square] > counts[best])) {
+                        best = square;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                used[best] = true;
+                line.append(String.format("  %s %5.1f%%", GameReader.standardName(best), 100.0 * counts[best] / total));
+            }
+            out.println(line);
+        }
+        List<PositionStats> positions = new ArrayList<>(summary.positions.values());
+        positions.sort((a, b) -> a.games != b.games ? Long.compare(b.games, a.games)
+                : discs(a.position) - discs(b.position));
+        out.println("games   win%  draw%  mean margin  position (player to move = O)");
+        for (int i = 0; i < Math.min(topPositions, positions.size()); i++) {
+            PositionStats stats = positions.get(i);
+            Othello board = new Othello(stats.position.returnPlayer(), stats.position.returnOpponent(), true);
+            out.printf("%5d %6.1f %6.1f %12.2f  %s%n", stats.games, 100.0 * stats.wins / stats.games,
+                    100.0 * stats.draws / stats.games, (double) stats.marginSum / stats.games,
+                    board.toString().substring(0, 64));
+        }
+        out.flush();
+    }
+
+    private static int discs(CanonicalPosition position) {
+        return Long.bitCount(position.returnPlayer() | position.returnOpponent());
+    }
+
+    /**
+     * Analyzes a game database from the command line.
+     * @param args The database file (".wtb" for WTHOR, anything else for text move lists), then any of "-threads N"
+     *             (default all cores), "-opening-plies N" (default 12), "-bot-depth N" to measure agreement with a
+     *             searching bot (default 0, off), "-cache FILE" to keep the bot's searches in an
+     *             {@link AnalysisCache} across runs, "-top N" for the number of positions listed (default 20) and
+     *             "-out FILE" to write the summary to a file as well.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: GameAnalyzer FILE [-threads N] [-opening-plies N] [-bot-depth N]"
+                    + " [-cache FILE] [-top N] [-out FILE]");
+            System.exit(2);
+        }
+        Path in = Paths.get(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingPlies = 12;
+        int botDepth = 0;
+        int top = 20;
+        Path out = null;
+        Path cacheFile = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-opening-plies":
+                    openingPlies = Integer.parseInt(args[++i]);
+                    break;
+                case "-bot-depth":
+                    botDepth = Integer.parseInt(args[++i]);
+                    break;
+                case "-cache":
+                    cacheFile = Paths.get(args[++i]);
+                    break;
+                case "-top":
+                    top = Integer.parseInt(args[++i]);
+                    break;
+                case "-out":
+                    out = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        long start = System.nanoTime();
+        Summary summary;
+        GameAnalyzer analyzer = new GameAnalyzer(threads, openingPlies, botDepth);
+        try (GameReader reader = GameReader.open(in);
+             AnalysisCache cache = cacheFile != null
+                     ? AnalysisCache.open(cacheFile, AnalysisCache.DEFAULT_SIZE_MB) : null) {
+            analyzer.setAnalysisCache(cache);
+            summary = analyzer.analyze(reader);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        PrintWriter console = new PrintWriter(System.out);
+        write(summary, console, top);
+        console.printf("%.2f s, %.0f games/s on %d threads%n", seconds,
+                (summary.games + summary.invalidGames) / seconds, threads);
+        console.flush();
+        if (out != null) {
+            try (PrintWriter file = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+                write(summary, file, top);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads recorded games one at a time from a database file, so archives of any size can be streamed.
+ * <p>
+ * Recorded games use the standard orientation, where black moves first. This board starts from the same four discs but
+ * lets white move first, so readers return every game mirrored left to right with the colors swapped: the moves are
+ * square indices on this board, the first move belongs to {@link Othello}'s first player, and the game replays
+ * exactly through {@link Othello#makeMove(int, int)}. {@link #standardName(int)} gives a square's name in the original
+ * notation. Passes are not recorded; a player with no legal move simply passes.
+ */
+public interface GameReader extends Closeable {
+    /** The most moves a game can have. */
+    int MAX_MOVES = 60;
+    /** The {@link Symmetry} that mirrors the board left to right, between this board and the standard one. */
+    int MIRROR_COLUMNS = 2;
+    /** The result of a game whose database does not record one. */
+    int NO_RESULT = -1;
+
+    /**
+     * Reads the next game.
+     * @param moves Filled with the squares of the game's moves, in order. It needs room for {@link #MAX_MOVES}.
+     * @return The number of moves read, or -1 at the end of the database.
+     * @throws IOException If the database cannot be read or a game cannot be decoded.
+     */
+    int next(int[] moves) throws IOException;
+
+    /**
+     * Returns the result recorded with the game last read. It is the final score even when the moves stop early, for
+     * example after a resignation or a loss on time.
+     * @return The number of discs of the first player at the end, with the empty squares given to the winner, or
+     * {@link #NO_RESULT} if the database records no results.
+     */
+    default int returnResult() {
+        return NO_RESULT;
+    }
+
+    /**
+     * Opens a database, choosing the reader by file name: ".wtb" files are read as WTHOR game files, anything else as
+     * text with one game per line.
+     * @param file The database.
+     * @return A reader positioned at the first game.
+     * @throws IOException If the file cannot be opened.
+     */
+    static GameReader open(Path file) throws IOException {
+        if (file.getFileName().toString().toLowerCase().endsWith(".wtb")) {
+            return new WthorReader(file);
+        }
+        return new TextGameReader(file);
+    }
+
+    /**
+     * Converts a square in the standard orientation to a square on this board.
+     * @param row The row in the standard orientation, from 0 (row 1) to 7.
+     * @param column The column in the standard orientation, from 0 (column a) to 7.
+     * @return The index of the square on this board.
+     */
+    static int fromStandard(int row, int column) {
+        return Bitboard.square(row, 7 - column);
+    }
+
+    /**
+     * Names a square of this board in the standard orientation used by recorded games.
+     * @param square The index of the square on this board, or {@link Bitboard#PASS}.
+     * @return The standard name of the square, for example "f5", or "pass".
+     */
+    static String standardName(int square) {
+        return square == Bitboard.PASS ? Bitboard.squareName(square) : Bitboard.squareName(square ^ 7);
+    }
+
+    /**
+     * Reads a position written in the standard orientation, in the text format of {@link Othello#Othello(String)}
+     * with 'X' or '*' for black, who moves first.
+     * @param text The 64 squares in the standard orientation followed by the side to move.
+     * @return The position on this board, mirrored with the colors swapped.
+     */
+    static Othello fromStandardPosition(String text) {
+        Othello standard = new Othello(text);
+        return new Othello(Symmetry.transform(standard.returnBlackDiscs(), MIRROR_COLUMNS),
+                Symmetry.transform(standard.returnWhiteDiscs(), MIRROR_COLUMNS), !standard.returnPlayer());
+    }
+
+    /**
+     * Writes a position of this board in the standard orientation, the reverse of
+     * {@link #fromStandardPosition(String)}.
+     * @param position The position on this board.
+     * @return The 64 squares in the standard orientation, with 'X' for the first player, and the side to move.
+     */
+    static String standardPosition(Othello position) {
+        return new Othello(Symmetry.transform(position.returnBlackDiscs(), MIRROR_COLUMNS),
+                Symmetry.transform(position.returnWhiteDiscs(), MIRROR_COLUMNS), !position.returnPlayer()).toString();
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations that any number of threads can record into without locking. Bucket i counts the durations
+ * from 2^(i-1) up to 2^i microseconds (bucket 0 everything under one microsecond), so percentiles are only known to
+ * within a factor of two, but recording is one {@link LongAdder} increment.
+ */
+public class LatencyHistogram {
+    /** The number of buckets; the last one also takes everything longer than about 18 minutes. */
+    public static final int BUCKETS = 31;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor for an empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one duration.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Forgets every recorded duration.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * Copies the histogram as it is now. Durations recorded while the copy is made may or may not be in it.
+     * @return The copy.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, totalNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * The counts of a histogram at one moment.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] counts, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            long sum = 0;
+            for (long bucket : counts) {
+                sum += bucket;
+            }
+            count = sum;
+        }
+
+        /**
+         * Returns the number of recorded durations.
+         * @return The count.
+         */
+        public long returnCount() {
+            return count;
+        }
+
+        /**
+         * Returns the mean duration.
+         * @return The mean in nanoseconds, or 0 if nothing was recorded.
+         */
+        public long returnMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * Returns the longest duration.
+         * @return The maximum in nanoseconds.
+         */
+        public long returnMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Estimates a percentile by the upper edge of the bucket it falls in, capped at the longest duration.
+         * @param fraction The fraction of durations that are at most the answer, for example 0.99.
+         * @return The estimated percentile in nanoseconds, or 0 if nothing was recorded.
+         */
+        public long returnPercentileNanos(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(maxNanos, (1L << i) * 1000);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * Returns the count of one bucket.
+         * @param bucket The bucket, from 0 to {@link #BUCKETS} - 1.
+         * @return The number of durations in the bucket.
+         */
+        public long returnBucketCount(int bucket) {
+            return counts[bucket];
+        }
+
+        /**
+         * Writes the snapshot as a JSON object, with the non-empty buckets keyed by their upper edge in microseconds.
+         * @return The JSON text.
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder();
+            json.append(String.format(Locale.ROOT, "{\"count\": %d, \"meanMs\": %.3f, \"p50Ms\": %.3f,"
+                    + " \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f, \"bucketsUs\": {", count,
+                    returnMeanNanos() / 1e6, returnPercentileNanos(0.5) / 1e6, returnPercentileNanos(0.9) / 1e6,
+                    returnPercentileNanos(0.99) / 1e6, maxNanos / 1e6));
+            String separator = "";
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] > 0) {
+                    json.append(separator).append('"').append(1L << i).append("\": ").append(counts[i]);
+                    separator = ", ";
+                }
+            }
+            return json.append("}}").toString();
+        }
+    }
+}
@@ -1,13 +1,81 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Main method to create the object of type Frame, which will represent the game and execute all of it's methods
  * @author Bryan Chung
  */
 public class Main {
     /**
-     * Creates a new instance of the Frame class, allowing the game to be played.
-     * @param args Command-line arguments, not used in this project.
+     * Creates a new instance of the Frame class, allowing the game to be played, or runs one of the headless tools.
+     * @param args Command-line arguments. With no arguments the game window opens, and "-size N" opens it with an N
+     *             by N board; otherwise the first argument names a tool ("analyze", "bench", "book-build",
+     *             "cache-bench", "endgame-bench", "mcts-bench", "perft", "probcut-fit", "search-bench", "server",
+     *             "server-load", "smp-bench", "tournament", "train", "train-gen") and the rest are passed on to it.
+     * @throws IOException If a tool fails to read or write its files.
+     * @throws InterruptedException If a tool is interrupted while waiting for its threads.
      */
-    public static void main(String[] args) {
-        OthelloFrame window = new OthelloFrame();
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            OthelloFrame window = new OthelloFrame();
+            return;
+        }
+        String[] toolArgs = Arrays.copyOfRange(args, 1, args.length);
+        switch (args[0]) {
+            case "-size":
+                OthelloFrame sizedWindow = new OthelloFrame(Integer.parseInt(toolArgs[0]));
+                break;
+            case "analyze":
+                GameAnalyzer.main(toolArgs);
+                break;
+            case "bench":
+                Benchmarks.main(toolArgs);
+                break;
+            case "book-build":
+                BookBuilder.main(toolArgs);
+                break;
+            case "cache-bench":
+                CacheBenchmark.main(toolArgs);
+                break;
+            case "endgame-bench":
+                EndgameBenchmark.main(toolArgs);
+                break;
+            case "mcts-bench":
+                MctsBenchmark.main(toolArgs);
+                break;
+            case "perft":
+                Perft.main(toolArgs);
+                break;
+            case "probcut-fit":
+                ProbCutFitter.main(toolArgs);
+                break;
+            case "search-bench":
+                SearchBenchmark.main(toolArgs);
+                break;
+            case "server":
+                EngineServer.main(toolArgs);
+                break;
+            case "server-load":
+                ServerLoadTest.main(toolArgs);
+                break;
+            case "smp-bench":
+                SmpBenchmark.main(toolArgs);
+                break;
+            case "tournament":
+                Tournament.main(toolArgs);
+                break;
+            case "train":
+                Trainer.main(toolArgs);
+                break;
+            case "train-gen":
+                TrainingGenerator.main(toolArgs);
+                break;
+            default:
+                System.err.println("Unknown tool: " + args[0]);
+                System.err.println("Usage: Main [-size N | analyze|bench|book-build|cache-bench|endgame-bench"
+                        + "|mcts-bench|perft|probcut-fit|search-bench|server|server-load|smp-bench|tournament|train"
+                        + "|train-gen] [tool arguments]");
+                System.exit(2);
+        }
     }
 }
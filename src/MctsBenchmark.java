@@ -0,0 +1,65 @@
+import java.util.Locale;
+
+/**
+ * Measures the playout rate of {@link MctsEngine} and how it scales with the number of threads. Searches the midgame
+ * positions of {@link Benchmarks} for a fixed time each at 1, 2, 4, ... threads, up to the number of cores unless
+ * told otherwise, and prints the playouts per second, the speedup over one thread and the size of the trees.
+ */
+public class MctsBenchmark {
+    /**
+     * Runs the benchmark.
+     * @param args Any of "-time MS" per position (default 1000), "-threads N" for the largest thread count (default
+     *             all cores), "-nodes N" for the pool size (default {@link MctsEngine#DEFAULT_MAX_NODES}) and
+     *             "-priors off" for plain UCT.
+     */
+    public static void main(String[] args) {
+        long timeMillis = 1000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        int nodes = MctsEngine.DEFAULT_MAX_NODES;
+        boolean priors = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-time":
+                    timeMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-threads":
+                    maxThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "-nodes":
+                    nodes = Integer.parseInt(args[++i]);
+                    break;
+                case "-priors":
+                    priors = !args[++i].equals("off");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Othello[] positions = Benchmarks.load(Benchmarks.MIDGAME);
+        System.out.printf("%d positions, %d ms each, %d cores, priors %s%n", positions.length, timeMillis,
+                Runtime.getRuntime().availableProcessors(), priors ? "on" : "off");
+        System.out.println("threads     playouts   playouts/s  speedup  mean tree nodes");
+        double baseRate = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            MctsEngine engine = new MctsEngine(timeMillis, nodes, threads);
+            engine.setPriors(priors);
+            long playouts = 0;
+            long treeNodes = 0;
+            long elapsed = 0;
+            for (Othello position : positions) {
+                engine.clear();
+                SearchResult result = engine.search(position);
+                playouts += result.returnNodes();
+                elapsed += result.returnElapsedNanos();
+                treeNodes += engine.returnTreeSize();
+            }
+            engine.shutdown();
+            double rate = playouts * 1e9 / elapsed;
+            if (threads == 1) {
+                baseRate = rate;
+            }
+            System.out.printf(Locale.ROOT, "%7d %12d %12.0f %8.2f %16d%n", threads, playouts, rate, rate / baseRate,
+                    treeNodes / positions.length);
+        }
+    }
+}
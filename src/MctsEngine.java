@@ -0,0 +1,597 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo tree search engine, an alternative to the alpha-beta {@link SearchEngine}. Each playout walks down the
+ * tree from the root choosing moves by UCT, plays random moves on a pair of bitboards from the leaf it reaches to the
+ * end of the game, and adds the result to every node on its way. The move played is the root move with the most
+ * playouts. With priors on, as by default, the children of a new node get priors from the pattern evaluation of each
+ * move, and moves are chosen by PUCT instead: the exploration term is the prior times the square root of the parent's
+ * playouts over the child's, so the playouts go to the moves the evaluation likes and a move it dislikes is only
+ * tried once the others look bad.
+ * <p>
+ * The tree lives in a pool of parallel primitive arrays indexed by node, allocated once: the move into each node, the
+ * index of its first child (the children of a node are contiguous), the number of children, the prior, and the
+ * playout, win and disc margin counts. No node is an object, so a tree of millions of nodes costs the garbage
+ * collector nothing. A leaf is expanded on its fourth visit rather than its first, which keeps the tree to the part
+ * playouts have shown to matter.
+ * <p>
+ * With more than one thread the engine runs tree parallelism: every thread walks the same tree, updating the counts
+ * with atomic adds. A thread adds a virtual loss to every node on its path as it goes down and takes it back with the
+ * result, so the threads spread out over the tree instead of all following the same line. A leaf is expanded by
+ * whichever thread claims it first with a compare-and-set; the others play out from the leaf as it is.
+ * <p>
+ * Between searches the engine keeps the subtree of the position actually reached, up to {@link #REUSE_PLIES} plies
+ * below the last root, and compacts it to the front of the pool, so the playouts spent on the expected replies are
+ * not lost.
+ */
+public class MctsEngine {
+    /** The number of nodes in the pool if none is given. */
+    public static final int DEFAULT_MAX_NODES = 1 << 21;
+    /** The deepest a new root is looked for below the last one: the bot's move and the reply, with passes. */
+    public static final int REUSE_PLIES = 4;
+    private static final int NOT_EXPANDED = -1;
+    private static final int EXPANDING = -2;
+    private static final int TERMINAL = -3;
+    /** The visits a leaf needs before it is expanded. */
+    private static final int EXPAND_VISITS = 4;
+    /** The weight of exploration in UCT, for win rates from 0 to 1. */
+    private static final double EXPLORATION = 0.8;
+    /** The weight of exploration in PUCT. */
+    private static final double PRIOR_EXPLORATION = 1.5;
+    /** The win rate a child without playouts is taken to have in PUCT. */
+    private static final double FIRST_PLAY_VALUE = 0.5;
+    /** The evaluation difference, in hundredths of a disc, that makes one prior e times another. */
+    private static final double PRIOR_TEMPERATURE = 400;
+    /** The lost playouts a thread's visit counts for until its real result comes back. */
+    private static final int VIRTUAL_LOSS = 3;
+    /** How many playouts a thread runs between looks at the clock and the shared playout count. */
+    private static final int CHECK_INTERVAL = 64;
+    private static final int MAX_PATH = 128;
+    /** Enough nodes for the root and all of its children. */
+    private static final int MIN_NODES = 64;
+
+    private final byte[] moves;
+    private final byte[] childCounts;
+    private final float[] priors;
+    private final AtomicIntegerArray firstChildren;
+    /** Playouts through each node, plus the virtual losses of the threads in it now. */
+    private final AtomicIntegerArray visits;
+    /** Half points won through each node by the player who moved into it: 2 for a win and 1 for a draw. */
+    private final AtomicIntegerArray wins;
+    /** The final disc margins of the playouts through each node, for the player who moved into it. */
+    private final AtomicLongArray margins;
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private final AtomicLong playouts = new AtomicLong();
+    private final Walker[] walkers;
+    private final ExecutorService helperPool;
+    private int[] remap;
+    private long timeLimitMillis;
+    private long playoutLimit;
+    private boolean usePriors = true;
+    private boolean hasTree;
+    private long rootPlayer;
+    private long rootOpponent;
+    private boolean rootWhite;
+    private volatile boolean poolFull;
+    private volatile boolean stopRequested;
+    private volatile boolean pondering;
+    private long deadline;
+
+    /**
+     * Constructor for a single-threaded engine with a pool of {@link #DEFAULT_MAX_NODES} nodes.
+     * @param timeLimitMillis The time a search takes in milliseconds, or 0 for no limit.
+     */
+    public MctsEngine(long timeLimitMillis) {
+        this(timeLimitMillis, DEFAULT_MAX_NODES, 1);
+    }
+
+    /**
+     * Constructor for an engine with a given pool size, searching on several threads.
+     * @param timeLimitMillis The time a search takes in milliseconds, or 0 for no limit.
+     * @param maxNodes The number of nodes in the pool, about 26 bytes each.
+     * @param threads The number of threads to search with, including the calling thread.
+     */
+    public MctsEngine(long timeLimitMillis, int maxNodes, int threads) {
+        if (maxNodes < MIN_NODES) {
+            throw new IllegalArgumentException("maxNodes must be at least " + MIN_NODES);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.timeLimitMillis = timeLimitMillis;
+        moves = new byte[maxNodes];
+        childCounts = new byte[maxNodes];
+        priors = new float[maxNodes];
+        firstChildren = new AtomicIntegerArray(maxNodes);
+        visits = new AtomicIntegerArray(maxNodes);
+        wins = new AtomicIntegerArray(maxNodes);
+        margins = new AtomicLongArray(maxNodes);
+        walkers = new Walker[threads];
+        for (int i = 0; i < threads; i++) {
+            walkers[i] = new Walker(i);
+        }
+        helperPool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "mcts-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Turns the evaluation-guided priors on or off. They are on by default.
+     * @param usePriors true to bias new children by the pattern evaluation, false for plain UCT.
+     */
+    public void setPriors(boolean usePriors) {
+        this.usePriors = usePriors;
+    }
+
+    /**
+     * Changes how long the searches that follow take.
+     * @param timeLimitMillis The time a search takes in milliseconds, or 0 for no limit.
+     */
+    public void setTimeLimit(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Returns how long a search takes.
+     * @return The time limit in milliseconds, or 0 for none.
+     */
+    public long returnTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    /**
+     * Stops the searches that follow after a number of playouts, counted across all threads, as well as at the time
+     * limit, so results can be compared at equal work.
+     * @param playoutLimit The most playouts per search, or 0 for no limit.
+     */
+    public void setPlayoutLimit(long playoutLimit) {
+        this.playoutLimit = playoutLimit;
+    }
+
+    /**
+     * Returns the number of threads the engine searches with.
+     * @return The thread count, including the calling thread.
+     */
+    public int returnThreads() {
+        return walkers.length;
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     * @return The nodes in use in the pool.
+     */
+    public int returnTreeSize() {
+        return Math.min(nodeCount.get(), moves.length);
+    }
+
+    /**
+     * Returns the number of playouts through the current root, including those kept from earlier searches.
+     * @return The root's visit count.
+     */
+    public int returnRootVisits() {
+        return hasTree ? visits.get(0) : 0;
+    }
+
+    /**
+     * Empties the tree, so the next search starts from nothing.
+     */
+    public void clear() {
+        hasTree = false;
+    }
+
+    /**
+     * Searches a position for the best move of the player whose turn it is.
+     * @param position The position to search. It is not modified.
+     * @return The most played root move, scored by the mean final disc margin of its playouts in hundredths of a
+     * disc, with the number of playouts as the node count and the most played line as the principal variation.
+     */
+    public SearchResult search(Othello position) {
+        return search(position, timeLimitMillis);
+    }
+
+    /**
+     * Searches a position with no time limit, for pondering: the search runs until {@link #stop()} is called or the
+     * pool is full, growing the tree the next search keeps.
+     * @param position The position to search. It is not modified.
+     * @return The result so far.
+     */
+    public SearchResult ponder(Othello position) {
+        pondering = true;
+        try {
+            return search(position, 0);
+        }
+        finally {
+            pondering = false;
+        }
+    }
+
+    private SearchResult search(Othello position, long limitMillis) {
+        long start = System.nanoTime();
+        deadline = limitMillis > 0 ? start + limitMillis * 1_000_000L : Long.MAX_VALUE;
+        boolean white = position.returnPlayer();
+        long player = white ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+        long opponent = white ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+        setRoot(player, opponent, white);
+        if (firstChildren.get(0) < 0 && expand(walkers[0], 0, player, opponent, white) == TERMINAL) {
+            int score = Evaluation.finalScore(player, opponent);
+            return new SearchResult(Bitboard.PASS, score, 0, 0, System.nanoTime() - start, new int[] {Bitboard.PASS});
+        }
+
+        playouts.set(0);
+        Future<?>[] helpers = new Future<?>[walkers.length - 1];
+        for (int i = 1; i < walkers.length; i++) {
+            helpers[i - 1] = helperPool.submit(walkers[i]::run);
+        }
+        walkers[0].run();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("MCTS helper failed", e.getCause());
+            }
+        }
+
+        int best = mostVisitedChild(0);
+        int bestVisits = visits.get(best);
+        int score = bestVisits > 0 ? (int) (margins.get(best) / bestVisits) : 0;
+        int[] line = new int[MAX_PATH];
+        int length = 0;
+        for (int node = best; node >= 0 && visits.get(node) > 0; node = mostVisitedChild(node)) {
+            line[length++] = moves[node];
+        }
+        int[] pv = new int[length];
+        System.arraycopy(line, 0, pv, 0, length);
+        return new SearchResult(moves[best], score, length, playouts.get(), System.nanoTime() - start, pv);
+    }
+
+    /**
+     * Returns the child of a node with the most playouts.
+     * @return The child, or -1 if the node has no children.
+     */
+    private int mostVisitedChild(int node) {
+        int first = firstChildren.get(node);
+        if (first < 0) {
+            return -1;
+        }
+        int best = first;
+        for (int child = first + 1; child < first + childCounts[node]; child++) {
+            if (visits.get(child) > visits.get(best)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Makes a position the root, keeping its subtree if it is within {@link #REUSE_PLIES} of the last root.
+     */
+    private void setRoot(long player, long opponent, boolean white) {
+        int node = hasTree ? find(0, rootPlayer, rootOpponent, player, opponent, REUSE_PLIES) : -1;
+        if (node > 0) {
+            compact(node);
+        }
+        else if (node < 0) {
+            nodeCount.set(1);
+            initNode(0, Bitboard.PASS, 1);
+            poolFull = false;
+        }
+        hasTree = true;
+        rootPlayer = player;
+        rootOpponent = opponent;
+        rootWhite = white;
+    }
+
+    /**
+     * Looks for a position in the subtree of a node.
+     * @return The node of the position, or -1 if it is not there.
+     */
+    private int find(int node, long player, long opponent, long targetPlayer, long targetOpponent, int plies) {
+        if (player == targetPlayer && opponent == targetOpponent) {
+            return node;
+        }
+        int first = firstChildren.get(node);
+        if (plies == 0 || first < 0) {
+            return -1;
+        }
+        for (int child = first; child < first + childCounts[node]; child++) {
+            int move = moves[child];
+            long flipped = move == Bitboard.PASS ? 0 : Bitboard.flips(move, player, opponent);
+            long nextOpponent = move == Bitboard.PASS ? player : player | flipped | (1L << move);
+            int found = find(child, opponent & ~flipped, nextOpponent, targetPlayer, targetOpponent, plies - 1);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the subtree of a node to the front of the pool, with the node as the root, and frees the rest. Children
+     * are always allocated after their parent and as one block, so marking the subtree takes one pass in index order,
+     * and sliding the nodes down in that order keeps every block together and never overwrites a node not yet moved.
+     */
+    private void compact(int newRoot) {
+        int count = returnTreeSize();
+        if (remap == null) {
+            remap = new int[moves.length];
+        }
+        for (int node = newRoot; node < count; node++) {
+            remap[node] = -1;
+        }
+        remap[newRoot] = 0;
+        for (int node = newRoot; node < count; node++) {
+            int first = firstChildren.get(node);
+            if (remap[node] >= 0 && first >= 0) {
+                for (int child = first; child < first + childCounts[node]; child++) {
+                    remap[child] = 0;
+                }
+            }
+        }
+        int kept = 0;
+        for (int node = newRoot; node < count; node++) {
+            if (remap[node] >= 0) {
+                remap[node] = kept++;
+            }
+        }
+        for (int node = newRoot; node < count; node++) {
+            int to = remap[node];
+            if (to < 0) {
+                continue;
+            }
+            int first = firstChildren.get(node);
+            moves[to] = moves[node];
+            childCounts[to] = childCounts[node];
+            priors[to] = priors[node];
+            firstChildren.set(to, first >= 0 ? remap[first] : first);
+            visits.set(to, visits.get(node));
+            wins.set(to, wins.get(node));
+            margins.set(to, margins.get(node));
+        }
+        nodeCount.set(kept);
+        poolFull = false;
+    }
+
+    private void initNode(int node, int move, float prior) {
+        moves[node] = (byte) move;
+        childCounts[node] = 0;
+        priors[node] = prior;
+        visits.set(node, 0);
+        wins.set(node, 0);
+        margins.set(node, 0);
+        firstChildren.set(node, NOT_EXPANDED);
+    }
+
+    /**
+     * Adds the children of a node the calling thread has claimed, or marks it as the end of the game.
+     * @return The index of the first child, {@link #TERMINAL}, or {@link #NOT_EXPANDED} if the pool is full.
+     */
+    private int expand(Walker walker, int node, long player, long opponent, boolean white) {
+        long legal = Bitboard.legalMoves(player, opponent);
+        if (legal == 0 && Bitboard.legalMoves(opponent, player) == 0) {
+            firstChildren.set(node, TERMINAL);
+            return TERMINAL;
+        }
+        int count = legal == 0 ? 1 : Long.bitCount(legal);
+        int first = nodeCount.getAndAdd(count);
+        if (first + count > moves.length) {
+            poolFull = true;
+            firstChildren.set(node, NOT_EXPANDED);
+            return NOT_EXPANDED;
+        }
+        if (legal == 0) {
+            initNode(first, Bitboard.PASS, 1);
+        }
+        else if (!usePriors) {
+            for (int i = 0; i < count; i++, legal &= legal - 1) {
+                initNode(first + i, Long.numberOfTrailingZeros(legal), 1f / count);
+            }
+        }
+        else {
+            double[] weights = walker.priorWeights;
+            PatternEvaluator evaluator = walker.evaluator;
+            evaluator.setPosition(white ? player : opponent, white ? opponent : player);
+            double sum = 0;
+            int i = 0;
+            for (long rest = legal; rest != 0; rest &= rest - 1, i++) {
+                int move = Long.numberOfTrailingZeros(rest);
+                long flipped = Bitboard.flips(move, player, opponent);
+                evaluator.makeMove(move, flipped, white);
+                int score = -evaluator.evaluate(!white, opponent & ~flipped, player | flipped | (1L << move));
+                evaluator.undoMove(move, flipped, white);
+                weights[i] = Math.exp(score / PRIOR_TEMPERATURE);
+                sum += weights[i];
+            }
+            i = 0;
+            for (long rest = legal; rest != 0; rest &= rest - 1, i++) {
+                initNode(first + i, Long.numberOfTrailingZeros(rest), (float) (weights[i] / sum));
+            }
+        }
+        childCounts[node] = (byte) count;
+        // The children are written before this publishes them to the other threads.
+        firstChildren.set(node, first);
+        return first;
+    }
+
+    /**
+     * Chooses the child to walk into: by PUCT with priors, otherwise by UCT, where children without playouts come
+     * first.
+     */
+    private int select(int node, int first) {
+        int end = first + childCounts[node];
+        int parentVisits = visits.get(node);
+        double logVisits = Math.log(parentVisits + 1);
+        double sqrtVisits = Math.sqrt(parentVisits + 1);
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < end; child++) {
+            int n = visits.get(child);
+            double value;
+            if (usePriors) {
+                double winRate = n == 0 ? FIRST_PLAY_VALUE : wins.get(child) / (2.0 * n);
+                value = winRate + PRIOR_EXPLORATION * priors[child] * sqrtVisits / (n + 1);
+            }
+            else if (n == 0) {
+                value = Double.MAX_VALUE;
+            }
+            else {
+                value = wins.get(child) / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible. The search still returns the most played move. The request
+     * stays until {@link #resetStop()}, so it also stops a search that had not started yet.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Withdraws a stop, so the searches that follow run to their limits.
+     */
+    public void resetStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Stops the helper threads. The engine cannot search on more than one thread afterwards.
+     */
+    public void shutdown() {
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+        }
+    }
+
+    private boolean shouldStop() {
+        return stopRequested || System.nanoTime() > deadline || (playoutLimit > 0 && playouts.get() >= playoutLimit)
+                || (pondering && poolFull);
+    }
+
+    /**
+     * One thread's walks through the tree, with its own path, random numbers and evaluator.
+     */
+    private class Walker {
+        final int[] path = new int[MAX_PATH];
+        final SplittableRandom random;
+        final PatternEvaluator evaluator = new PatternEvaluator(PatternWeights.defaultWeights());
+        final double[] priorWeights = new double[64];
+
+        Walker(int index) {
+            random = new SplittableRandom(0x5EED0000L + index);
+        }
+
+        void run() {
+            long count = 0;
+            while (true) {
+                playout();
+                if (++count == CHECK_INTERVAL) {
+                    playouts.addAndGet(count);
+                    count = 0;
+                    if (shouldStop()) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Walks down from the root to a leaf, expanding it if it has been visited often enough, plays the game out
+         * at random from there, and adds the result to the path.
+         */
+        void playout() {
+            long player = rootPlayer;
+            long opponent = rootOpponent;
+            boolean white = rootWhite;
+            int node = 0;
+            int length = 0;
+            path[length++] = node;
+            visits.addAndGet(node, VIRTUAL_LOSS);
+            while (length < MAX_PATH) {
+                int first = firstChildren.get(node);
+                if (first == NOT_EXPANDED && !poolFull && visits.get(node) >= EXPAND_VISITS + VIRTUAL_LOSS
+                        && firstChildren.compareAndSet(node, NOT_EXPANDED, EXPANDING)) {
+                    first = expand(this, node, player, opponent, white);
+                }
+                if (first < 0) {
+                    break;
+                }
+                node = select(node, first);
+                int move = moves[node];
+                if (move == Bitboard.PASS) {
+                    long swap = player;
+                    player = opponent;
+                    opponent = swap;
+                }
+                else {
+                    long flipped = Bitboard.flips(move, player, opponent);
+                    long next = opponent & ~flipped;
+                    opponent = player | flipped | (1L << move);
+                    player = next;
+                }
+                white = !white;
+                path[length++] = node;
+                visits.addAndGet(node, VIRTUAL_LOSS);
+            }
+
+            // The margin for the player to move at each node, from the leaf up; its node counts it for the other.
+            int margin = randomGame(player, opponent);
+            for (int i = length - 1; i >= 0; i--) {
+                node = path[i];
+                visits.addAndGet(node, 1 - VIRTUAL_LOSS);
+                wins.addAndGet(node, margin < 0 ? 2 : margin == 0 ? 1 : 0);
+                margins.addAndGet(node, -margin);
+                margin = -margin;
+            }
+        }
+
+        /**
+         * Plays random legal moves to the end of the game.
+         * @return The final disc margin for the player to move at the start, in hundredths of a disc.
+         */
+        int randomGame(long player, long opponent) {
+            int sign = 1;
+            boolean passed = false;
+            while (true) {
+                long legal = Bitboard.legalMoves(player, opponent);
+                if (legal != 0) {
+                    int move = Bitboard.nthSquare(legal, random.nextInt(Long.bitCount(legal)));
+                    long flipped = Bitboard.flips(move, player, opponent);
+                    long next = opponent & ~flipped;
+                    opponent = player | flipped | (1L << move);
+                    player = next;
+                    passed = false;
+                }
+                else if (passed) {
+                    return sign * Evaluation.finalScore(player, opponent);
+                }
+                else {
+                    long swap = player;
+                    player = opponent;
+                    opponent = swap;
+                    passed = true;
+                }
+                sign = -sign;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Describes one change to an {@link Othello} board: a move, a pass, an undo or a reset. Listeners can redraw just the
+ * squares in {@link #returnChangedSquares()} and the old and new legal moves instead of the whole board.
+ */
+public class MoveEvent {
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        /** A disc was placed and others flipped. */
+        MOVE,
+        /** The player to move passed. */
+        PASS,
+        /** A move or pass was taken back. */
+        UNDO,
+        /** The board went back to the start position. */
+        RESET
+    }
+
+    private final Type type;
+    private final int square;
+    private final long flipped;
+    private final long legalMoves;
+    private final boolean whiteToMove;
+
+    /**
+     * Constructor for an event.
+     * @param type The kind of change.
+     * @param square The square that was moved to or taken back, or {@link Bitboard#PASS}.
+     * @param flipped The pieces that changed color.
+     * @param legalMoves The legal moves of the player to move after the change.
+     * @param whiteToMove true if white is to move after the change.
+     */
+    public MoveEvent(Type type, int square, long flipped, long legalMoves, boolean whiteToMove) {
+        this.type = type;
+        this.square = square;
+        this.flipped = flipped;
+        this.legalMoves = legalMoves;
+        this.whiteToMove = whiteToMove;
+    }
+
+    /**
+     * Returns the kind of change.
+     * @return The type of the event.
+     */
+    public Type returnType() {
+        return type;
+    }
+
+    /**
+     * Returns the square that was moved to, or emptied again by an undo.
+     * @return The index (row * 8 + column) of the square, or {@link Bitboard#PASS} for a pass or reset.
+     */
+    public int returnSquare() {
+        return square;
+    }
+
+    /**
+     * Returns the pieces that changed color.
+     * @return A bitboard of the flipped squares.
+     */
+    public long returnFlipped() {
+        return flipped;
+    }
+
+    /**
+     * Returns every square whose piece changed: the square moved to and the flipped pieces, or the whole board after a
+     * reset.
+     * @return A bitboard of the changed squares.
+     */
+    public long returnChangedSquares() {
+        if (type == Type.RESET) {
+            return -1L;
+        }
+        return square == Bitboard.PASS ? flipped : flipped | (1L << square);
+    }
+
+    /**
+     * Returns the legal moves after the change.
+     * @return A bitboard of the squares the player to move can move to.
+     */
+    public long returnLegalMoves() {
+        return legalMoves;
+    }
+
+    /**
+     * Returns the player to move after the change.
+     * @return true if it is white's turn, false if it is black's turn.
+     */
+    public boolean returnWhiteToMove() {
+        return whiteToMove;
+    }
+}
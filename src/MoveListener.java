@@ -0,0 +1,10 @@
+/**
+ * Receives the changes made to an {@link Othello} board. See {@link Othello#addMoveListener(MoveListener)}.
+ */
+public interface MoveListener {
+    /**
+     * Called after every move, pass, undo and reset.
+     * @param event What changed.
+     */
+    void boardChanged(MoveEvent event);
+}
@@ -0,0 +1,252 @@
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opening book of searched move scores, read straight from a memory-mapped file.
+ * <p>
+ * The file is an 8-byte header (the magic number and the record count) followed by fixed 20-byte records, each holding
+ * a position, one move from it, the depth it was searched to and its score. Positions are stored from the point of
+ * view of the player to move and in their smallest symmetric form (see {@link Symmetry}), so one record covers all
+ * eight rotations and reflections of a position. Records are sorted by position and then move, and a lookup is a
+ * binary search over the mapped file, so opening a book costs nothing up front and the book never sits on the heap.
+ */
+public class OpeningBook {
+    /** The file {@link BotPlayer} loads its book from if it exists. */
+    public static final String DEFAULT_FILE = "book.bin";
+    static final int MAGIC = 0x4F424B31;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 20;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * One scored move of a book position, used when building books.
+     */
+    static class Entry implements Comparable<Entry> {
+        final long player;
+        final long opponent;
+        final int move;
+        final int depth;
+        final int score;
+
+        /**
+         * Constructor for an entry already in canonical form.
+         * @param player The pieces of the player to move.
+         * @param opponent The pieces of the other player.
+         * @param move The square of the move.
+         * @param depth The depth the move was searched to.
+         * @param score The score of the move in hundredths of a disc.
+         */
+        Entry(long player, long opponent, int move, int depth, int score) {
+            this.player = player;
+            this.opponent = opponent;
+            this.move = move;
+            this.depth = depth;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int order = Long.compareUnsigned(player, other.player);
+            if (order == 0) {
+                order = Long.compareUnsigned(opponent, other.opponent);
+            }
+            if (order == 0) {
+                order = Integer.compare(move, other.move);
+            }
+            return order;
+        }
+    }
+
+    /**
+     * Opens a book file.
+     * @param file The book to open.
+     * @return The book.
+     * @throws IOException If the file cannot be read or is not a book.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an opening book");
+            }
+            int size = buffer.getInt(4);
+            if ((long) HEADER_BYTES + (long) size * RECORD_BYTES > channel.size()) {
+                throw new IOException(file + " is truncated");
+            }
+            return new OpeningBook(buffer, size);
+        }
+    }
+
+    /**
+     * Opens the book in {@link #DEFAULT_FILE} if there is one.
+     * @return The book, or null if the file does not exist or cannot be read.
+     */
+    public static OpeningBook openDefault() {
+        Path file = Paths.get(DEFAULT_FILE);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return open(file);
+        }
+        catch (IOException e) {
+            System.err.println("Ignoring opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of scored moves in the book.
+     * @return The record count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the scored moves of a position.
+     * @param position The position to look up.
+     * @param moves Filled with the squares of the book moves, in the position's own orientation.
+     * @param scores Filled with the score of each move, in hundredths of a disc for the player to move.
+     * @param depths Filled with the depth each move was searched to.
+     * @return The number of book moves found, at most the length of the arrays.
+     */
+    public int lookup(Othello position, int[] moves, int[] scores, int[] depths) {
+        boolean white = position.returnPlayer();
+        long player = white ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+        long opponent = white ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+        long[] canonical = new long[2];
+        int symmetry = Symmetry.canonicalize(player, opponent, canonical);
+        long p = canonical[0];
+        long o = canonical[1];
+        int back = Symmetry.inverse(symmetry);
+
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePosition(mid, p, o) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        int count = 0;
+        for (int i = low; i < size && count < moves.length && comparePosition(i, p, o) == 0; i++) {
+            int offset = HEADER_BYTES + i * RECORD_BYTES;
+            moves[count] = Symmetry.transformSquare(buffer.get(offset + 16), back);
+            depths[count] = buffer.get(offset + 17);
+            scores[count] = buffer.getShort(offset + 18);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the best book move of a position.
+     * @param position The position to look up.
+     * @return The best book move with its score and depth, or null if the position is not in the book.
+     */
+    public SearchResult probe(Othello position) {
+        int[] moves = new int[32];
+        int[] scores = new int[32];
+        int[] depths = new int[32];
+        int count = lookup(position, moves, scores, depths);
+        if (count == 0) {
+            return null;
+        }
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        return new SearchResult(moves[best], scores[best], depths[best], 0, 0, new int[] {moves[best]});
+    }
+
+    /**
+     * Compares the position of a record with a canonical position.
+     */
+    private int comparePosition(int record, long player, long opponent) {
+        int offset = HEADER_BYTES + record * RECORD_BYTES;
+        int order = Long.compareUnsigned(buffer.getLong(offset), player);
+        if (order == 0) {
+            order = Long.compareUnsigned(buffer.getLong(offset + 8), opponent);
+        }
+        return order;
+    }
+
+    /**
+     * Reads every record of the book.
+     * @return The records in file order.
+     */
+    List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int offset = HEADER_BYTES + i * RECORD_BYTES;
+            entries.add(new Entry(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.get(offset + 16),
+                    buffer.get(offset + 17), buffer.getShort(offset + 18)));
+        }
+        return entries;
+    }
+
+    /**
+     * Writes a book file. The entries are sorted first; later duplicates of the same position and move replace
+     * earlier ones. The book is written to a temporary file next to it and then moved over it in one step, because
+     * running bots may have the old book mapped: truncating it in place would pull the pages out from under them.
+     * @param file The file to write.
+     * @param entries The scored moves, already in canonical form.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(Path file, List<Entry> entries) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries);
+        Collections.reverse(sorted);
+        // A stable sort keeps the newest of each duplicate first, so it is the one kept below.
+        Collections.sort(sorted);
+        List<Entry> unique = new ArrayList<>(sorted.size());
+        for (Entry entry : sorted) {
+            if (unique.isEmpty() || unique.get(unique.size() - 1).compareTo(entry) != 0) {
+                unique.add(entry);
+            }
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName() + ".", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(unique.size());
+                for (Entry entry : unique) {
+                    out.writeLong(entry.player);
+                    out.writeLong(entry.opponent);
+                    out.writeByte(entry.move);
+                    out.writeByte(entry.depth);
+                    out.writeShort(entry.score);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
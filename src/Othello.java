@@ -1,61 +1,136 @@
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Othello class that keeps track of the position of pieces on the game board.
+ * The position is stored as a pair of bitboards (see {@link Bitboard}), one for each color. Every move and pass is
+ * recorded on a preallocated undo stack, so a look-ahead can make and unmake moves on one board without allocating.
+ * Listeners added with {@link #addMoveListener(MoveListener)} hear about every change; a board without listeners does
+ * no extra work.
  * @author Bryan Chung
  */
 public class Othello {
-    private int[][] board;
+    private long white;
+    private long black;
     private boolean curPlayer;
+    private long hash;
+    private final long[] undoFlipped = new long[MAX_HISTORY];
+    private final byte[] undoMoves = new byte[MAX_HISTORY];
+    private int historySize;
+    private final List<MoveListener> listeners = new ArrayList<>();
     private final int WHITE = 1;
     private final int BLACK = -1;
+    private static final long START_WHITE = (1L << Bitboard.square(3, 3)) | (1L << Bitboard.square(4, 4));
+    private static final long START_BLACK = (1L << Bitboard.square(3, 4)) | (1L << Bitboard.square(4, 3));
+    /** Enough for 60 moves with a pass before each of them and one at the end. */
+    private static final int MAX_HISTORY = 128;
+    /** Set in an undo record when white made the move. */
+    private static final int WHITE_MOVED = 0x80;
 
     /**
      * Default constructor for an Othello board with height 8 and width 8.
      */
     public Othello() {
-        board = new int[8][8];
-        curPlayer = true;
-        board[3][3] = WHITE;
-        board[4][4] = WHITE;
-        board[3][4] = BLACK;
-        board[4][3] = BLACK;
+        resetBoard();
     }
 
     /**
-     * Resets the Othello board back to its default position.
+     * Constructor for an Othello board that is a copy of another board, including the moves that can be undone.
+     * @param other The board to copy.
      */
-    public void resetBoard() {
-        for(int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[i][j] = 0;
+    public Othello(Othello other) {
+        white = other.white;
+        black = other.black;
+        curPlayer = other.curPlayer;
+        hash = other.hash;
+        historySize = other.historySize;
+        System.arraycopy(other.undoFlipped, 0, undoFlipped, 0, historySize);
+        System.arraycopy(other.undoMoves, 0, undoMoves, 0, historySize);
+    }
+
+    /**
+     * Constructor for an Othello board in an arbitrary position.
+     * @param whiteDiscs A bitboard of the white pieces.
+     * @param blackDiscs A bitboard of the black pieces.
+     * @param whiteToMove true if it is white's turn, false if it is black's turn.
+     */
+    public Othello(long whiteDiscs, long blackDiscs, boolean whiteToMove) {
+        if ((whiteDiscs & blackDiscs) != 0) {
+            throw new IllegalArgumentException("A square cannot hold both a white and a black piece");
+        }
+        white = whiteDiscs;
+        black = blackDiscs;
+        curPlayer = whiteToMove;
+        hash = Zobrist.hash(white, black, curPlayer);
+    }
+
+    /**
+     * Constructor for an Othello board read from text. The text lists the 64 squares row by row, using 'O' for white,
+     * 'X' for black and '-' for empty, followed by 'O' or 'X' for the side to move. Whitespace is ignored, so
+     * "---------------------------OX------XO--------------------------- O" is the default position.
+     * @param position The position as text.
+     */
+    public Othello(String position) {
+        String squares = position.replaceAll("\\s", "");
+        if (squares.length() != 65) {
+            throw new IllegalArgumentException("Expected 64 squares and a side to move: " + position);
+        }
+        for (int square = 0; square < 64; square++) {
+            char c = Character.toUpperCase(squares.charAt(square));
+            if (c == 'O') {
+                white |= 1L << square;
+            }
+            else if (c == 'X' || c == '*') {
+                black |= 1L << square;
+            }
+            else if (c != '-' && c != '.') {
+                throw new IllegalArgumentException("Unknown square '" + c + "' in " + position);
             }
         }
+        char side = Character.toUpperCase(squares.charAt(64));
+        if (side != 'O' && side != 'X' && side != '*') {
+            throw new IllegalArgumentException("Unknown side to move '" + side + "' in " + position);
+        }
+        curPlayer = side == 'O';
+        hash = Zobrist.hash(white, black, curPlayer);
+    }
+
+    /**
+     * Resets the Othello board back to its default position.
+     */
+    public void resetBoard() {
+        white = START_WHITE;
+        black = START_BLACK;
         curPlayer = true;
-        board[3][3] = WHITE;
-        board[4][4] = WHITE;
-        board[3][4] = BLACK;
-        board[4][3] = BLACK;
+        hash = Zobrist.hash(white, black, curPlayer);
+        historySize = 0;
+        fire(MoveEvent.Type.RESET, Bitboard.PASS, 0);
+    }
+
+    /**
+     * Adds a listener to be told about every move, pass, undo and reset. Copies of the board do not keep it.
+     * @param listener The listener to add.
+     */
+    public void addMoveListener(MoveListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addMoveListener(MoveListener)}.
+     * @param listener The listener to remove.
+     */
+    public void removeMoveListener(MoveListener listener) {
+        listeners.remove(listener);
     }
+
     /**
      * Gives the final scores for each player, assuming that there are no blank squares remaining.
      * @return An array of size 2 with the first element being white's score and the second element being black's score.
      */
     public int[] returnFinalScores() {
         int[] finalScores = new int[2];
-        int whiteCount = 0;
-        int blackCount = 0;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] == 1) {
-                    whiteCount++;
-                }
-                else if (board[i][j] == -1) {
-                    blackCount++;
-                }
-            }
-        }
-        finalScores[0] = whiteCount;
-        finalScores[1] = blackCount;
+        finalScores[0] = Long.bitCount(white);
+        finalScores[1] = Long.bitCount(black);
         return (finalScores);
     }
 
@@ -68,45 +143,79 @@ public class Othello {
     }
 
     /**
-     * Returns if there are any legal moves for the current player.
+     * Returns the pieces of the white player.
+     * @return A bitboard with bit (row * 8 + column) set for every white piece.
+     */
+    public long returnWhiteDiscs() {
+        return white;
+    }
+
+    /**
+     * Returns the pieces of the black player.
+     * @return A bitboard with bit (row * 8 + column) set for every black piece.
+     */
+    public long returnBlackDiscs() {
+        return black;
+    }
+
+    /**
+     * Returns the Zobrist hash of the position, including the side to move. It is kept up to date on every move.
+     * @return The hash of the current position.
+     */
+    public long returnHash() {
+        return hash;
+    }
+
+    /**
+     * Returns if there are any legal moves for the current player. If there are none, the current player passes: the
+     * turn goes to the other player and the pass is recorded so it can be undone. Use {@link #hasMoves(boolean)} to
+     * ask without passing.
      * @return true if there exist valid moves for the player, false otherwise.
      */
     public boolean playerHasMoves() {
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (isValid(i, j)) {
-                    return true;
-                }
-            }
+        if (legalMoves() != 0) {
+            return true;
         }
-        curPlayer = !curPlayer;
+        pass();
         return false;
     }
 
     /**
-     * Returns if there are any legal moves for either player.
+     * Returns if there are any legal moves for either player. If only the other player can move, the current player
+     * passes, the same as in {@link #playerHasMoves()}.
      * @return true if there exist valid moves, false otherwise.
      */
     public boolean areThereAnyMoves() {
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (isValid(i, j)) {
-                    return true;
-                }
-            }
+        if (legalMoves() != 0) {
+            return true;
         }
-        curPlayer = !curPlayer;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (isValid(i, j)) {
-                    return true;
-                }
-            }
+        if (hasMoves(!curPlayer)) {
+            pass();
+            return true;
         }
-        curPlayer = !curPlayer;
         return false;
     }
 
+    /**
+     * Returns if a player has any legal moves, without changing the board.
+     * @param whitePlayer true to ask about white, false to ask about black.
+     * @return true if that player could move if it were their turn.
+     */
+    public boolean hasMoves(boolean whitePlayer) {
+        if (whitePlayer) {
+            return Bitboard.legalMoves(white, black) != 0;
+        }
+        return Bitboard.legalMoves(black, white) != 0;
+    }
+
+    /**
+     * Returns if the game is over because neither player can move.
+     * @return true if the game has finished.
+     */
+    public boolean isGameOver() {
+        return !hasMoves(curPlayer) && !hasMoves(!curPlayer);
+    }
+
     /**
      * Returns the color of the piece at a given index.
      * @param row The row the piece is in.
@@ -114,114 +223,118 @@ public class Othello {
      * @return The color of the piece at that index, -1 meaning black, 0 meaning nothing, and 1 meaning white.
      */
     public int returnColor(int row, int column) {
-        return board[row][column];
+        long bit = 1L << Bitboard.square(row, column);
+        if ((white & bit) != 0) {
+            return WHITE;
+        }
+        if ((black & bit) != 0) {
+            return BLACK;
+        }
+        return 0;
     }
 
     /**
      * Assuming the move is valid, executes a move, which swaps all opposing color squares
-     * between the newly placed square and existing ones of the same color.
+     * between the newly placed square and existing ones of the same color. The move can be taken back with
+     * {@link #undoMove()}.
      * @param row The row of the square to make the move.
      * @param column The column of the square to make the move.
      */
     public void makeMove(int row, int column) {
-        int index;
-        if (curPlayer) {
-            index = 1;
-        }
-        else {
-            index = -1;
-        }
-        if (!isValid(row,column)) {
+        int square = Bitboard.square(row, column);
+        long bit = 1L << square;
+        if (((white | black) & bit) != 0) {
             return;
         }
-        else {
-            board[row][column] = index;
-        }
-        if (checkDirection(row,column,1)) {
-            for (int i = 1; i <= row; i++) {
-                if (board[row-i][column] == index) {
-                    break;
-                }
-                else {
-                    board[row-i][column] = index;
-                }
+        long flipped;
+        if (curPlayer) {
+            flipped = Bitboard.flips(square, white, black);
+            if (flipped == 0) {
+                return;
             }
+            white |= flipped | bit;
+            black &= ~flipped;
         }
-        if (checkDirection(row,column,2)) {
-            int maxPossible = Math.min(row, board.length - 1 - column);
-            for (int i = 1; i <= maxPossible; i++) {
-                if (board[row-i][column+i] == index) {
-                    break;
-                }
-                else {
-                    board[row-i][column+i] = index;
-                }
+        else {
+            flipped = Bitboard.flips(square, black, white);
+            if (flipped == 0) {
+                return;
             }
+            black |= flipped | bit;
+            white &= ~flipped;
         }
-        if (checkDirection(row,column,3)) {
-            for (int i = 1; i <= board[0].length - column - 1; i++) {
-                if (board[row][column+i] == index) {
-                    break;
-                }
-                else {
-                    board[row][column+i] = index;
-                }
-            }
+        record(square, flipped);
+        hash ^= Zobrist.moveDelta(square, flipped, curPlayer);
+        curPlayer = !curPlayer;
+        fire(MoveEvent.Type.MOVE, square, flipped);
+    }
+
+    /**
+     * Passes the turn to the other player. A pass can be taken back with {@link #undoMove()}.
+     * @throws IllegalStateException If the current player has a legal move, and so is not allowed to pass.
+     */
+    public void pass() {
+        if (legalMoves() != 0) {
+            throw new IllegalStateException("Cannot pass when there are legal moves");
         }
-        if (checkDirection(row,column,4)) {
-            int maxPossible = Math.min(board.length - 1 - row, board.length - 1 - column);
-            for (int i = 1; i <= maxPossible; i++) {
-                if (board[row+i][column+i] == index) {
-                    break;
-                }
-                else {
-                    board[row+i][column+i] = index;
-                }
-            }
+        record(Bitboard.PASS, 0);
+        hash ^= Zobrist.WHITE_TO_MOVE;
+        curPlayer = !curPlayer;
+        fire(MoveEvent.Type.PASS, Bitboard.PASS, 0);
+    }
+
+    /**
+     * Takes back the last move or pass, restoring the pieces it flipped and the side to move.
+     * @throws IllegalStateException If there is nothing to undo.
+     */
+    public void undoMove() {
+        if (historySize == 0) {
+            throw new IllegalStateException("No move to undo");
         }
-        if (checkDirection(row,column,5)) {
-            for (int i = 1; i <= board.length - row - 1; i++) {
-                if (board[row+i][column] == index) {
-                    break;
-                }
-                else {
-                    board[row+i][column] = index;
-                }
-            }
+        historySize--;
+        long flipped = undoFlipped[historySize];
+        int record = undoMoves[historySize] & 0xFF;
+        int square = record & ~WHITE_MOVED;
+        boolean whiteMoved = (record & WHITE_MOVED) != 0;
+        long placed = square == Bitboard.PASS ? 0 : 1L << square;
+        if (whiteMoved) {
+            white &= ~(flipped | placed);
+            black |= flipped;
         }
-        if (checkDirection(row,column,6)) {
-            int maxPossible = Math.min(board.length - 1 - row, column);
-            for (int i = 1; i <= maxPossible; i++) {
-                if (board[row+i][column-i] == index) {
-                    break;
-                }
-                else {
-                    board[row+i][column-i] = index;
-                }
-            }
+        else {
+            black &= ~(flipped | placed);
+            white |= flipped;
         }
-        if (checkDirection(row,column,7)) {
-            for (int i = 1; i <= column; i++) {
-                if (board[row][column-i] == index) {
-                    break;
-                }
-                else {
-                    board[row][column-i] = index;
-                }
-            }
+        hash ^= Zobrist.moveDelta(square, flipped, whiteMoved);
+        curPlayer = whiteMoved;
+        fire(MoveEvent.Type.UNDO, square, flipped);
+    }
+
+    /**
+     * Returns the number of moves and passes that can be undone.
+     * @return The size of the undo stack.
+     */
+    public int returnHistorySize() {
+        return historySize;
+    }
+
+    private void fire(MoveEvent.Type type, int square, long flipped) {
+        if (listeners.isEmpty()) {
+            return;
         }
-        if (checkDirection(row,column,8)) {
-            int maxPossible = Math.min(row, column);
-            for (int i = 1; i <= maxPossible; i++) {
-                if (board[row-i][column-i] == index) {
-                    break;
-                }
-                else {
-                    board[row-i][column-i] = index;
-                }
-            }
+        MoveEvent event = new MoveEvent(type, square, flipped, legalMoves(), curPlayer);
+        for (MoveListener listener : new ArrayList<>(listeners)) {
+            listener.boardChanged(event);
         }
-        curPlayer = !curPlayer;
+    }
+
+    private void record(int square, long flipped) {
+        if (historySize == MAX_HISTORY) {
+            throw new IllegalStateException("Undo stack is full");
+        }
+        undoFlipped[historySize] = flipped;
+        undoMoves[historySize] = (byte) (square | (curPlayer ? WHITE_MOVED : 0));
+        historySize++;
     }
 
     /**
@@ -231,15 +344,28 @@ public class Othello {
      * @return True if the move is valid, false if the move is invalid.
      */
     public boolean isValid(int row, int column) {
-        if (board[row][column] != 0) {
-            return false;
-        }
-        for (int i = 1; i <= 8; i++) {
-            if (checkDirection(row,column,i)) {
-                return true;
-            }
+        return (legalMoves() & (1L << Bitboard.square(row, column))) != 0;
+    }
+
+    /**
+     * Returns every legal move for the current player.
+     * @return A bitboard with bit (row * 8 + column) set for every square the current player can move to.
+     */
+    public long legalMoves() {
+        if (curPlayer) {
+            return Bitboard.legalMoves(white, black);
         }
-        return false;
+        return Bitboard.legalMoves(black, white);
+    }
+
+    /**
+     * Lists every legal move for the current player into a reusable buffer, without allocating.
+     * @param squares Filled with the index (row * 8 + column) of every legal move, lowest first. 64 entries are always
+     *                enough.
+     * @return The number of legal moves written.
+     */
+    public int legalMoves(int[] squares) {
+        return Bitboard.toSquares(legalMoves(), squares);
     }
 
     /**
@@ -251,177 +377,24 @@ public class Othello {
      * @return True if the move is valid in the given direction, false otherwise.
      */
     public boolean checkDirection(int row, int column, int direction) {
-        int index;
+        int square = Bitboard.square(row, column);
         if (curPlayer) {
-            index = 1;
-        }
-        else {
-            index = -1;
-        }
-        if (direction == 1) {
-            if (row == 0) {
-                return false;
-            }
-            if (board[row-1][column] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= row; i++) {
-                if (board[row-i][column] == -index) {
-                    continue;
-                }
-                if (board[row-i][column] == index) {
-                    return true;
-                }
-                if (board[row-i][column] == 0) {
-                    return false;
-                }
-            }
-            return false;
+            return Bitboard.flipsInDirection(square, white, black, direction) != 0;
         }
-        else if (direction == 2) {
-            int maxPossible = Math.min(row, board.length - 1 - column);
-            if (row == 0 || column == board.length-1) {
-                return false;
-            }
-            if (board[row-1][column+1] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= maxPossible; i++) {
-                if (board[row-i][column+i] == -index) {
-                    continue;
-                }
-                if (board[row-i][column+i] == index) {
-                    return true;
-                }
-                if (board[row-i][column+i] == 0) {
-                    return false;
-                }
-            }
-            return false;
-        }
-        else if (direction == 3) {
-            if (column == board.length - 1) {
-                return false;
-            }
-            if (board[row][column+1] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= board.length - 1 - column; i++) {
-                if (board[row][column+i] == -index) {
-                    continue;
-                }
-                if (board[row][column+i] == index) {
-                    return true;
-                }
-                if (board[row][column+i] == 0) {
-                    return false;
-                }
-            }
-            return false;
-        }
-        else if (direction == 4) {
-            int maxPossible = Math.min(board.length - 1 - row, board.length - 1 - column);
-            if (row == board.length - 1 || column == board.length - 1) {
-                return false;
-            }
-            if (board[row+1][column+1] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= maxPossible; i++) {
-                if (board[row + i][column + i] == -index) {
-                    continue;
-                }
-                if (board[row + i][column + i] == index) {
-                    return true;
-                }
-                if (board[row + i][column + i] == 0) {
-                    return false;
-                }
-            }
-            return false;
-        }
-        else if (direction == 5) {
-            if (row == board.length - 1) {
-                return false;
-            }
-            if (board[row+1][column] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= board.length - 1 - row; i++) {
-                if (board[row+i][column] == -index) {
-                    continue;
-                }
-                if (board[row+i][column] == index) {
-                    return true;
-                }
-                if (board[row+i][column] == 0) {
-                    return false;
-                }
-            }
-            return false;
-        }
-        else if (direction == 6) {
-            int maxPossible = Math.min(board.length - 1 - row, column);
-            if (row == board.length - 1 || column == 0) {
-                return false;
-            }
-            if (board[row+1][column-1] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= maxPossible; i++) {
-                if (board[row + i][column - i] == -index) {
-                    continue;
-                }
-                if (board[row + i][column - i] == index) {
-                    return true;
-                }
-                if (board[row + i][column - i] == 0) {
-                    return false;
-                }
-            }
-            return false;
-        }
-        else if (direction == 7) {
-            if (column == 0) {
-                return false;
-            }
-            if (board[row][column-1] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= column; i++) {
-                if (board[row][column-i] == -index) {
-                    continue;
-                }
-                if (board[row][column-i] == index) {
-                    return true;
-                }
-                if (board[row][column-i] == 0) {
-                    return false;
-                }
-            }
-            return false;
-        }
-        else if (direction == 8) {
-            int maxPossible = Math.min(row, column);
-            if (row == 0 || column == 0) {
-                return false;
-            }
-            if (board[row-1][column-1] != -index) {
-                return false;
-            }
-            for (int i = 2; i <= maxPossible; i++) {
-                if (board[row-i][column-i] == -index) {
-                    continue;
-                }
-                if (board[row-i][column-i] == index) {
-                    return true;
-                }
-                if (board[row-i][column-i] == 0) {
-                    return false;
-                }
-            }
-            return false;
+        return Bitboard.flipsInDirection(square, black, white, direction) != 0;
+    }
+
+    /**
+     * Writes the position as text in the format read by {@link #Othello(String)}.
+     * @return The 64 squares followed by a space and the side to move.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(66);
+        for (int square = 0; square < 64; square++) {
+            int color = returnColor(square >>> 3, square & 7);
+            text.append(color == WHITE ? 'O' : color == BLACK ? 'X' : '-');
         }
-        return false;
+        return text.append(' ').append(curPlayer ? 'O' : 'X').toString();
     }
-}
\ No newline at end of file
+}
@@ -5,9 +5,13 @@ import java.awt.event.ActionListener;
 
 /**
  * Tile class that is responsible for creating the visual representation for an othello board.
+ * The frame listens to its board and redraws only the Tiles a change touches: the square moved to, the flipped pieces,
+ * and the legal moves before and after. The bot thinks on a background thread and shows its progress in the title bar,
+ * so the window stays responsive while it searches, and ponders on the reply it expects while the human thinks.
+ * Boards of other sizes than 8 by 8 are played on a {@link SizedOthello} instead, and redrawn a whole board at a time.
  * @author Bryan Chung
  */
-public class OthelloFrame extends JFrame{
+public class OthelloFrame extends JFrame implements MoveListener {
     private Tile[][] board;
     private Othello othello = new Othello();
     private final int WHITE = 1;
@@ -15,45 +19,59 @@ public class OthelloFrame extends JFrame{
     private boolean botMode = false; // If true, play vs bot
     private JButton toggleBotButton;
     private BotPlayer bot = new BotPlayer();
+    private final AsyncBot asyncBot = new AsyncBot(bot, SwingUtilities::invokeLater);
+    private long highlighted;
+    private int expectedReply = -1;
+    private final SizedOthello sized;
+    private final long[] sizedMoves;
 
     /**
      * Default constructor for an object of type Frame, with an 8 by 8 grid of Tile objects.
      */
     public OthelloFrame() {
+        this(8);
+    }
+
+    /**
+     * Constructor for a Frame with a board of any size. The Tiles shrink to keep the board the size of the 8 by 8 one.
+     * @param n The number of rows and columns, even and from {@link WideBitboard#MIN_SIZE} to
+     *          {@link WideBitboard#MAX_SIZE}.
+     */
+    public OthelloFrame(int n) {
         super("Othello");
-        board = new Tile[8][8];
+        sized = n == 8 ? null : new SizedOthello(n);
+        sizedMoves = sized == null ? null : new long[sized.returnLayout().returnWords()];
+        board = new Tile[n][n];
         setVisible(true);
         setResizable(false);
         setSize(750,800); 
         setLayout(new BorderLayout());
-        JPanel boardPanel = new JPanel(new GridLayout(8, 8, 2, 2));
+        JPanel boardPanel = new JPanel(new GridLayout(n, n, 2, 2));
         boardPanel.setBackground(Color.black);
-        int n = 8;
+        int pixels = Math.min(75, 600 / n);
         for (int i = 0; i < n; i++) {
             for (int j = 0; j < n; j++) {
-                Tile newTile = new Tile(i, j, this);
+                Tile newTile = new Tile(i, j, this, pixels);
                 board[i][j] = newTile;
                 boardPanel.add(newTile);
             }
         }
-        board[3][3].setColor(WHITE);
-        board[4][4].setColor(WHITE);
-        board[3][4].setColor(BLACK);
-        board[4][3].setColor(BLACK);
-        board[4][2].setColor(2);
-        board[5][3].setColor(2);
-        board[2][4].setColor(2);
-        board[3][5].setColor(2);
-        invalidate();
-        validate();
-        repaint();
+        resetBoard();
+        othello.addMoveListener(this);
         add(boardPanel, BorderLayout.CENTER);
         toggleBotButton = new JButton("Play vs Bot: OFF");
         toggleBotButton.addActionListener(e -> {
             botMode = !botMode;
             toggleBotButton.setText(botMode ? "Play vs Bot: ON" : "Play vs Bot: OFF");
-            othello.resetBoard();
-            resetBoard();
+            asyncBot.cancel();
+            setTitle("Othello");
+            if (sized != null) {
+                sized.resetBoard();
+                resetBoard();
+            }
+            else {
+                othello.resetBoard();
+            }
         });
         JPanel controlPanel = new JPanel();
         controlPanel.add(toggleBotButton);
@@ -61,27 +79,64 @@ public class OthelloFrame extends JFrame{
     }
 
     /**
-     * Resets the board back to its default position
+     * Redraws every Tile from the board, for when the Tiles may be out of step with it.
      */
     public void resetBoard() {
-        for(int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[i][j].setColor(0);
-                board[3][3].setColor(WHITE);
-                board[4][4].setColor(WHITE);
-                board[3][4].setColor(BLACK);
-                board[4][3].setColor(BLACK);
-                board[4][2].setColor(2);
-                board[5][3].setColor(2);
-                board[2][4].setColor(2);
-                board[3][5].setColor(2);
-                invalidate();
-                validate();
-                repaint();
+        if (sized != null) {
+            showSizedBoard();
+            return;
+        }
+        showSquares(-1L, othello.legalMoves(), othello.returnPlayer());
+    }
+
+    /**
+     * Sets the color of every Tile from a board of another size, highlighting the legal moves. Only the Tiles whose
+     * color changes are repainted.
+     */
+    private void showSizedBoard() {
+        sized.legalMoves(sizedMoves);
+        WideBitboard layout = sized.returnLayout();
+        int n = sized.returnSize();
+        for (int row = 0; row < n; row++) {
+            for (int column = 0; column < n; column++) {
+                if (WideBitboard.get(sizedMoves, layout.square(row, column))) {
+                    board[row][column].setColor(sized.returnPlayer() ? 2 : -2);
+                }
+                else {
+                    board[row][column].setColor(sized.returnColor(row, column));
+                }
             }
         }
     }
 
+    /**
+     * Redraws the Tiles touched by a change to the board.
+     * @param event The change.
+     */
+    @Override
+    public void boardChanged(MoveEvent event) {
+        showSquares(event.returnChangedSquares() | highlighted | event.returnLegalMoves(), event.returnLegalMoves(),
+                event.returnWhiteToMove());
+    }
+
+    /**
+     * Sets the color of some Tiles from the board, highlighting the legal moves among them.
+     */
+    private void showSquares(long squares, long legalMoves, boolean whiteToMove) {
+        for (; squares != 0; squares &= squares - 1) {
+            int square = Long.numberOfTrailingZeros(squares);
+            int row = square >>> 3;
+            int column = square & 7;
+            if ((legalMoves & (1L << square)) != 0) {
+                board[row][column].setColor(whiteToMove ? 2 : -2);
+            }
+            else {
+                board[row][column].setColor(othello.returnColor(row, column));
+            }
+        }
+        highlighted = legalMoves;
+    }
+
     /**
      * Performs a move based on the position of the Tile that is clicked. Is responsible for managing all game methods
      * and redrawing the game board.
@@ -89,55 +144,131 @@ public class OthelloFrame extends JFrame{
      * @param column The column of the Tile is clicked.
      */
     public void performMove(int row, int column){
+        if (sized != null) {
+            performSizedMove(row, column);
+            return;
+        }
+        if (botMode && !othello.returnPlayer()) {
+            return; // The bot is thinking
+        }
         if (!othello.isValid(row, column)) {
             return;
         }
         else {
             othello.makeMove(row, column);
         }
+        nextTurn();
+    }
 
-        updateBoardHighlights();
-        repaint();
+    /**
+     * Moves the game on after a move: a player without moves passes, the bot starts thinking if it is its turn, and a
+     * finished game is announced and the board reset.
+     */
+    private void nextTurn() {
+        if (!othello.areThereAnyMoves()) {
+            announceResult(othello.returnFinalScores());
+            othello.resetBoard();
+            return;
+        }
 
         // Bot move if enabled and it's bot's turn (black)
-        if (botMode && !othello.returnPlayer() && othello.playerHasMoves()) {
-            int[] botMove = bot.chooseMove(othello);
-            if (botMove != null) {
-                othello.makeMove(botMove[0], botMove[1]);
-                updateBoardHighlights();
-                repaint();
-            }
+        if (botMode && !othello.returnPlayer()) {
+            setTitle("Othello - bot thinking");
+            asyncBot.think(othello, new AsyncBot.Listener() {
+                @Override
+                public void progress(SearchResult progress) {
+                    setTitle(String.format("Othello - bot thinking: depth %d, score %+.2f, best %s",
+                            progress.returnDepth(), progress.returnScore() / (double) Evaluation.DISC,
+                            Bitboard.squareName(progress.returnBestMove())));
+                }
+
+                @Override
+                public void moveChosen(SearchResult result) {
+                    setTitle("Othello");
+                    System.out.println("Bot: " + result + " (ponder hits " + asyncBot.returnPonderHits()
+                            + ", misses " + asyncBot.returnPonderMisses() + ")");
+                    int move = result.returnBestMove();
+                    int[] pv = result.returnPrincipalVariation();
+                    expectedReply = pv.length > 1 && pv[0] == move ? pv[1] : -1;
+                    othello.makeMove(move >>> 3, move & 7);
+                    nextTurn();
+                }
+            });
+        }
+        else if (botMode) {
+            asyncBot.ponder(othello, expectedReply);
+            expectedReply = -1;
         }
+    }
 
-        if (!othello.areThereAnyMoves()) {
-            int[] finalScores = othello.returnFinalScores();
-            int whiteScore = finalScores[0];
-            int blackScore = finalScores[1];
-            if (whiteScore > blackScore) {
-                System.out.println("White wins!\nWhite's Score = " + whiteScore + "\nBlack's score = " + blackScore);
-            }
-            if (whiteScore == blackScore) {
-                System.out.println("It's a tie!");
-            }
-            if (whiteScore<blackScore) {
-                System.out.println("Black wins!\nWhite's score = " + whiteScore + "\nBlack's score = " + blackScore);
-            }
-            othello.resetBoard();
-            resetBoard();
+    /**
+     * Prints the winner and the final scores of a finished game.
+     * @param finalScores White's and then black's score.
+     */
+    private void announceResult(int[] finalScores) {
+        int whiteScore = finalScores[0];
+        int blackScore = finalScores[1];
+        if (whiteScore > blackScore) {
+            System.out.println("White wins!\nWhite's Score = " + whiteScore + "\nBlack's score = " + blackScore);
         }
+        if (whiteScore == blackScore) {
+            System.out.println("It's a tie!");
+        }
+        if (whiteScore<blackScore) {
+            System.out.println("Black wins!\nWhite's score = " + whiteScore + "\nBlack's score = " + blackScore);
+        }
+    }
+
+    /**
+     * Performs a move on a board of another size than 8 by 8.
+     */
+    private void performSizedMove(int row, int column) {
+        if (botMode && !sized.returnPlayer()) {
+            return; // The bot is thinking
+        }
+        if (!sized.isValid(row, column)) {
+            return;
+        }
+        sized.makeMove(row, column);
+        showSizedBoard();
+        nextSizedTurn();
     }
 
-    private void updateBoardHighlights() {
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[i][j].setColor(othello.returnColor(i, j));
-                if (othello.returnPlayer() && othello.isValid(i, j)) {
-                    board[i][j].setColor(2);
+    /**
+     * Moves a game on a board of another size on after a move, like {@link #nextTurn()}, passing for a player who
+     * cannot move.
+     */
+    private void nextSizedTurn() {
+        if (sized.isGameOver()) {
+            announceResult(sized.returnFinalScores());
+            sized.resetBoard();
+            showSizedBoard();
+            return;
+        }
+        if (!sized.canMove()) {
+            System.out.println((sized.returnPlayer() ? "White" : "Black") + " has no moves and passes");
+            sized.pass();
+            showSizedBoard();
+        }
+        if (botMode && !sized.returnPlayer()) {
+            setTitle("Othello - bot thinking");
+            asyncBot.think(sized, new AsyncBot.Listener() {
+                @Override
+                public void progress(SearchResult progress) {
                 }
-                else if (!othello.returnPlayer() && othello.isValid(i, j)) {
-                    board[i][j].setColor(-2);
+
+                @Override
+                public void moveChosen(SearchResult result) {
+                    setTitle("Othello");
+                    int move = result.returnBestMove();
+                    int n = sized.returnSize();
+                    System.out.println("Bot: " + sized.returnLayout().squareName(move) + " depth "
+                            + result.returnDepth() + ", " + result.returnNodes() + " nodes");
+                    sized.makeMove(move / n, move % n);
+                    showSizedBoard();
+                    nextSizedTurn();
                 }
-            }
+            });
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+/**
+ * Pattern-based evaluation with incremental updates, for one search thread.
+ * <p>
+ * The board is cut into 46 overlapping patterns: the edges with their X-squares, the 3x3 and 2x5 corner regions, the
+ * second to fourth rows and columns, and the diagonals of length 4 to 8. Each pattern is read as a base-3 number with
+ * one digit per square (0 for empty, 1 for the player's disc, 2 for the opponent's), and that number indexes a table of
+ * weights for its pattern type and the game stage (see {@link PatternWeights}). Symmetric copies of a pattern share one
+ * table, so an evaluation is one lookup per pattern plus a mobility term.
+ * <p>
+ * The pattern numbers are kept up to date as moves are made and unmade, for both players' points of view, so the
+ * search never has to read them off the board again.
+ */
+public class PatternEvaluator {
+    /** The number of pattern types, each with its own weight table. */
+    static final int TYPES = 11;
+    /** The squares of the first copy of each pattern type; the others are its images under {@link Symmetry}. */
+    private static final int[][] BASE_PATTERNS = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 9, 14},         // edge and both X-squares
+            {0, 1, 2, 8, 9, 10, 16, 17, 18},         // 3x3 corner
+            {0, 1, 2, 3, 4, 8, 9, 10, 11, 12},       // 2x5 corner
+            {8, 9, 10, 11, 12, 13, 14, 15},          // second row
+            {16, 17, 18, 19, 20, 21, 22, 23},        // third row
+            {24, 25, 26, 27, 28, 29, 30, 31},        // fourth row
+            {0, 9, 18, 27, 36, 45, 54, 63},          // main diagonal
+            {1, 10, 19, 28, 37, 46, 55},             // diagonal of 7
+            {2, 11, 20, 29, 38, 47},                 // diagonal of 6
+            {3, 12, 21, 30, 39},                     // diagonal of 5
+            {4, 13, 22, 31}                          // diagonal of 4
+    };
+    /** The squares of every pattern on the board, in digit order (the first square is the lowest digit). */
+    static final int[][] PATTERNS;
+    /** The type of every pattern. */
+    static final int[] PATTERN_TYPES;
+    /** The number of codes of each pattern type, 3 to the power of its length. */
+    static final int[] TYPE_SIZES = new int[TYPES];
+    /** For each square, where its entries start in {@link #ENTRY_PATTERN} and {@link #ENTRY_POWER}. */
+    private static final int[] SQUARE_START = new int[65];
+    /** The pattern each square entry belongs to. */
+    private static final int[] ENTRY_PATTERN;
+    /** The place value of the square's digit in that pattern. */
+    private static final int[] ENTRY_POWER;
+
+    static {
+        int[][] patterns = new int[TYPES * Symmetry.COUNT][];
+        int[] types = new int[patterns.length];
+        int count = 0;
+        for (int type = 0; type < TYPES; type++) {
+            int[] base = BASE_PATTERNS[type];
+            TYPE_SIZES[type] = pow3(base.length);
+            long[] seen = new long[Symmetry.COUNT];
+            int copies = 0;
+            for (int s = 0; s < Symmetry.COUNT; s++) {
+                int[] squares = new int[base.length];
+                long mask = 0;
+                for (int i = 0; i < base.length; i++) {
+                    squares[i] = Symmetry.transformSquare(base[i], s);
+                    mask |= 1L << squares[i];
+                }
+                boolean duplicate = false;
+                for (int i = 0; i < copies; i++) {
+                    duplicate |= seen[i] == mask;
+                }
+                if (!duplicate) {
+                    seen[copies++] = mask;
+                    patterns[count] = squares;
+                    types[count++] = type;
+                }
+            }
+        }
+        PATTERNS = new int[count][];
+        PATTERN_TYPES = new int[count];
+        System.arraycopy(patterns, 0, PATTERNS, 0, count);
+        System.arraycopy(types, 0, PATTERN_TYPES, 0, count);
+
+        int entries = 0;
+        int[] perSquare = new int[64];
+        for (int[] pattern : PATTERNS) {
+            for (int square : pattern) {
+                perSquare[square]++;
+                entries++;
+            }
+        }
+        for (int square = 0; square < 64; square++) {
+            SQUARE_START[square + 1] = SQUARE_START[square] + perSquare[square];
+        }
+        ENTRY_PATTERN = new int[entries];
+        ENTRY_POWER = new int[entries];
+        int[] next = new int[64];
+        for (int p = 0; p < PATTERNS.length; p++) {
+            for (int i = 0; i < PATTERNS[p].length; i++) {
+                int square = PATTERNS[p][i];
+                int entry = SQUARE_START[square] + next[square]++;
+                ENTRY_PATTERN[entry] = p;
+                ENTRY_POWER[entry] = pow3(i);
+            }
+        }
+    }
+
+    private final PatternWeights weights;
+    /** The pattern codes seen by white (white discs are digit 1) and by black (black discs are digit 1). */
+    private final int[] whiteCodes = new int[PATTERNS.length];
+    private final int[] blackCodes = new int[PATTERNS.length];
+
+    /**
+     * Constructor for an evaluator using a set of weights.
+     * @param weights The weights to evaluate with. They are shared, not copied.
+     */
+    public PatternEvaluator(PatternWeights weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Reads the pattern codes of a new position off the board.
+     * @param white The white pieces.
+     * @param black The black pieces.
+     */
+    public void setPosition(long white, long black) {
+        codes(white, black, whiteCodes);
+        codes(black, white, blackCodes);
+    }
+
+    /**
+     * Updates the pattern codes for a move.
+     * @param square The square moved to.
+     * @param flipped The pieces the move flipped.
+     * @param whiteMoved true if white made the move.
+     */
+    public void makeMove(int square, long flipped, boolean whiteMoved) {
+        int[] mover = whiteMoved ? whiteCodes : blackCodes;
+        int[] other = whiteMoved ? blackCodes : whiteCodes;
+        for (int e = SQUARE_START[square]; e < SQUARE_START[square + 1]; e++) {
+            mover[ENTRY_PATTERN[e]] += ENTRY_POWER[e];
+            other[ENTRY_PATTERN[e]] += 2 * ENTRY_POWER[e];
+        }
+        for (; flipped != 0; flipped &= flipped - 1) {
+            int flip = Long.numberOfTrailingZeros(flipped);
+            for (int e = SQUARE_START[flip]; e < SQUARE_START[flip + 1]; e++) {
+                mover[ENTRY_PATTERN[e]] -= ENTRY_POWER[e];
+                other[ENTRY_PATTERN[e]] += ENTRY_POWER[e];
+            }
+        }
+    }
+
+    /**
+     * Takes back the pattern code changes of a move made with {@link #makeMove(int, long, boolean)}.
+     * @param square The square moved to.
+     * @param flipped The pieces the move flipped.
+     * @param whiteMoved true if white made the move.
+     */
+    public void undoMove(int square, long flipped, boolean whiteMoved) {
+        int[] mover = whiteMoved ? whiteCodes : blackCodes;
+        int[] other = whiteMoved ? blackCodes : whiteCodes;
+        for (int e = SQUARE_START[square]; e < SQUARE_START[square + 1]; e++) {
+            mover[ENTRY_PATTERN[e]] -= ENTRY_POWER[e];
+            other[ENTRY_PATTERN[e]] -= 2 * ENTRY_POWER[e];
+        }
+        for (; flipped != 0; flipped &= flipped - 1) {
+            int flip = Long.numberOfTrailingZeros(flipped);
+            for (int e = SQUARE_START[flip]; e < SQUARE_START[flip + 1]; e++) {
+                mover[ENTRY_PATTERN[e]] += ENTRY_POWER[e];
+                other[ENTRY_PATTERN[e]] -= ENTRY_POWER[e];
+            }
+        }
+    }
+
+    /**
+     * Evaluates the current position, which must match the pieces given.
+     * @param whiteToMove true if white is the player to move.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @return An estimate of the final disc margin for the player to move, in hundredths of a disc.
+     */
+    public int evaluate(boolean whiteToMove, long player, long opponent) {
+        int stage = PatternWeights.stage(Long.bitCount(~(player | opponent)));
+        short[][] tables = weights.tables(stage);
+        int[] codes = whiteToMove ? whiteCodes : blackCodes;
+        int score = 0;
+        for (int p = 0; p < codes.length; p++) {
+            score += tables[PATTERN_TYPES[p]][codes[p]];
+        }
+        int mobility = Long.bitCount(Bitboard.legalMoves(player, opponent))
+                - Long.bitCount(Bitboard.legalMoves(opponent, player));
+        score += weights.mobilityWeight(stage) * mobility;
+        return Math.max(-63 * Evaluation.DISC, Math.min(63 * Evaluation.DISC, score));
+    }
+
+    /**
+     * Reads every pattern code of a position from one player's point of view.
+     * @param player The pieces read as digit 1.
+     * @param opponent The pieces read as digit 2.
+     * @param codes Filled with the code of every pattern, in the order of {@link #PATTERNS}.
+     */
+    static void codes(long player, long opponent, int[] codes) {
+        for (int p = 0; p < PATTERNS.length; p++) {
+            int[] squares = PATTERNS[p];
+            int code = 0;
+            for (int i = squares.length - 1; i >= 0; i--) {
+                code = code * 3 + (int) ((player >>> squares[i]) & 1) + 2 * (int) ((opponent >>> squares[i]) & 1);
+            }
+            codes[p] = code;
+        }
+    }
+
+    private static int pow3(int n) {
+        int value = 1;
+        for (int i = 0; i < n; i++) {
+            value *= 3;
+        }
+        return value;
+    }
+}
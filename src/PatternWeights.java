@@ -0,0 +1,220 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The weight tables of the {@link PatternEvaluator}: one table per pattern type and game stage, indexed by pattern
+ * code, plus a mobility weight per stage. All weights are in hundredths of a disc. The tables are read-only once
+ * loaded, so one set of weights is shared by every search thread.
+ * <p>
+ * The weight file is a header (the magic number, the stage count, the type count and the size of each type's table)
+ * followed by each stage's mobility weight and tables, as big-endian 16-bit integers. Without a file, synthetic weights
+ * are built from the square weights of {@link Evaluation}, so the pattern evaluator plays like the simple one until
+ * trained weights are available.
+ */
+public class PatternWeights {
+    /** The file {@link #defaultWeights()} loads from if it exists. */
+    public static final String DEFAULT_FILE = "weights.bin";
+    /** The number of game stages, each covering five moves. */
+    public static final int STAGES = 12;
+    static final int MAGIC = 0x4F505731;
+    private static final int SYNTHETIC_MOBILITY_WEIGHT = 40;
+    private static PatternWeights defaultWeights;
+
+    private final short[][][] tables;
+    private final int[] mobilityWeights;
+    private final long fingerprint;
+
+    /**
+     * Constructor for a set of weights.
+     * @param tables The tables, indexed by stage, pattern type and pattern code.
+     * @param mobilityWeights The weight of one move of mobility at each stage.
+     */
+    PatternWeights(short[][][] tables, int[] mobilityWeights) {
+        this.tables = tables;
+        this.mobilityWeights = mobilityWeights;
+        fingerprint = fingerprint(tables, mobilityWeights);
+    }
+
+    /**
+     * Hashes every weight with 64-bit FNV-1a, in the order they are saved.
+     */
+    private static long fingerprint(short[][][] tables, int[] mobilityWeights) {
+        long hash = 0xCBF29CE484222325L;
+        for (int stage = 0; stage < tables.length; stage++) {
+            hash = (hash ^ mobilityWeights[stage]) * 0x100000001B3L;
+            for (short[] table : tables[stage]) {
+                for (short weight : table) {
+                    hash = (hash ^ weight) * 0x100000001B3L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns a hash of all the weights, which tells apart the evaluations that statistics fitted on search scores,
+     * such as {@link ProbCut}'s, belong to.
+     * @return The fingerprint.
+     */
+    public long returnFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the game stage of a position.
+     * @param empties The number of empty squares.
+     * @return The stage, from 0 at the start of the game to {@link #STAGES} - 1 at the end.
+     */
+    public static int stage(int empties) {
+        return Math.max(0, Math.min(STAGES - 1, (60 - empties) / 5));
+    }
+
+    /**
+     * Returns the tables of one stage.
+     * @param stage The stage.
+     * @return The tables, indexed by pattern type and pattern code.
+     */
+    short[][] tables(int stage) {
+        return tables[stage];
+    }
+
+    /**
+     * Returns the mobility weight of one stage.
+     * @param stage The stage.
+     * @return The value of one move of mobility, in hundredths of a disc.
+     */
+    int mobilityWeight(int stage) {
+        return mobilityWeights[stage];
+    }
+
+    /**
+     * Returns the weights loaded from {@link #DEFAULT_FILE}, or synthetic weights if there is no such file. The
+     * weights are loaded once and then shared.
+     * @return The default weights.
+     */
+    public static synchronized PatternWeights defaultWeights() {
+        if (defaultWeights == null) {
+            Path file = Paths.get(DEFAULT_FILE);
+            if (Files.isRegularFile(file)) {
+                try {
+                    defaultWeights = load(file);
+                }
+                catch (IOException e) {
+                    System.err.println("Ignoring pattern weights: " + e.getMessage());
+                }
+            }
+            if (defaultWeights == null) {
+                defaultWeights = synthetic();
+            }
+        }
+        return defaultWeights;
+    }
+
+    /**
+     * Loads weights from a file.
+     * @param file The weight file.
+     * @return The weights.
+     * @throws IOException If the file cannot be read or does not match the evaluator's patterns.
+     */
+    public static PatternWeights load(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < 12 || in.getInt() != MAGIC) {
+            throw new IOException(file + " is not a pattern weight file");
+        }
+        if (in.getInt() != STAGES || in.getInt() != PatternEvaluator.TYPES) {
+            throw new IOException(file + " has a different number of stages or patterns");
+        }
+        long expected = 0;
+        for (int type = 0; type < PatternEvaluator.TYPES; type++) {
+            if (in.remaining() < 4 || in.getInt() != PatternEvaluator.TYPE_SIZES[type]) {
+                throw new IOException(file + " has different patterns");
+            }
+            expected += PatternEvaluator.TYPE_SIZES[type];
+        }
+        if (in.remaining() != STAGES * (expected + 1) * 2) {
+            throw new IOException(file + " has the wrong length");
+        }
+        short[][][] tables = new short[STAGES][PatternEvaluator.TYPES][];
+        int[] mobility = new int[STAGES];
+        for (int stage = 0; stage < STAGES; stage++) {
+            mobility[stage] = in.getShort();
+            for (int type = 0; type < PatternEvaluator.TYPES; type++) {
+                tables[stage][type] = new short[PatternEvaluator.TYPE_SIZES[type]];
+                in.asShortBuffer().get(tables[stage][type]);
+                in.position(in.position() + 2 * tables[stage][type].length);
+            }
+        }
+        return new PatternWeights(tables, mobility);
+    }
+
+    /**
+     * Writes the weights to a file in the format read by {@link #load(Path)}.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(STAGES);
+            out.writeInt(PatternEvaluator.TYPES);
+            for (int type = 0; type < PatternEvaluator.TYPES; type++) {
+                out.writeInt(PatternEvaluator.TYPE_SIZES[type]);
+            }
+            for (int stage = 0; stage < STAGES; stage++) {
+                out.writeShort(mobilityWeights[stage]);
+                for (short[] table : tables[stage]) {
+                    for (short weight : table) {
+                        out.writeShort(weight);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds weights that reproduce the square weights of {@link Evaluation}: each square's weight is split evenly
+     * between the patterns that cover it. Every stage shares the same tables.
+     * @return The synthetic weights.
+     */
+    public static PatternWeights synthetic() {
+        int[] coverage = new int[64];
+        for (int[] pattern : PatternEvaluator.PATTERNS) {
+            for (int square : pattern) {
+                coverage[square]++;
+            }
+        }
+        short[][] stageTables = new short[PatternEvaluator.TYPES][];
+        for (int p = 0; p < PatternEvaluator.PATTERNS.length; p++) {
+            int type = PatternEvaluator.PATTERN_TYPES[p];
+            if (stageTables[type] != null) {
+                continue;
+            }
+            int[] squares = PatternEvaluator.PATTERNS[p];
+            short[] table = new short[PatternEvaluator.TYPE_SIZES[type]];
+            for (int code = 0; code < table.length; code++) {
+                double value = 0;
+                int rest = code;
+                for (int square : squares) {
+                    int digit = rest % 3;
+                    rest /= 3;
+                    double share = (double) Evaluation.squareWeight(square) / coverage[square];
+                    value += digit == 1 ? share : digit == 2 ? -share : 0;
+                }
+                table[code] = (short) Math.round(value);
+            }
+            stageTables[type] = table;
+        }
+        short[][][] tables = new short[STAGES][][];
+        int[] mobility = new int[STAGES];
+        for (int stage = 0; stage < STAGES; stage++) {
+            tables[stage] = stageTables;
+            mobility[stage] = SYNTHETIC_MOBILITY_WEIGHT;
+        }
+        return new PatternWeights(tables, mobility);
+    }
+}
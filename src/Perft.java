@@ -0,0 +1,215 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft: counts the leaves of the game tree to a fixed depth, to check that move generation is correct and to measure
+ * how fast it is. A pass counts as a ply, and a finished game counts as a single leaf wherever it ends.
+ * <p>
+ * Counts of subtrees can be remembered in a hash table, since the same position is reached through many move orders,
+ * and the top of the tree can be split across a fork-join pool.
+ */
+public class Perft {
+    /** Leaf counts from the start position for depths 0 to 14, used by {@link #verify(int)}. */
+    static final long[] KNOWN_COUNTS = {
+            1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L, 390216L, 3005288L, 24571284L, 212258800L,
+            1939886636L, 18429641748L, 184042084512L
+    };
+    private static final int MIN_HASHED_DEPTH = 3;
+    private static final int MIN_SPLIT_DEPTH = 6;
+    private static final int MAX_SPLIT_PLY = 3;
+
+    private final long[] keys;
+    private final long[] counts;
+    private final int mask;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for a perft counter.
+     * @param hashSizeMb The size of the subtree count table in megabytes, or 0 for no table.
+     * @param threads The number of threads to count with.
+     */
+    public Perft(int hashSizeMb, int threads) {
+        if (hashSizeMb > 0) {
+            int entries = (int) Math.min(1 << 30, Long.highestOneBit(hashSizeMb * (1L << 20) / 16));
+            keys = new long[entries];
+            counts = new long[entries];
+            mask = entries - 1;
+        }
+        else {
+            keys = null;
+            counts = null;
+            mask = 0;
+        }
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Counts the leaves of the game tree below a position.
+     * @param position The position to count from. It is not modified.
+     * @param depth The number of plies to look ahead.
+     * @return The number of positions at that depth, counting finished games once.
+     */
+    public long perft(Othello position, int depth) {
+        boolean white = position.returnPlayer();
+        long player = white ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+        long opponent = white ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+        if (pool == null) {
+            return count(player, opponent, position.returnHash(), white, depth);
+        }
+        return pool.invoke(new PerftTask(player, opponent, position.returnHash(), white, depth, 0));
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private long count(long player, long opponent, long hash, boolean white, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long moves = Bitboard.legalMoves(player, opponent);
+        if (depth == 1) {
+            // Every legal move is a leaf; a pass is one leaf and so is a finished game.
+            return moves == 0 ? 1 : Long.bitCount(moves);
+        }
+        long key = hash ^ depth;
+        if (keys != null && depth >= MIN_HASHED_DEPTH) {
+            int index = (int) key & mask;
+            long stored = counts[index];
+            if ((keys[index] ^ stored) == key) {
+                return stored;
+            }
+        }
+        long nodes = 0;
+        if (moves == 0) {
+            if (Bitboard.legalMoves(opponent, player) == 0) {
+                return 1;
+            }
+            nodes = count(opponent, player, hash ^ Zobrist.moveDelta(Bitboard.PASS, 0, white), !white, depth - 1);
+        }
+        for (; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long flipped = Bitboard.flips(move, player, opponent);
+            nodes += count(opponent & ~flipped, player | flipped | (1L << move),
+                    hash ^ Zobrist.moveDelta(move, flipped, white), !white, depth - 1);
+        }
+        if (keys != null && depth >= MIN_HASHED_DEPTH) {
+            int index = (int) key & mask;
+            counts[index] = nodes;
+            keys[index] = key ^ nodes;
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts one subtree, forking a task per move near the root and counting serially below that.
+     */
+    private class PerftTask extends RecursiveTask<Long> {
+        private final long player;
+        private final long opponent;
+        private final long hash;
+        private final boolean white;
+        private final int depth;
+        private final int ply;
+
+        PerftTask(long player, long opponent, long hash, boolean white, int depth, int ply) {
+            this.player = player;
+            this.opponent = opponent;
+            this.hash = hash;
+            this.white = white;
+            this.depth = depth;
+            this.ply = ply;
+        }
+
+        @Override
+        protected Long compute() {
+            long moves = Bitboard.legalMoves(player, opponent);
+            if (depth < MIN_SPLIT_DEPTH || ply >= MAX_SPLIT_PLY || moves == 0) {
+                return count(player, opponent, hash, white, depth);
+            }
+            PerftTask[] children = new PerftTask[Long.bitCount(moves)];
+            for (int i = 0; moves != 0; moves &= moves - 1, i++) {
+                int move = Long.numberOfTrailingZeros(moves);
+                long flipped = Bitboard.flips(move, player, opponent);
+                children[i] = new PerftTask(opponent & ~flipped, player | flipped | (1L << move),
+                        hash ^ Zobrist.moveDelta(move, flipped, white), !white, depth - 1, ply + 1);
+                children[i].fork();
+            }
+            long nodes = 0;
+            for (PerftTask child : children) {
+                nodes += child.join();
+            }
+            return nodes;
+        }
+    }
+
+    /**
+     * Checks perft from the start position against the known counts.
+     * @param maxDepth The deepest count to check.
+     * @return true if every count matched.
+     */
+    boolean verify(int maxDepth) {
+        boolean ok = true;
+        for (int depth = 1; depth <= Math.min(maxDepth, KNOWN_COUNTS.length - 1); depth++) {
+            long nodes = perft(new Othello(), depth);
+            boolean match = nodes == KNOWN_COUNTS[depth];
+            System.out.printf("perft %2d: %15d %s%n", depth, nodes, match ? "ok" : "MISMATCH, expected "
+                    + KNOWN_COUNTS[depth]);
+            ok &= match;
+        }
+        return ok;
+    }
+
+    /**
+     * Runs perft from the command line.
+     * @param args The depth, followed by any of "-hash MB", "-threads N", "-position TEXT" (in the format read by
+     *             {@link Othello#Othello(String)}) and "-verify" to check the known counts from the start position
+     *             up to the depth instead.
+     */
+    public static void main(String[] args) {
+        int depth = 10;
+        int hashMb = 0;
+        int threads = 1;
+        boolean verify = false;
+        Othello position = new Othello();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-hash":
+                    hashMb = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-position":
+                    position = new Othello(args[++i]);
+                    break;
+                case "-verify":
+                    verify = true;
+                    break;
+                default:
+                    depth = Integer.parseInt(args[i]);
+            }
+        }
+
+        Perft perft = new Perft(hashMb, threads);
+        if (verify) {
+            boolean ok = perft.verify(depth);
+            perft.shutdown();
+            System.exit(ok ? 0 : 1);
+        }
+        System.out.println(position);
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes = perft.perft(position, d);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("perft %2d: %15d nodes %9d ms %14.0f nodes/s%n", d, nodes, elapsed / 1_000_000,
+                    nodes * 1e9 / Math.max(1, elapsed));
+        }
+        perft.shutdown();
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * The statistics behind Multi-ProbCut, Buro's selective search: the score of a deep search is predicted from the
+ * score of a shallow search of the same position, deep = slope * shallow + offset, with an error that is close to
+ * normally distributed. Its standard deviation grows with the depths and shrinks towards the end of the game, and is
+ * modelled as ln(sigma) = c0 + c1 * empties + c2 * depth + c3 * shallow depth, so it can be used at any depth.
+ * <p>
+ * A node is cut when a shallow search shows the deep score to be above beta, or below alpha, by more than
+ * {@link #returnThreshold()} standard deviations. Each node tries {@link #CHECKS} shallow depths, cheapest first, all
+ * of the same parity as the full depth so the odd-even swing of the evaluation does not count as error.
+ * <p>
+ * The parameters are fitted by {@link ProbCutFitter} and stored as a properties file. Without a file, built-in
+ * parameters fitted the same way against the synthetic pattern weights are used. Either way they record the
+ * {@link PatternWeights#returnFingerprint() fingerprint} of the weights they were fitted on, and
+ * {@link #defaultParameters(PatternWeights)} only hands them to engines evaluating with those weights: after training
+ * new weights, the sigmas have to be fitted again.
+ */
+public class ProbCut {
+    /** The file {@link #defaultParameters()} loads from if it exists. */
+    public static final String DEFAULT_FILE = "probcut.txt";
+    /** The shallowest depth at which a node can be cut. */
+    public static final int MIN_DEPTH = 3;
+    /** The number of shallow searches each node may try. */
+    public static final int CHECKS = 2;
+    /** The number of standard deviations a prediction has to clear by default. */
+    public static final double DEFAULT_THRESHOLD = 1.5;
+    /** The depth from which a second, cheaper shallow search is tried first. */
+    private static final int CHEAP_CHECK_DEPTH = 8;
+    /** The highest score a search can return other than {@link Evaluation#INFINITY}. */
+    private static final int MAX_SCORE = 64 * Evaluation.DISC;
+    /** The fingerprint of {@link PatternWeights#synthetic()}, which the built-in parameters were fitted on. */
+    private static final long SYNTHETIC_WEIGHTS = 0x66D12EFAC41FEA55L;
+    private static ProbCut defaultParameters;
+    private static long warnedWeights;
+
+    private final double slope;
+    private final double offset;
+    private final double[] sigmaModel;
+    private final double threshold;
+    private final long weights;
+
+    /**
+     * Constructor for a set of parameters.
+     * @param slope The slope of the deep score against the shallow one.
+     * @param offset The deep score when the shallow one is 0, in hundredths of a disc.
+     * @param sigmaModel The four coefficients of ln(sigma), as described for the class.
+     * @param threshold The number of standard deviations a prediction has to clear to cut a node.
+     * @param weights The fingerprint of the pattern weights the parameters were fitted on.
+     */
+    public ProbCut(double slope, double offset, double[] sigmaModel, double threshold, long weights) {
+        if (slope <= 0 || sigmaModel.length != 4 || threshold < 0) {
+            throw new IllegalArgumentException("Bad ProbCut parameters");
+        }
+        this.slope = slope;
+        this.offset = offset;
+        this.sigmaModel = sigmaModel.clone();
+        this.threshold = threshold;
+        this.weights = weights;
+    }
+
+    /**
+     * Returns the parameters loaded from {@link #DEFAULT_FILE}, or the built-in ones if there is no such file. The
+     * parameters are loaded once and then shared.
+     * @return The default parameters.
+     */
+    public static synchronized ProbCut defaultParameters() {
+        if (defaultParameters == null) {
+            Path file = Paths.get(DEFAULT_FILE);
+            if (Files.isRegularFile(file)) {
+                try {
+                    defaultParameters = load(file);
+                }
+                catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Ignoring ProbCut parameters: " + e.getMessage());
+                }
+            }
+            if (defaultParameters == null) {
+                // Fitted from 300 random positions searched to depth 12 with the synthetic pattern weights.
+                defaultParameters = new ProbCut(1.050352, 5.829597, new double[] {5.247059, -0.029444, 0.105569,
+                        -0.126022}, DEFAULT_THRESHOLD, SYNTHETIC_WEIGHTS);
+            }
+        }
+        return defaultParameters;
+    }
+
+    /**
+     * Returns the default parameters if they were fitted on the given weights. Otherwise their sigmas describe another
+     * evaluation's scores, so there are none: a warning is printed, once per set of weights, and the engine searches
+     * without ProbCut until {@link ProbCutFitter} is run again.
+     * @param weights The weights the engine evaluates with.
+     * @return The default parameters, or null if they belong to other weights.
+     */
+    public static synchronized ProbCut defaultParameters(PatternWeights weights) {
+        ProbCut parameters = defaultParameters();
+        if (parameters.weights == weights.returnFingerprint()) {
+            return parameters;
+        }
+        if (warnedWeights != weights.returnFingerprint()) {
+            warnedWeights = weights.returnFingerprint();
+            System.err.printf("ProbCut is off: its parameters were fitted on weights %016x, not %016x;"
+                    + " run probcut-fit%n", parameters.weights, weights.returnFingerprint());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the fingerprint of the pattern weights the parameters were fitted on.
+     * @return The fingerprint, see {@link PatternWeights#returnFingerprint()}.
+     */
+    public long returnWeights() {
+        return weights;
+    }
+
+    /**
+     * Loads parameters from a properties file written by {@link #save(Path)}.
+     * @param file The file.
+     * @return The parameters.
+     * @throws IOException If the file cannot be read or a parameter is missing.
+     */
+    public static ProbCut load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(in);
+        }
+        double[] model = new double[4];
+        for (int i = 0; i < model.length; i++) {
+            model[i] = number(properties, file, "sigma." + i);
+        }
+        String threshold = properties.getProperty("threshold");
+        String weights = properties.getProperty("weights");
+        if (weights == null) {
+            throw new IOException(file + " does not say which weights it was fitted on; run probcut-fit again");
+        }
+        return new ProbCut(number(properties, file, "slope"), number(properties, file, "offset"), model,
+                threshold != null ? Double.parseDouble(threshold) : DEFAULT_THRESHOLD,
+                Long.parseUnsignedLong(weights, 16));
+    }
+
+    private static double number(Properties properties, Path file, String key) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IOException(file + " has no " + key);
+        }
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * Writes the parameters to a file in the format read by {@link #load(Path)}.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("slope", format(slope));
+        properties.setProperty("offset", format(offset));
+        for (int i = 0; i < sigmaModel.length; i++) {
+            properties.setProperty("sigma." + i, format(sigmaModel[i]));
+        }
+        properties.setProperty("threshold", format(threshold));
+        properties.setProperty("weights", String.format("%016x", weights));
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(out, "ProbCut: deep = slope * shallow + offset, "
+                    + "ln(sigma) = sigma.0 + sigma.1 * empties + sigma.2 * depth + sigma.3 * shallow");
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    /**
+     * Returns a copy of the parameters that cuts at a different confidence.
+     * @param threshold The number of standard deviations a prediction has to clear; higher cuts less.
+     * @return The new parameters.
+     */
+    public ProbCut withThreshold(double threshold) {
+        return new ProbCut(slope, offset, sigmaModel, threshold, weights);
+    }
+
+    /**
+     * Returns the number of standard deviations a prediction has to clear to cut a node.
+     * @return The threshold.
+     */
+    public double returnThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the depth of one of the shallow searches tried at a node. The last check searches to about half the
+     * depth; from {@link #CHEAP_CHECK_DEPTH} on, the first searches to about half of that.
+     * @param depth The remaining depth of the node.
+     * @param check Which check, from 0 to {@link #CHECKS} - 1.
+     * @return The depth of the shallow search, or 0 if this check is not tried at this depth.
+     */
+    static int shallowDepth(int depth, int check) {
+        int shallow = half(depth);
+        if (check == CHECKS - 1) {
+            return shallow;
+        }
+        return depth >= CHEAP_CHECK_DEPTH ? half(shallow) : 0;
+    }
+
+    /**
+     * Returns about half a depth, rounded down to the same parity.
+     */
+    private static int half(int depth) {
+        int shallow = depth / 2;
+        return ((depth - shallow) & 1) != 0 ? shallow - 1 : shallow;
+    }
+
+    /**
+     * Returns the standard deviation of a deep score predicted from a shallow one.
+     * @param empties The number of empty squares.
+     * @param depth The depth of the deep search.
+     * @param shallow The depth of the shallow search.
+     * @return The standard deviation, in hundredths of a disc.
+     */
+    public double sigma(int empties, int depth, int shallow) {
+        return Math.exp(sigmaModel[0] + sigmaModel[1] * empties + sigmaModel[2] * depth + sigmaModel[3] * shallow);
+    }
+
+    /**
+     * Returns the shallow score at or above which the deep score is very likely to be at least beta.
+     * @return The score for a null-window shallow search, or {@link Evaluation#INFINITY} if no shallow score would do.
+     */
+    int highBound(int empties, int depth, int shallow, int beta) {
+        double bound = Math.ceil((beta + threshold * sigma(empties, depth, shallow) - offset) / slope);
+        return bound > MAX_SCORE ? Evaluation.INFINITY : (int) bound;
+    }
+
+    /**
+     * Returns the shallow score at or below which the deep score is very likely to be at most alpha.
+     * @return The score for a null-window shallow search, or -{@link Evaluation#INFINITY} if no shallow score would
+     * do.
+     */
+    int lowBound(int empties, int depth, int shallow, int alpha) {
+        double bound = Math.floor((alpha - threshold * sigma(empties, depth, shallow) - offset) / slope);
+        return bound < -MAX_SCORE ? -Evaluation.INFINITY : (int) bound;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "deep = %.3f * shallow %+.1f, ln(sigma) = %.3f %+.4f * empties %+.4f * depth"
+                + " %+.4f * shallow, threshold %.2f, weights %016x", slope, offset, sigmaModel[0], sigmaModel[1],
+                sigmaModel[2], sigmaModel[3], threshold, weights);
+    }
+}
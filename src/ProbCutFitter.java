@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Fits the {@link ProbCut} statistics. Searches random positions from every stage of the game to a fixed depth
+ * without selective search, keeping the score of every iteration, then pairs each depth with the shallow depths
+ * ProbCut would check it with. The deep scores are regressed on the shallow ones for the slope and offset; the
+ * errors are grouped by stage and depth pair, and the logarithm of each group's standard deviation is regressed on the
+ * empties and the two depths, weighted by the group sizes, for the sigma model. The parameters are fitted on, and
+ * marked with the fingerprint of, the default pattern weights, so this has to be run again after training.
+ */
+public class ProbCutFitter {
+    private static final int HASH_MB = 64;
+    /** The width of the empties buckets the errors are grouped by. */
+    private static final int EMPTIES_BUCKET = 8;
+    /** The fewest samples a group needs to count in the sigma model. */
+    private static final int MIN_GROUP = 8;
+
+    /**
+     * Runs the fit from the command line.
+     * @param args Any of "-positions N" (default 400), "-depth N" for the deepest search (default 10), "-seed N" and
+     *             "-out FILE" for the parameters (default {@link ProbCut#DEFAULT_FILE}).
+     * @throws IOException If the parameters cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int positions = 400;
+        int maxDepth = 10;
+        long seed = 20241001L;
+        Path out = Paths.get(ProbCut.DEFAULT_FILE);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-positions":
+                    positions = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    maxDepth = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-out":
+                    out = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SearchEngine engine = new SearchEngine(maxDepth, 0, HASH_MB, 1);
+        engine.setProbCut(null);
+        int[] scores = new int[maxDepth + 1];
+        engine.setProgressListener(result -> scores[result.returnDepth()] = result.returnScore());
+        Random random = new Random(seed);
+        // One row per pair: empties, depth, shallow depth, shallow score, deep score.
+        int[][] samples = new int[positions * maxDepth * ProbCut.CHECKS][];
+        int sampleCount = 0;
+        long start = System.nanoTime();
+        for (int searched = 0; searched < positions; ) {
+            Othello position = SmpBenchmark.randomPosition(random, 4 + random.nextInt(42));
+            int empties = 64 - Long.bitCount(position.returnWhiteDiscs() | position.returnBlackDiscs());
+            if (position.legalMoves() == 0 || empties <= maxDepth) {
+                continue;
+            }
+            engine.returnTable().clear();
+            engine.search(position);
+            for (int depth = ProbCut.MIN_DEPTH; depth <= maxDepth; depth++) {
+                for (int check = 0; check < ProbCut.CHECKS; check++) {
+                    int shallow = ProbCut.shallowDepth(depth, check);
+                    if (shallow >= 1) {
+                        samples[sampleCount++] = new int[] {empties, depth, shallow, scores[shallow], scores[depth]};
+                    }
+                }
+            }
+            if (++searched % 50 == 0) {
+                System.err.printf("%d positions, %.0f s%n", searched, (System.nanoTime() - start) / 1e9);
+            }
+        }
+        samples = Arrays.copyOf(samples, sampleCount);
+
+        // deep = slope * shallow + offset, by least squares over every pair.
+        double n = sampleCount;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXx = 0;
+        double sumXy = 0;
+        for (int[] sample : samples) {
+            sumX += sample[3];
+            sumY += sample[4];
+            sumXx += (double) sample[3] * sample[3];
+            sumXy += (double) sample[3] * sample[4];
+        }
+        double slope = (n * sumXy - sumX * sumY) / (n * sumXx - sumX * sumX);
+        double offset = (sumY - slope * sumX) / n;
+
+        // The standard deviation of the error in each group of empties, depth and shallow depth.
+        Map<String, double[]> groups = new TreeMap<>();
+        for (int[] sample : samples) {
+            double error = sample[4] - (slope * sample[3] + offset);
+            String key = String.format(Locale.ROOT, "%02d %02d %02d", sample[0] / EMPTIES_BUCKET, sample[1], sample[2]);
+            double[] group = groups.computeIfAbsent(key, k -> new double[5]);
+            group[0]++;
+            group[1] += sample[0];
+            group[2] += error * error;
+            group[3] = sample[1];
+            group[4] = sample[2];
+        }
+        System.out.println("empties depth shallow samples   sigma");
+        double[][] normal = new double[4][5];
+        for (double[] group : groups.values()) {
+            double count = group[0];
+            double empties = group[1] / count;
+            double sigma = Math.sqrt(group[2] / count);
+            System.out.printf(Locale.ROOT, "%7.1f %5.0f %7.0f %7.0f %7.1f%n", empties, group[3], group[4], count,
+                    sigma);
+            if (count < MIN_GROUP || sigma <= 0) {
+                continue;
+            }
+            double[] features = {1, empties, group[3], group[4]};
+            for (int row = 0; row < 4; row++) {
+                for (int column = 0; column < 4; column++) {
+                    normal[row][column] += count * features[row] * features[column];
+                }
+                normal[row][4] += count * features[row] * Math.log(sigma);
+            }
+        }
+        ProbCut fitted = new ProbCut(slope, offset, solve(normal), ProbCut.DEFAULT_THRESHOLD,
+                PatternWeights.defaultWeights().returnFingerprint());
+        System.out.printf("%d positions, %d pairs%n", positions, sampleCount);
+        System.out.println(fitted);
+        fitted.save(out);
+        System.out.println("Wrote " + out);
+    }
+
+    /**
+     * Solves a system of linear equations by Gaussian elimination with partial pivoting.
+     * @param system The augmented matrix, one row per equation with the right-hand side last. It is overwritten.
+     * @return The solution.
+     */
+    static double[] solve(double[][] system) {
+        int size = system.length;
+        for (int column = 0; column < size; column++) {
+            int pivot = column;
+            for (int row = column + 1; row < size; row++) {
+                if (Math.abs(system[row][column]) > Math.abs(system[pivot][column])) {
+                    pivot = row;
+                }
+            }
+            double[] swap = system[column];
+            system[column] = system[pivot];
+            system[pivot] = swap;
+            if (system[column][column] == 0) {
+                throw new IllegalArgumentException("Not enough data to fit the sigma model");
+            }
+            for (int row = column + 1; row < size; row++) {
+                double factor = system[row][column] / system[column][column];
+                for (int k = column; k <= size; k++) {
+                    system[row][k] -= factor * system[column][k];
+                }
+            }
+        }
+        double[] solution = new double[size];
+        for (int row = size - 1; row >= 0; row--) {
+            double sum = system[row][size];
+            for (int k = row + 1; k < size; k++) {
+                sum -= system[row][k] * solution[k];
+            }
+            solution[row] = sum / system[row][row];
+        }
+        return solution;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Locale;
+
+/**
+ * Measures what move ordering and selective search save. Searches the midgame positions of {@link Benchmarks} three
+ * ways, in square order after the transposition table's move, with the ordering heuristics, and with the ordering
+ * heuristics and Multi-ProbCut, and prints for each:
+ * <ul>
+ * <li>the nodes and time to reach a fixed depth, and the effective branching factor, both over the last two
+ * iterations (the square root of the nodes of the last over those of the one two plies before, so the odd-even swing
+ * cancels out) and over the whole search (the depth-th root of all the nodes);</li>
+ * <li>the mean depth completed in a fixed time, which is the gain that matters in play.</li>
+ * </ul>
+ * Every position starts from an empty transposition table.
+ */
+public class SearchBenchmark {
+    private static final int HASH_MB = 64;
+
+    /**
+     * Runs the benchmark.
+     * @param args Any of "-depth N" for the fixed depth (default 10), "-time MS" for the fixed time per position
+     *             (default 1000) and "-threshold T" for the ProbCut threshold in standard deviations.
+     */
+    public static void main(String[] args) {
+        int depth = 10;
+        long timeMillis = 1000;
+        ProbCut probCut = ProbCut.defaultParameters(PatternWeights.defaultWeights());
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    timeMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-threshold":
+                    if (probCut == null) {
+                        throw new IllegalArgumentException("No ProbCut parameters are fitted for these weights");
+                    }
+                    probCut = probCut.withThreshold(Double.parseDouble(args[++i]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Othello[] positions = Benchmarks.load(Benchmarks.MIDGAME);
+        System.out.printf("%d positions, depth %d, %d ms per position%n", positions.length, depth, timeMillis);
+        System.out.println("ProbCut: " + (probCut != null ? probCut : "off, not fitted for these weights"));
+        System.out.println("search                 nodes   time ms    nodes/s  EBF last  EBF all  depth in time");
+        run("square order", positions, depth, timeMillis, false, null);
+        run("ordered", positions, depth, timeMillis, true, null);
+        if (probCut != null) {
+            run("ordered + probcut", positions, depth, timeMillis, true, probCut);
+        }
+    }
+
+    private static void run(String name, Othello[] positions, int depth, long timeMillis, boolean ordering,
+            ProbCut probCut) {
+        SearchEngine engine = new SearchEngine(depth, 0, HASH_MB, 1);
+        engine.setMoveOrdering(ordering);
+        engine.setProbCut(probCut);
+        // The nodes of each iteration alone, summed over the positions.
+        long[] iterationNodes = new long[depth + 1];
+        long[] previous = new long[1];
+        engine.setProgressListener(result -> {
+            iterationNodes[result.returnDepth()] += result.returnNodes() - previous[0];
+            previous[0] = result.returnNodes();
+        });
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (Othello position : positions) {
+            engine.returnTable().clear();
+            previous[0] = 0;
+            nodes += engine.search(position).returnNodes();
+        }
+        long elapsed = System.nanoTime() - start;
+        engine.setProgressListener(null);
+        double lastEbf = depth > 2 ? Math.sqrt((double) iterationNodes[depth] / iterationNodes[depth - 2]) : 0;
+        double allEbf = Math.pow((double) nodes / positions.length, 1.0 / depth);
+
+        SearchEngine timed = new SearchEngine(60, timeMillis, HASH_MB, 1);
+        timed.setMoveOrdering(ordering);
+        timed.setProbCut(probCut);
+        int depths = 0;
+        for (Othello position : positions) {
+            timed.returnTable().clear();
+            depths += timed.search(position).returnDepth();
+        }
+        System.out.printf(Locale.ROOT, "%-18s %11d %9d %10.0f %9.2f %8.2f %14.2f%n", name, nodes, elapsed / 1_000_000,
+                nodes * 1e9 / elapsed, lastEbf, allEbf, (double) depths / positions.length);
+    }
+}
@@ -0,0 +1,365 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Iterative deepening alpha-beta search engine. Searches one ply deeper at a time until it reaches its depth limit or
+ * runs out of time, and always answers with the best move of the deepest iteration it got through. The search orders
+ * moves best-first by guess and is selective, cutting nodes that shallow searches predict to fall outside the window
+ * (see {@link ProbCut}); both can be turned off to measure what they save.
+ * <p>
+ * With more than one thread the engine runs a Lazy SMP search: helper threads search the same root independently,
+ * half of them one ply ahead, and share what they find only through the transposition table. The calling thread's
+ * iterations decide the move; the helpers stop as soon as it finishes.
+ */
+public class SearchEngine {
+    private static final int DEFAULT_HASH_MB = 16;
+    private int maxDepth;
+    private long timeLimitMillis;
+    private final TranspositionTable table;
+    private final Searcher[] searchers;
+    private final ExecutorService helperPool;
+    private volatile boolean stopRequested;
+    private volatile boolean searchFinished;
+    private volatile Consumer<SearchResult> progressListener;
+    private volatile EngineStats stats;
+    private long deadline;
+
+    /**
+     * Constructor for a single-threaded search engine with a depth and time budget and a 16 MB transposition table.
+     * @param maxDepth The deepest iteration to search, in plies.
+     * @param timeLimitMillis The longest time a search may take in milliseconds, or 0 for no limit.
+     */
+    public SearchEngine(int maxDepth, long timeLimitMillis) {
+        this(maxDepth, timeLimitMillis, DEFAULT_HASH_MB, 1);
+    }
+
+    /**
+     * Constructor for a single-threaded search engine with a transposition table of a given size.
+     * @param maxDepth The deepest iteration to search, in plies.
+     * @param timeLimitMillis The longest time a search may take in milliseconds, or 0 for no limit.
+     * @param hashSizeMb The size of the transposition table in megabytes.
+     */
+    public SearchEngine(int maxDepth, long timeLimitMillis, int hashSizeMb) {
+        this(maxDepth, timeLimitMillis, hashSizeMb, 1);
+    }
+
+    /**
+     * Constructor for a search engine that searches on several threads sharing one transposition table, and evaluates
+     * with the default pattern weights (see {@link PatternWeights#defaultWeights()}).
+     * @param maxDepth The deepest iteration to search, in plies.
+     * @param timeLimitMillis The longest time a search may take in milliseconds, or 0 for no limit.
+     * @param hashSizeMb The size of the transposition table in megabytes.
+     * @param threads The number of threads to search with, including the calling thread.
+     */
+    public SearchEngine(int maxDepth, long timeLimitMillis, int hashSizeMb, int threads) {
+        this(maxDepth, timeLimitMillis, hashSizeMb, threads, PatternWeights.defaultWeights());
+    }
+
+    /**
+     * Constructor for a search engine with a given evaluation.
+     * @param maxDepth The deepest iteration to search, in plies.
+     * @param timeLimitMillis The longest time a search may take in milliseconds, or 0 for no limit.
+     * @param hashSizeMb The size of the transposition table in megabytes.
+     * @param threads The number of threads to search with, including the calling thread.
+     * @param weights The pattern weights to evaluate with, or null for the simpler square-weight evaluation, which
+     *                searches without ProbCut: the default parameters are only used with the weights they were
+     *                fitted on (see {@link ProbCut#defaultParameters(PatternWeights)}).
+     */
+    public SearchEngine(int maxDepth, long timeLimitMillis, int hashSizeMb, int threads, PatternWeights weights) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be at least 1");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.maxDepth = maxDepth;
+        this.timeLimitMillis = timeLimitMillis;
+        table = new TranspositionTable(hashSizeMb);
+        searchers = new Searcher[threads];
+        ProbCut probCut = weights != null ? ProbCut.defaultParameters(weights) : null;
+        for (int i = 0; i < threads; i++) {
+            searchers[i] = new Searcher(this, table, weights);
+            searchers[i].setProbCut(probCut);
+        }
+        helperPool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Searches a position for the best move of the player whose turn it is.
+     * @param position The position to search. It is not modified.
+     * @return The result of the deepest completed iteration, with {@link Bitboard#PASS} as the move if the player has
+     * no legal moves.
+     */
+    public SearchResult search(Othello position) {
+        return search(position, timeLimitMillis);
+    }
+
+    /**
+     * Searches a position with no time limit, for pondering: the search runs until it completes its deepest iteration
+     * or {@link #stop()} is called, filling the transposition table for the searches that follow.
+     * @param position The position to search. It is not modified.
+     * @return The result of the deepest completed iteration.
+     */
+    public SearchResult ponder(Othello position) {
+        return search(position, 0);
+    }
+
+    /**
+     * Returns the depth limit of a search.
+     * @return The deepest iteration the engine searches, in plies.
+     */
+    public int returnMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Changes the limits of the searches that follow, for callers that serve requests with different budgets from one
+     * engine and its transposition table.
+     * @param maxDepth The deepest iteration to search, in plies.
+     * @param timeLimitMillis The longest time a search may take in milliseconds, or 0 for no limit.
+     */
+    public void setLimits(int maxDepth, long timeLimitMillis) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be at least 1");
+        }
+        this.maxDepth = maxDepth;
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Returns the time limit of a search.
+     * @return The longest time a search may take in milliseconds, or 0 for no limit.
+     */
+    public long returnTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    private SearchResult search(Othello position, long limitMillis) {
+        long start = System.nanoTime();
+        deadline = limitMillis > 0 ? start + limitMillis * 1_000_000L : Long.MAX_VALUE;
+        searchFinished = false;
+        boolean whiteToMove = position.returnPlayer();
+        long player = whiteToMove ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+        long opponent = whiteToMove ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+        long hash = position.returnHash();
+        int depthLimit = Math.min(maxDepth, Long.bitCount(~(player | opponent)));
+        table.newSearch();
+
+        Searcher main = searchers[0];
+        if (main.setRoot(player, opponent, whiteToMove) == 0) {
+            return searchPass(position, start, limitMillis);
+        }
+        EngineStats stats = this.stats;
+        if (stats != null) {
+            stats.recordSearch();
+        }
+        Future<?>[] helpers = new Future<?>[searchers.length - 1];
+        for (int i = 1; i < searchers.length; i++) {
+            Searcher helper = searchers[i];
+            int firstDepth = 1 + (i & 1);
+            helpers[i - 1] = helperPool.submit(() -> {
+                helper.setRoot(player, opponent, whiteToMove);
+                for (int depth = firstDepth; depth <= depthLimit && !shouldStop(); depth++) {
+                    helper.searchRoot(player, opponent, hash, depth);
+                }
+            });
+        }
+
+        int bestMove = main.bestMove();
+        int bestScore = 0;
+        int completedDepth = 0;
+        int[] pv = {bestMove};
+        for (int depth = 1; depth <= depthLimit; depth++) {
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            int score = main.searchRoot(player, opponent, hash, depth);
+            if (event.shouldCommit()) {
+                event.depth = depth;
+                event.bestMove = Bitboard.squareName(main.bestMove());
+                event.score = score;
+                event.nodes = main.nodes();
+                event.aborted = main.aborted();
+                event.commit();
+            }
+            if (main.aborted()) {
+                if (score > -Evaluation.INFINITY) {
+                    // The previous best move was re-searched at this depth and something at least as good was found.
+                    bestMove = main.bestMove();
+                    bestScore = score;
+                    pv = main.principalVariation();
+                }
+                break;
+            }
+            bestMove = main.bestMove();
+            bestScore = score;
+            completedDepth = depth;
+            pv = main.principalVariation();
+            if (stats != null) {
+                stats.recordIteration(System.nanoTime() - start);
+            }
+            Consumer<SearchResult> listener = progressListener;
+            if (listener != null) {
+                listener.accept(new SearchResult(bestMove, bestScore, completedDepth, main.nodes(),
+                        System.nanoTime() - start, pv));
+            }
+        }
+
+        searchFinished = true;
+        long nodes = main.nodes();
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                helpers[i].get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+            nodes += searchers[i + 1].nodes();
+        }
+        if (stats != null) {
+            for (Searcher searcher : searchers) {
+                stats.recordSearcher(searcher);
+            }
+        }
+        return new SearchResult(bestMove, bestScore, completedDepth, nodes, System.nanoTime() - start, pv);
+    }
+
+    /**
+     * Answers a position where the player to move has to pass, by searching the position after the pass.
+     */
+    private SearchResult searchPass(Othello position, long start, long limitMillis) {
+        if (position.isGameOver()) {
+            boolean white = position.returnPlayer();
+            int score = white ? Evaluation.finalScore(position.returnWhiteDiscs(), position.returnBlackDiscs())
+                    : Evaluation.finalScore(position.returnBlackDiscs(), position.returnWhiteDiscs());
+            return new SearchResult(Bitboard.PASS, score, 0, 0, System.nanoTime() - start, new int[] {Bitboard.PASS});
+        }
+        Othello passed = new Othello(position);
+        passed.pass();
+        // The iterations of the reply are scored for the other player, so they are not reported.
+        Consumer<SearchResult> listener = progressListener;
+        progressListener = null;
+        SearchResult reply;
+        try {
+            reply = search(passed, limitMillis);
+        }
+        finally {
+            progressListener = listener;
+        }
+        int[] replyPv = reply.returnPrincipalVariation();
+        int[] pv = new int[replyPv.length + 1];
+        pv[0] = Bitboard.PASS;
+        System.arraycopy(replyPv, 0, pv, 1, replyPv.length);
+        return new SearchResult(Bitboard.PASS, -reply.returnScore(), reply.returnDepth(), reply.returnNodes(),
+                System.nanoTime() - start, pv);
+    }
+
+    /**
+     * Returns the transposition table the engine keeps between searches.
+     * @return The engine's transposition table.
+     */
+    public TranspositionTable returnTable() {
+        return table;
+    }
+
+    /**
+     * Returns the number of threads the engine searches with.
+     * @return The thread count, including the calling thread.
+     */
+    public int returnThreads() {
+        return searchers.length;
+    }
+
+    /**
+     * Sets a listener to be given the result of every completed iteration while a search runs. It is called on the
+     * searching thread.
+     * @param listener The listener, or null for none.
+     */
+    public void setProgressListener(Consumer<SearchResult> listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Turns the move ordering heuristics on or off, for measuring what they save. They are on by default.
+     * @param ordering true to order moves, false to search them in square order after the transposition table's move.
+     */
+    public void setMoveOrdering(boolean ordering) {
+        for (Searcher searcher : searchers) {
+            searcher.setMoveOrdering(ordering);
+        }
+    }
+
+    /**
+     * Sets the parameters of the selective search. By default the engine uses {@link ProbCut#defaultParameters()} if
+     * they were fitted on its pattern weights, and no ProbCut otherwise. Parameters only make sense for the evaluation
+     * they were fitted on.
+     * @param probCut The parameters, or null to search every move to full depth.
+     */
+    public void setProbCut(ProbCut probCut) {
+        for (Searcher searcher : searchers) {
+            searcher.setProbCut(probCut);
+        }
+    }
+
+    /**
+     * Sets a persistent cache to consult behind the transposition table, so the engine starts from what earlier runs
+     * searched. Several engines may share one.
+     * @param cache The cache, or null for none.
+     */
+    public void setAnalysisCache(AnalysisCache cache) {
+        for (Searcher searcher : searchers) {
+            searcher.setAnalysisCache(cache);
+        }
+    }
+
+    /**
+     * Sets the statistics the engine adds its searches to.
+     * @param stats The statistics, or null to count nothing.
+     */
+    public void setStats(EngineStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible. The search still returns the best move found so far. The
+     * request stays until {@link #resetStop()}, so a stop that comes just before a search starts stops it at once
+     * instead of being lost.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Withdraws a stop, so the searches that follow run to their limits. A caller that stops searches resets it when
+     * it starts a new request, before checking whether that request is still wanted.
+     */
+    public void resetStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * Stops the helper threads. The engine cannot search on more than one thread afterwards.
+     */
+    public void shutdown() {
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks if the current search has to stop.
+     * @return true if the time limit has passed, {@link #stop()} was called or the main thread has finished.
+     */
+    boolean shouldStop() {
+        return stopRequested || searchFinished || System.nanoTime() > deadline;
+    }
+}
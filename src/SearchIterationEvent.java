@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one iteration of a {@link SearchEngine}'s iterative deepening, completed or cut short by
+ * the time limit. Its duration is the time the iteration took.
+ */
+@Name("othello.SearchIteration")
+@Label("Search Iteration")
+@Category("Othello")
+@Description("One depth of an iterative deepening search")
+class SearchIterationEvent extends Event {
+    @Label("Depth")
+    int depth;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Score")
+    @Description("The score of the best move in hundredths of a disc for the player to move")
+    int score;
+
+    @Label("Nodes")
+    @Description("The positions the main thread visited in the search so far")
+    long nodes;
+
+    @Label("Aborted")
+    boolean aborted;
+}
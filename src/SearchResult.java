@@ -0,0 +1,95 @@
+/**
+ * The outcome of a search: the chosen move, its score and how much work it took to find.
+ */
+public class SearchResult {
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long elapsedNanos;
+    private final int[] principalVariation;
+
+    /**
+     * Constructor for a finished search.
+     * @param bestMove The square of the best move, or {@link Bitboard#PASS} if the player has to pass.
+     * @param score The score of the best move in hundredths of a disc, from the point of view of the player to move.
+     * @param depth The deepest iteration that was completed.
+     * @param nodes The number of positions visited.
+     * @param elapsedNanos The wall-clock time the search took.
+     * @param principalVariation The expected line of play, starting with the best move.
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes, long elapsedNanos, int[] principalVariation) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+        this.principalVariation = principalVariation;
+    }
+
+    /**
+     * Returns the best move found.
+     * @return The square of the best move, or {@link Bitboard#PASS} if the player has to pass.
+     */
+    public int returnBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Returns the score of the best move.
+     * @return The expected final disc margin for the player to move, in hundredths of a disc.
+     */
+    public int returnScore() {
+        return score;
+    }
+
+    /**
+     * Returns the depth of the deepest completed iteration.
+     * @return The search depth in plies.
+     */
+    public int returnDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of positions visited.
+     * @return The node count.
+     */
+    public long returnNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns how long the search took.
+     * @return The elapsed time in nanoseconds.
+     */
+    public long returnElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the expected line of play.
+     * @return The squares of the principal variation, starting with the best move.
+     */
+    public int[] returnPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * Returns the search speed.
+     * @return The number of nodes visited per second.
+     */
+    public long returnNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000L / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder pv = new StringBuilder();
+        for (int move : principalVariation) {
+            pv.append(' ').append(Bitboard.squareName(move));
+        }
+        return String.format("depth %d score %+.2f nodes %d (%d n/s) time %d ms pv%s", depth,
+                score / (double) Evaluation.DISC, nodes, returnNodesPerSecond(), elapsedNanos / 1_000_000, pv);
+    }
+}
@@ -0,0 +1,528 @@
+/**
+ * Negamax alpha-beta search over bitboards for one thread.
+ * Moves are made by passing the new pair of bitboards down the recursion and unmade by returning, so visiting a node
+ * touches no heap memory; the principal variation and move ordering tables are allocated once up front. The Zobrist
+ * hash is passed down the same way and used to share results through the engine's transposition table, and for deep
+ * nodes through its {@link AnalysisCache} if it has one. With pattern weights, the searcher's own
+ * {@link PatternEvaluator} is updated on the way down and back up instead.
+ * <p>
+ * Moves are searched best-first by a guess: the transposition table's move, then the two killer moves that last
+ * caused a cutoff at the same ply, then the rest by how few replies they leave the opponent (away from the leaves),
+ * corners first and the squares next to them last, with ties broken by how often a move caused cutoffs anywhere in
+ * the search (the history table). With {@link ProbCut} parameters the search is also selective: a shallow search
+ * predicts what the deep one would return, and where the prediction is well outside the window the deep search is
+ * skipped.
+ */
+class Searcher {
+    static final int MAX_PLY = 128;
+    private static final int CHECK_INTERVAL = 1023;
+    /** The most legal moves a position can have, with room to spare. */
+    private static final int MAX_MOVES = 64;
+    /** The shallowest remaining depth at which moves are ordered by the opponent's replies, which costs a move each. */
+    private static final int MOBILITY_ORDER_DEPTH = 3;
+    private static final int CORNER_PRIORITY = 48;
+    private static final int X_SQUARE_PENALTY = 24;
+    /** The history scores are halved when one reaches this, so old cutoffs fade. */
+    private static final int HISTORY_LIMIT = 1 << 16;
+    /** The history score is divided by this in a move's key, so it only breaks ties between the other heuristics. */
+    private static final int HISTORY_SCALE = HISTORY_LIMIT / 16;
+    /** Returned by {@link #probCut} when the node has to be searched in full. */
+    private static final int NO_CUT = Integer.MIN_VALUE;
+
+    private final SearchEngine engine;
+    private final TranspositionTable table;
+    private final PatternEvaluator evaluator;
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private final int[] rootMoves = new int[MAX_MOVES];
+    private final int[][] moveBuffer = new int[MAX_PLY][MAX_MOVES];
+    private final int[][] keyBuffer = new int[MAX_PLY][MAX_MOVES];
+    private final long[][] flipBuffer = new long[MAX_PLY][MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY][2];
+    /** How much each square has caused cutoffs, for white and for black. */
+    private final int[][] history = new int[2][64];
+    private int rootMoveCount;
+    private boolean rootWhite;
+    private boolean ordering = true;
+    private ProbCut probCut;
+    private AnalysisCache cache;
+    private boolean probing;
+    private long nodes;
+    private long cutoffs;
+    private long tableProbes;
+    private long tableHits;
+    private long cacheProbes;
+    private long cacheHits;
+    private long moveGenerations;
+    private long probCutTries;
+    private long probCutCuts;
+    private boolean aborted;
+
+    /**
+     * Constructor for a searcher that takes its limits from an engine.
+     * @param engine The engine that decides when the search has to stop.
+     * @param table The transposition table to share results through.
+     * @param weights The pattern weights to evaluate with, or null to use {@link Evaluation#evaluate(long, long)}.
+     */
+    Searcher(SearchEngine engine, TranspositionTable table, PatternWeights weights) {
+        this.engine = engine;
+        this.table = table;
+        evaluator = weights != null ? new PatternEvaluator(weights) : null;
+    }
+
+    /**
+     * Turns the move ordering heuristics on or off. Without them, moves are searched in square order after the
+     * transposition table's move.
+     * @param ordering true to order moves.
+     */
+    void setMoveOrdering(boolean ordering) {
+        this.ordering = ordering;
+    }
+
+    /**
+     * Sets the parameters of selective search.
+     * @param probCut The parameters, or null to search every move to full depth.
+     */
+    void setProbCut(ProbCut probCut) {
+        this.probCut = probCut;
+    }
+
+    /**
+     * Sets the persistent cache consulted behind the transposition table.
+     * @param cache The cache, or null for none.
+     */
+    void setAnalysisCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Prepares to search a new root position.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @param whiteToMove true if the player to move is white.
+     * @return The number of legal moves at the root.
+     */
+    int setRoot(long player, long opponent, boolean whiteToMove) {
+        nodes = 0;
+        cutoffs = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        cacheProbes = 0;
+        cacheHits = 0;
+        moveGenerations = 0;
+        probCutTries = 0;
+        probCutCuts = 0;
+        for (int[] plyKillers : killers) {
+            plyKillers[0] = -1;
+            plyKillers[1] = -1;
+        }
+        for (int[] colorHistory : history) {
+            for (int square = 0; square < 64; square++) {
+                colorHistory[square] >>= 2;
+            }
+        }
+        rootWhite = whiteToMove;
+        aborted = false;
+        rootMoveCount = 0;
+        if (evaluator != null) {
+            evaluator.setPosition(whiteToMove ? player : opponent, whiteToMove ? opponent : player);
+        }
+        for (long moves = Bitboard.legalMoves(player, opponent); moves != 0; moves &= moves - 1) {
+            rootMoves[rootMoveCount++] = Long.numberOfTrailingZeros(moves);
+        }
+        return rootMoveCount;
+    }
+
+    /**
+     * Searches every root move to a fixed depth. The best move is moved to the front of the root move list so the
+     * next iteration searches it first.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @param hash The Zobrist hash of the position.
+     * @param depth The number of plies to search.
+     * @return The score of the best move, which is only meaningful if {@link #aborted()} is false.
+     */
+    int searchRoot(long player, long opponent, long hash, int depth) {
+        int alpha = -Evaluation.INFINITY;
+        int beta = Evaluation.INFINITY;
+        int bestIndex = 0;
+        pvLength[0] = 0;
+        nodes++;
+        for (int i = 0; i < rootMoveCount; i++) {
+            int move = rootMoves[i];
+            long flipped = Bitboard.flips(move, player, opponent);
+            long nextPlayer = opponent & ~flipped;
+            long nextOpponent = player | flipped | (1L << move);
+            long nextHash = hash ^ Zobrist.moveDelta(move, flipped, rootWhite);
+            if (evaluator != null) {
+                evaluator.makeMove(move, flipped, rootWhite);
+            }
+            int score = -negamax(1, nextPlayer, nextOpponent, nextHash, depth - 1, -beta, -alpha);
+            if (evaluator != null) {
+                evaluator.undoMove(move, flipped, rootWhite);
+            }
+            if (aborted) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestIndex = i;
+                updatePv(0, move);
+            }
+        }
+        int best = rootMoves[bestIndex];
+        System.arraycopy(rootMoves, 0, rootMoves, 1, bestIndex);
+        rootMoves[0] = best;
+        if (!aborted) {
+            table.store(hash, depth, TranspositionTable.EXACT, alpha, best);
+            if (cache != null && depth >= AnalysisCache.MIN_DEPTH) {
+                cache.store(hash, depth, TranspositionTable.EXACT, alpha, best);
+            }
+        }
+        return alpha;
+    }
+
+    private int negamax(int ply, long player, long opponent, long hash, int depth, int alpha, int beta) {
+        pvLength[ply] = 0;
+        if ((++nodes & CHECK_INTERVAL) == 0 && engine.shouldStop()) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        boolean white = rootWhite ^ ((ply & 1) != 0);
+        long moves = Bitboard.legalMoves(player, opponent);
+        moveGenerations++;
+        if (moves == 0) {
+            moveGenerations++;
+            if (Bitboard.legalMoves(opponent, player) == 0) {
+                return Evaluation.finalScore(player, opponent);
+            }
+            long nextHash = hash ^ Zobrist.moveDelta(Bitboard.PASS, 0, white);
+            int score = -negamax(ply + 1, opponent, player, nextHash, depth, -beta, -alpha);
+            updatePv(ply, Bitboard.PASS);
+            return score;
+        }
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return evaluator != null ? evaluator.evaluate(white, player, opponent)
+                    : Evaluation.evaluate(player, opponent);
+        }
+
+        int hashMove = -1;
+        long entry = table.probe(hash);
+        tableProbes++;
+        if (entry != TranspositionTable.MISS) {
+            tableHits++;
+        }
+        if (cache != null && depth >= AnalysisCache.MIN_DEPTH
+                && (entry == TranspositionTable.MISS || TranspositionTable.depth(entry) < depth)) {
+            entry = probeCache(hash, entry);
+        }
+        if (entry != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int stored = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && stored >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && stored <= alpha)) {
+                    return stored;
+                }
+            }
+        }
+
+        // Near the end the search sees final scores, which the shallow searches predict badly.
+        if (probCut != null && !probing && depth >= ProbCut.MIN_DEPTH && depth < Long.bitCount(~(player | opponent))) {
+            int cut = probCut(ply, player, opponent, hash, depth, alpha, beta);
+            if (aborted) {
+                return 0;
+            }
+            if (cut != NO_CUT) {
+                return cut;
+            }
+            pvLength[ply] = 0;
+        }
+
+        int originalAlpha = alpha;
+        int best = -Evaluation.INFINITY;
+        int bestMove = -1;
+        int count = orderMoves(ply, player, opponent, moves, hashMove, depth, white);
+        int[] ordered = moveBuffer[ply];
+        long[] flips = flipBuffer[ply];
+        for (int i = 0; i < count; i++) {
+            int move = ordered[i];
+            long flipped = flips[i] != 0 ? flips[i] : Bitboard.flips(move, player, opponent);
+            long nextHash = hash ^ Zobrist.moveDelta(move, flipped, white);
+            if (evaluator != null) {
+                evaluator.makeMove(move, flipped, white);
+            }
+            int score = -negamax(ply + 1, opponent & ~flipped, player | flipped | (1L << move), nextHash, depth - 1,
+                    -beta, -alpha);
+            if (evaluator != null) {
+                evaluator.undoMove(move, flipped, white);
+            }
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        cutoffs++;
+                        if (ordering) {
+                            recordCutoff(ply, move, depth, white);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = best >= beta ? TranspositionTable.LOWER_BOUND
+                : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+        table.store(hash, depth, bound, best, bestMove);
+        if (cache != null && depth >= AnalysisCache.MIN_DEPTH) {
+            cache.store(hash, depth, bound, best, bestMove);
+        }
+        return best;
+    }
+
+    /**
+     * Looks a position up in the persistent cache after the transposition table had nothing deep enough. A deeper
+     * entry found there is copied into the table, so the next visit does not read the file again.
+     * @param entry The transposition table's entry, or {@link TranspositionTable#MISS}.
+     * @return The deeper of the two entries.
+     */
+    private long probeCache(long hash, long entry) {
+        cacheProbes++;
+        long cached = cache.probe(hash);
+        if (cached == TranspositionTable.MISS || (entry != TranspositionTable.MISS
+                && TranspositionTable.depth(cached) <= TranspositionTable.depth(entry))) {
+            return entry;
+        }
+        cacheHits++;
+        table.store(hash, TranspositionTable.depth(cached), TranspositionTable.bound(cached),
+                TranspositionTable.score(cached), TranspositionTable.move(cached));
+        return cached;
+    }
+
+    /**
+     * Tries to prove with shallow searches that the full-depth search would fail high or low, checking the cheapest
+     * prediction first. Every prediction is a null-window search around the shallow score that, by the fitted
+     * statistics, makes the deep score fall outside the window with high probability.
+     * @return beta or alpha if the search can be cut, otherwise {@link #NO_CUT}.
+     */
+    private int probCut(int ply, long player, long opponent, long hash, int depth, int alpha, int beta) {
+        int empties = Long.bitCount(~(player | opponent));
+        probing = true;
+        try {
+            for (int check = 0; check < ProbCut.CHECKS; check++) {
+                int shallow = ProbCut.shallowDepth(depth, check);
+                if (shallow < 1) {
+                    continue;
+                }
+                probCutTries++;
+                int high = probCut.highBound(empties, depth, shallow, beta);
+                if (high < Evaluation.INFINITY
+                        && negamax(ply, player, opponent, hash, shallow, high - 1, high) >= high && !aborted) {
+                    probCutCuts++;
+                    return beta;
+                }
+                int low = probCut.lowBound(empties, depth, shallow, alpha);
+                if (low > -Evaluation.INFINITY
+                        && negamax(ply, player, opponent, hash, shallow, low, low + 1) <= low && !aborted) {
+                    probCutCuts++;
+                    return alpha;
+                }
+            }
+        }
+        finally {
+            probing = false;
+        }
+        return NO_CUT;
+    }
+
+    /**
+     * Sorts the moves of a position best-first into the move buffers for a ply, as described for the class.
+     * @return The number of moves.
+     */
+    private int orderMoves(int ply, long player, long opponent, long moves, int hashMove, int depth, boolean white) {
+        int[] ordered = moveBuffer[ply];
+        int[] keys = keyBuffer[ply];
+        long[] flips = flipBuffer[ply];
+        int[] colorHistory = history[white ? 0 : 1];
+        boolean byReplies = ordering && depth >= MOBILITY_ORDER_DEPTH;
+        int count = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int move = Long.numberOfTrailingZeros(moves);
+            long bit = 1L << move;
+            long flipped = 0;
+            int key;
+            if (move == hashMove) {
+                key = Integer.MIN_VALUE;
+            }
+            else if (!ordering) {
+                key = move;
+            }
+            else if (move == killers[ply][0]) {
+                key = Integer.MIN_VALUE + 1;
+            }
+            else if (move == killers[ply][1]) {
+                key = Integer.MIN_VALUE + 2;
+            }
+            else {
+                key = -colorHistory[move] / HISTORY_SCALE;
+                if (byReplies) {
+                    flipped = Bitboard.flips(move, player, opponent);
+                    long replies = Bitboard.legalMoves(opponent & ~flipped, player | flipped | bit);
+                    // Replies into corners count twice, since they are the ones that hurt.
+                    key += (Long.bitCount(replies) + Long.bitCount(replies & Bitboard.CORNERS)) * 16;
+                }
+                if ((bit & Bitboard.CORNERS) != 0) {
+                    key -= CORNER_PRIORITY;
+                }
+                else if ((bit & Bitboard.X_SQUARES) != 0) {
+                    key += X_SQUARE_PENALTY;
+                }
+            }
+            int i = count++;
+            while (i > 0 && keys[i - 1] > key) {
+                keys[i] = keys[i - 1];
+                ordered[i] = ordered[i - 1];
+                flips[i] = flips[i - 1];
+                i--;
+            }
+            keys[i] = key;
+            ordered[i] = move;
+            flips[i] = flipped;
+        }
+        return count;
+    }
+
+    /**
+     * Remembers a move that caused a cutoff, as a killer at its ply and in the history table, weighted by the depth of
+     * the subtree it saved.
+     */
+    private void recordCutoff(int ply, int move, int depth, boolean white) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] colorHistory = history[white ? 0 : 1];
+        colorHistory[move] += depth * depth;
+        if (colorHistory[move] >= HISTORY_LIMIT) {
+            for (int square = 0; square < 64; square++) {
+                colorHistory[square] >>= 1;
+            }
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][0] = move;
+        int childLength = pvLength[ply + 1];
+        System.arraycopy(pv[ply + 1], 0, pv[ply], 1, childLength);
+        pvLength[ply] = childLength + 1;
+    }
+
+    /**
+     * Returns the principal variation of the last completed root search.
+     * @return A new array holding the squares of the principal variation.
+     */
+    int[] principalVariation() {
+        int[] line = new int[pvLength[0]];
+        System.arraycopy(pv[0], 0, line, 0, line.length);
+        return line;
+    }
+
+    /**
+     * Returns the best root move of the last completed root search.
+     * @return The square of the best move.
+     */
+    int bestMove() {
+        return rootMoves[0];
+    }
+
+    /**
+     * Returns the number of positions visited since the root was set.
+     * @return The node count.
+     */
+    long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of moves that caused a beta cutoff since the root was set.
+     * @return The cutoff count.
+     */
+    long cutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the number of transposition table lookups since the root was set.
+     * @return The probe count.
+     */
+    long tableProbes() {
+        return tableProbes;
+    }
+
+    /**
+     * Returns the number of transposition table lookups that found an entry since the root was set.
+     * @return The hit count.
+     */
+    long tableHits() {
+        return tableHits;
+    }
+
+    /**
+     * Returns the number of persistent cache lookups since the root was set.
+     * @return The cache probe count.
+     */
+    long cacheProbes() {
+        return cacheProbes;
+    }
+
+    /**
+     * Returns the number of persistent cache lookups that found an entry deeper than the transposition table's since
+     * the root was set.
+     * @return The cache hit count.
+     */
+    long cacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the number of legal move generations since the root was set.
+     * @return The move generation count.
+     */
+    long moveGenerations() {
+        return moveGenerations;
+    }
+
+    /**
+     * Returns the number of shallow searches tried to cut a node selectively since the root was set.
+     * @return The ProbCut check count.
+     */
+    long probCutTries() {
+        return probCutTries;
+    }
+
+    /**
+     * Returns the number of nodes cut selectively since the root was set.
+     * @return The ProbCut cut count.
+     */
+    long probCutCuts() {
+        return probCutCuts;
+    }
+
+    /**
+     * Returns if the last search was stopped before it finished.
+     * @return true if the search ran out of time or was stopped.
+     */
+    boolean aborted() {
+        return aborted;
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how an {@link EngineServer} holds up under many concurrent sessions. Every session connects over TCP on
+ * its own virtual thread, sets a search depth and time, then asks for a move in a series of random positions, timing
+ * each request from sending "go" to reading the answer. Prints the request rate, the exact latency percentiles and
+ * how many requests were turned away as busy or failed.
+ */
+public class ServerLoadTest {
+    /**
+     * Runs the load test.
+     * @param args Any of "-sessions N" (default 2000), "-requests N" per session (default 3), "-depth N" (default 4),
+     *             "-time MS" (default 1000), "-port N" to test a server already listening on that local port instead
+     *             of starting one, and "-workers N" and "-queue N" for the server started otherwise.
+     * @throws IOException If the server cannot be started.
+     * @throws InterruptedException If interrupted while waiting for the sessions.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int sessions = 2000;
+        int requests = 3;
+        int depth = 4;
+        long timeMillis = 1000;
+        int port = -1;
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        int queueSize = 1024;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-sessions":
+                    sessions = Integer.parseInt(args[++i]);
+                    break;
+                case "-requests":
+                    requests = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    timeMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-workers":
+                    workerCount = Integer.parseInt(args[++i]);
+                    break;
+                case "-queue":
+                    queueSize = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        EngineServer server = null;
+        if (port < 0) {
+            server = new EngineServer(workerCount, queueSize, 16);
+            CompletableFuture<Integer> listening = new CompletableFuture<>();
+            EngineServer started = server;
+            Thread.ofPlatform().daemon().name("engine-server").start(() -> {
+                try {
+                    started.listen(0, listening::complete);
+                }
+                catch (IOException e) {
+                    listening.completeExceptionally(e);
+                }
+            });
+            try {
+                port = listening.get();
+            }
+            catch (ExecutionException e) {
+                throw new IOException("Server failed to start", e.getCause());
+            }
+            System.out.printf("server: %d workers, queue %d%n", workerCount, queueSize);
+        }
+
+        System.out.printf("%d sessions x %d requests, depth %d, time %d ms%n", sessions, requests, depth, timeMillis);
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+        LongAdder busy = new LongAdder();
+        LongAdder errors = new LongAdder();
+        int serverPort = port;
+        int sessionRequests = requests;
+        int sessionDepth = depth;
+        long sessionTime = timeMillis;
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int s = 0; s < sessions; s++) {
+                long seed = s;
+                clients.submit(() -> {
+                    try {
+                        latencies.add(runSession(serverPort, seed, sessionRequests, sessionDepth, sessionTime, busy));
+                    }
+                    catch (IOException e) {
+                        errors.increment();
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        List<long[]> all = new ArrayList<>(latencies);
+        int answered = 0;
+        for (long[] times : all) {
+            answered += times.length;
+        }
+        long[] merged = new long[answered];
+        int next = 0;
+        for (long[] times : all) {
+            System.arraycopy(times, 0, merged, next, times.length);
+            next += times.length;
+        }
+        Arrays.sort(merged);
+        System.out.printf("answered %d, busy %d, failed sessions %d in %.2f s: %.1f requests/s%n", answered,
+                busy.sum(), errors.sum(), elapsed / 1e9, answered * 1e9 / elapsed);
+        if (answered > 0) {
+            System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                    percentile(merged, 0.5), percentile(merged, 0.9), percentile(merged, 0.99),
+                    percentile(merged, 0.999), merged[answered - 1] / 1e6);
+        }
+        if (server != null) {
+            System.out.println(server.returnStats().snapshot().toJson());
+            server.close();
+        }
+    }
+
+    /**
+     * Plays one client's session: sets the limits, then asks for moves in random positions.
+     * @return The latency in nanoseconds of every request that was answered with a move.
+     */
+    private static long[] runSession(int port, long seed, int requests, int depth, long timeMillis, LongAdder busy)
+            throws IOException {
+        Random random = new Random(seed);
+        long[] times = new long[requests];
+        int answered = 0;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8), true);
+            out.println("set depth " + depth);
+            out.println("set time " + timeMillis);
+            for (int r = 0; r < requests; r++) {
+                Othello position = SmpBenchmark.randomPosition(random, 4 + random.nextInt(40));
+                out.println("set position " + GameReader.standardPosition(position));
+                long sent = System.nanoTime();
+                out.println("go");
+                String answer = in.readLine();
+                if (answer == null) {
+                    throw new IOException("Server closed the session");
+                }
+                if (answer.startsWith("===")) {
+                    times[answered++] = System.nanoTime() - sent;
+                }
+                else if (answer.equals("error busy")) {
+                    busy.increment();
+                }
+                else {
+                    throw new IOException("Unexpected answer: " + answer);
+                }
+            }
+            out.println("quit");
+        }
+        return Arrays.copyOf(times, answered);
+    }
+
+    /**
+     * Returns a percentile of sorted latencies in milliseconds, by the nearest rank.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1e6;
+    }
+}
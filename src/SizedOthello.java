@@ -0,0 +1,293 @@
+/**
+ * An Othello board of any even size, stored as a pair of multi-word bitboards (see {@link WideBitboard}). It follows
+ * {@link Othello}'s rules and conventions, which remains the faster board for the standard 8 by 8 game: white moves
+ * first, the four starting discs sit in the middle with white on the main diagonal, and every move and pass is
+ * recorded on a preallocated undo stack, so a look-ahead can make and unmake moves without allocating.
+ */
+public class SizedOthello {
+    /** The move of a player who has to pass. Squares are numbered from 0, so it cannot be mistaken for one. */
+    public static final int PASS = -1;
+    private static final int WHITE = 1;
+    private static final int BLACK = -1;
+    private final WideBitboard layout;
+    private final int size;
+    private final int words;
+    private final long[] white;
+    private final long[] black;
+    private boolean curPlayer;
+    private final int[] undoMoves;
+    private final boolean[] undoWhite;
+    private final long[] undoFlipped;
+    private int historySize;
+    private final long[] flipped;
+    private final long[] moves;
+    private final long[] scratch;
+
+    /**
+     * Constructor for a board of a given size in the starting position.
+     * @param size The number of rows and columns, even and from {@link WideBitboard#MIN_SIZE} to
+     *             {@link WideBitboard#MAX_SIZE}.
+     */
+    public SizedOthello(int size) {
+        layout = WideBitboard.forSize(size);
+        this.size = size;
+        words = layout.returnWords();
+        white = new long[words];
+        black = new long[words];
+        // Every move fills a square, and there can be a pass before each of them and one at the end.
+        int maxHistory = 2 * layout.returnCells() + 2;
+        undoMoves = new int[maxHistory];
+        undoWhite = new boolean[maxHistory];
+        undoFlipped = new long[maxHistory * words];
+        flipped = new long[words];
+        moves = new long[words];
+        scratch = new long[2 * words];
+        resetBoard();
+    }
+
+    /**
+     * Copy constructor. The copy has the same position and side to move, but an empty undo history.
+     * @param other The board to copy.
+     */
+    public SizedOthello(SizedOthello other) {
+        this(other.size);
+        System.arraycopy(other.white, 0, white, 0, words);
+        System.arraycopy(other.black, 0, black, 0, words);
+        curPlayer = other.curPlayer;
+    }
+
+    /**
+     * Resets the board back to its starting position.
+     */
+    public void resetBoard() {
+        for (int i = 0; i < words; i++) {
+            white[i] = 0;
+            black[i] = 0;
+        }
+        int middle = size / 2;
+        WideBitboard.set(white, layout.square(middle - 1, middle - 1));
+        WideBitboard.set(white, layout.square(middle, middle));
+        WideBitboard.set(black, layout.square(middle - 1, middle));
+        WideBitboard.set(black, layout.square(middle, middle - 1));
+        curPlayer = true;
+        historySize = 0;
+    }
+
+    /**
+     * Returns the number of rows and columns.
+     * @return The board size.
+     */
+    public int returnSize() {
+        return size;
+    }
+
+    /**
+     * Returns the bitboard layout of the board's size.
+     * @return The layout.
+     */
+    public WideBitboard returnLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the current player.
+     * @return true if it is white's turn, false if it is black's turn.
+     */
+    public boolean returnPlayer() {
+        return curPlayer;
+    }
+
+    /**
+     * Returns the white pieces.
+     * @return A copy of white's bitboard.
+     */
+    public long[] returnWhiteDiscs() {
+        return white.clone();
+    }
+
+    /**
+     * Returns the black pieces.
+     * @return A copy of black's bitboard.
+     */
+    public long[] returnBlackDiscs() {
+        return black.clone();
+    }
+
+    /**
+     * Returns the color of a square.
+     * @param row The row of the square.
+     * @param column The column of the square.
+     * @return 1 for white, -1 for black and 0 for empty.
+     */
+    public int returnColor(int row, int column) {
+        int square = layout.square(row, column);
+        if (WideBitboard.get(white, square)) {
+            return WHITE;
+        }
+        return WideBitboard.get(black, square) ? BLACK : 0;
+    }
+
+    /**
+     * Finds the legal moves of the player whose turn it is.
+     * @param moves Filled with the squares where the player can move; it needs {@link WideBitboard#returnWords()}
+     *              words.
+     */
+    public void legalMoves(long[] moves) {
+        if (curPlayer) {
+            layout.legalMoves(white, black, moves, scratch);
+        }
+        else {
+            layout.legalMoves(black, white, moves, scratch);
+        }
+    }
+
+    /**
+     * Checks if a move is valid for the player whose turn it is.
+     * @param row The row of the square.
+     * @param column The column of the square.
+     * @return true if the square is on the board, empty, and the move flips at least one piece.
+     */
+    public boolean isValid(int row, int column) {
+        if (row < 0 || row >= size || column < 0 || column >= size) {
+            return false;
+        }
+        int square = layout.square(row, column);
+        if (WideBitboard.get(white, square) || WideBitboard.get(black, square)) {
+            return false;
+        }
+        return curPlayer ? layout.flips(square, white, black, flipped) : layout.flips(square, black, white, flipped);
+    }
+
+    /**
+     * Checks if a player has any legal moves.
+     * @param whitePlayer true to check white, false to check black.
+     * @return true if the player can move.
+     */
+    public boolean hasMoves(boolean whitePlayer) {
+        if (whitePlayer) {
+            layout.legalMoves(white, black, moves, scratch);
+        }
+        else {
+            layout.legalMoves(black, white, moves, scratch);
+        }
+        return !WideBitboard.isEmpty(moves);
+    }
+
+    /**
+     * Checks if the player whose turn it is has any legal moves. Unlike {@link Othello#playerHasMoves()}, this never
+     * passes; call {@link #pass()} when it returns false.
+     * @return true if the player can move.
+     */
+    public boolean canMove() {
+        return hasMoves(curPlayer);
+    }
+
+    /**
+     * Checks if the game is over, because neither player can move.
+     * @return true if the game is over.
+     */
+    public boolean isGameOver() {
+        return !hasMoves(true) && !hasMoves(false);
+    }
+
+    /**
+     * Executes a move for the player whose turn it is, flipping the pieces it captures. An invalid move is ignored.
+     * The move can be taken back with {@link #undoMove()}.
+     * @param row The row of the square to move to.
+     * @param column The column of the square to move to.
+     */
+    public void makeMove(int row, int column) {
+        if (!isValid(row, column)) {
+            return;
+        }
+        int square = layout.square(row, column);
+        long[] mine = curPlayer ? white : black;
+        long[] theirs = curPlayer ? black : white;
+        for (int i = 0; i < words; i++) {
+            mine[i] |= flipped[i];
+            theirs[i] &= ~flipped[i];
+        }
+        WideBitboard.set(mine, square);
+        record(square);
+        curPlayer = !curPlayer;
+    }
+
+    /**
+     * Passes the turn to the other player. A pass can be taken back with {@link #undoMove()}.
+     * @throws IllegalStateException If the current player has a legal move, and so is not allowed to pass.
+     */
+    public void pass() {
+        if (canMove()) {
+            throw new IllegalStateException("Cannot pass when there are legal moves");
+        }
+        for (int i = 0; i < words; i++) {
+            flipped[i] = 0;
+        }
+        record(PASS);
+        curPlayer = !curPlayer;
+    }
+
+    private void record(int square) {
+        undoMoves[historySize] = square;
+        undoWhite[historySize] = curPlayer;
+        System.arraycopy(flipped, 0, undoFlipped, historySize * words, words);
+        historySize++;
+    }
+
+    /**
+     * Takes back the last move or pass, restoring the pieces it flipped and the side to move.
+     * @throws IllegalStateException If there is nothing to undo.
+     */
+    public void undoMove() {
+        if (historySize == 0) {
+            throw new IllegalStateException("No move to undo");
+        }
+        historySize--;
+        int square = undoMoves[historySize];
+        boolean whiteMoved = undoWhite[historySize];
+        long[] mine = whiteMoved ? white : black;
+        long[] theirs = whiteMoved ? black : white;
+        int offset = historySize * words;
+        for (int i = 0; i < words; i++) {
+            mine[i] &= ~undoFlipped[offset + i];
+            theirs[i] |= undoFlipped[offset + i];
+        }
+        if (square != PASS) {
+            mine[square >>> 6] &= ~(1L << square);
+        }
+        curPlayer = whiteMoved;
+    }
+
+    /**
+     * Returns the number of moves and passes that can be undone.
+     * @return The length of the undo history.
+     */
+    public int returnHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Gives the final scores for each player, assuming that there are no blank squares remaining.
+     * @return An array of size 2 with the first element being white's score and the second element being black's score.
+     */
+    public int[] returnFinalScores() {
+        return new int[] {WideBitboard.count(white), WideBitboard.count(black)};
+    }
+
+    /**
+     * Writes the position as text, row by row, using 'O' for white, 'X' for black and '-' for empty, followed by a
+     * space and the side to move.
+     * @return The position as text.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(size * size + 2);
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int color = returnColor(row, column);
+                text.append(color == WHITE ? 'O' : color == BLACK ? 'X' : '-');
+            }
+        }
+        return text.append(' ').append(curPlayer ? 'O' : 'X').toString();
+    }
+}
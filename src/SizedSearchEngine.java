@@ -0,0 +1,246 @@
+/**
+ * Iterative deepening alpha-beta search for {@link SizedOthello} boards, the counterpart of {@link SearchEngine} for
+ * sizes other than 8 by 8. It evaluates with the square weights of {@link WideBitboard#squareWeight(int)} and the
+ * same mobility term as {@link Evaluation}, and searches corners first and the squares next to them last.
+ * <p>
+ * Positions are passed down the recursion in bitboards allocated once per ply, so visiting a node allocates nothing.
+ * There is no transposition table; the best root move of each iteration is searched first in the next.
+ */
+public class SizedSearchEngine {
+    private static final int MAX_PLY = 2 * WideBitboard.MAX_SIZE * WideBitboard.MAX_SIZE + 2;
+    private static final int INFINITY = 1 << 24;
+    private static final int MOBILITY_WEIGHT = 40;
+    private static final int CHECK_INTERVAL = 1023;
+    private final WideBitboard layout;
+    private final int words;
+    private final int maxDepth;
+    private final long timeLimitMillis;
+    /** The move ordering, in passes: corners, then ordinary squares, then the squares next to corners. */
+    private final long[][] orderMasks;
+    private final long[][] players;
+    private final long[][] opponents;
+    private final long[][] moves;
+    private final long[][] candidates;
+    private final long[] flipped;
+    private final long[] scratch;
+    private final long[] mobility;
+    private final int[] rootMoves;
+    private int rootMoveCount;
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private volatile boolean stopRequested;
+
+    /**
+     * Constructor for a search engine for one board size.
+     * @param size The number of rows and columns of the boards it searches.
+     * @param maxDepth The deepest iteration to search, in plies.
+     * @param timeLimitMillis The longest time a search may take in milliseconds, or 0 for no limit.
+     */
+    public SizedSearchEngine(int size, int maxDepth, long timeLimitMillis) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be at least 1");
+        }
+        layout = WideBitboard.forSize(size);
+        words = layout.returnWords();
+        this.maxDepth = maxDepth;
+        this.timeLimitMillis = timeLimitMillis;
+        int plies = Math.min(MAX_PLY, 2 * layout.returnCells() + 2);
+        players = new long[plies + 1][words];
+        opponents = new long[plies + 1][words];
+        moves = new long[plies + 1][words];
+        candidates = new long[plies + 1][words];
+        flipped = new long[words];
+        scratch = new long[2 * words];
+        mobility = new long[words];
+        rootMoves = new int[layout.returnCells()];
+        orderMasks = new long[3][words];
+        long[] corners = layout.returnCorners();
+        long[] xSquares = layout.returnXSquares();
+        for (int i = 0; i < words; i++) {
+            orderMasks[0][i] = corners[i];
+            orderMasks[1][i] = ~(corners[i] | xSquares[i]);
+            orderMasks[2][i] = xSquares[i];
+        }
+    }
+
+    /**
+     * Returns the board size the engine searches.
+     * @return The number of rows and columns.
+     */
+    public int returnSize() {
+        return layout.returnSize();
+    }
+
+    /**
+     * Searches a position for the best move of the player whose turn it is.
+     * @param position The position to search. It is not modified.
+     * @return The result of the deepest completed iteration, with {@link SizedOthello#PASS} as the move if the player
+     * has no legal moves.
+     */
+    public SearchResult search(SizedOthello position) {
+        long start = System.nanoTime();
+        deadline = timeLimitMillis > 0 ? start + timeLimitMillis * 1_000_000L : Long.MAX_VALUE;
+        aborted = false;
+        nodes = 0;
+        boolean white = position.returnPlayer();
+        long[] player = white ? position.returnWhiteDiscs() : position.returnBlackDiscs();
+        long[] opponent = white ? position.returnBlackDiscs() : position.returnWhiteDiscs();
+        System.arraycopy(player, 0, players[0], 0, words);
+        System.arraycopy(opponent, 0, opponents[0], 0, words);
+        layout.legalMoves(player, opponent, moves[0], scratch);
+        rootMoveCount = 0;
+        for (long[] mask : orderMasks) {
+            for (int i = 0; i < words; i++) {
+                candidates[0][i] = moves[0][i] & mask[i];
+            }
+            for (int s = WideBitboard.nextSquare(candidates[0], 0); s >= 0;
+                    s = WideBitboard.nextSquare(candidates[0], s + 1)) {
+                rootMoves[rootMoveCount++] = s;
+            }
+        }
+        if (rootMoveCount == 0) {
+            return new SearchResult(SizedOthello.PASS, 0, 0, 0, System.nanoTime() - start,
+                    new int[] {SizedOthello.PASS});
+        }
+
+        int empties = layout.returnCells() - WideBitboard.count(player) - WideBitboard.count(opponent);
+        int depthLimit = Math.min(maxDepth, empties);
+        int bestMove = rootMoves[0];
+        int bestScore = 0;
+        int completedDepth = 0;
+        for (int depth = 1; depth <= depthLimit; depth++) {
+            int alpha = -INFINITY;
+            int bestIndex = 0;
+            for (int i = 0; i < rootMoveCount; i++) {
+                int score = -searchMove(0, rootMoves[i], depth, -INFINITY, -alpha);
+                if (aborted) {
+                    break;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    bestIndex = i;
+                }
+            }
+            if (aborted && bestIndex == 0) {
+                break;
+            }
+            // The first move was searched to this depth, so a better one found before the abort is still usable.
+            int best = rootMoves[bestIndex];
+            System.arraycopy(rootMoves, 0, rootMoves, 1, bestIndex);
+            rootMoves[0] = best;
+            bestMove = best;
+            bestScore = alpha;
+            if (aborted) {
+                break;
+            }
+            completedDepth = depth;
+        }
+        return new SearchResult(bestMove, bestScore, completedDepth, nodes, System.nanoTime() - start,
+                new int[] {bestMove});
+    }
+
+    /**
+     * Makes a move at a ply and searches the position after it.
+     * @return The score of the position after the move, for the player who then moves.
+     */
+    private int searchMove(int ply, int square, int depth, int alpha, int beta) {
+        long[] player = players[ply];
+        long[] opponent = opponents[ply];
+        layout.flips(square, player, opponent, flipped);
+        long[] nextPlayer = players[ply + 1];
+        long[] nextOpponent = opponents[ply + 1];
+        for (int i = 0; i < words; i++) {
+            nextPlayer[i] = opponent[i] & ~flipped[i];
+            nextOpponent[i] = player[i] | flipped[i];
+        }
+        WideBitboard.set(nextOpponent, square);
+        return negamax(ply + 1, depth - 1, alpha, beta);
+    }
+
+    private int negamax(int ply, int depth, int alpha, int beta) {
+        if ((++nodes & CHECK_INTERVAL) == 0 && (stopRequested || System.nanoTime() > deadline)) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        long[] player = players[ply];
+        long[] opponent = opponents[ply];
+        long[] legal = moves[ply];
+        layout.legalMoves(player, opponent, legal, scratch);
+        if (WideBitboard.isEmpty(legal)) {
+            layout.legalMoves(opponent, player, mobility, scratch);
+            if (WideBitboard.isEmpty(mobility)) {
+                return (WideBitboard.count(player) - WideBitboard.count(opponent)) * Evaluation.DISC;
+            }
+            if (ply + 1 >= players.length) {
+                return evaluate(player, opponent, legal);
+            }
+            System.arraycopy(opponent, 0, players[ply + 1], 0, words);
+            System.arraycopy(player, 0, opponents[ply + 1], 0, words);
+            return -negamax(ply + 1, depth, -beta, -alpha);
+        }
+        if (depth <= 0 || ply + 1 >= players.length) {
+            return evaluate(player, opponent, legal);
+        }
+
+        int best = -INFINITY;
+        long[] next = candidates[ply];
+        for (long[] mask : orderMasks) {
+            for (int i = 0; i < words; i++) {
+                next[i] = legal[i] & mask[i];
+            }
+            for (int s = WideBitboard.nextSquare(next, 0); s >= 0; s = WideBitboard.nextSquare(next, s + 1)) {
+                int score = -searchMove(ply, s, depth, -beta, -alpha);
+                if (aborted) {
+                    return 0;
+                }
+                if (score > best) {
+                    best = score;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            return best;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Scores a position by the weights of the squares each player holds and the difference in mobility, like
+     * {@link Evaluation#evaluate(long, long)}.
+     * @param legal The legal moves of the player, already generated.
+     */
+    private int evaluate(long[] player, long[] opponent, long[] legal) {
+        int score = 0;
+        for (int s = WideBitboard.nextSquare(player, 0); s >= 0; s = WideBitboard.nextSquare(player, s + 1)) {
+            score += layout.squareWeight(s);
+        }
+        for (int s = WideBitboard.nextSquare(opponent, 0); s >= 0; s = WideBitboard.nextSquare(opponent, s + 1)) {
+            score -= layout.squareWeight(s);
+        }
+        layout.legalMoves(opponent, player, mobility, scratch);
+        score += MOBILITY_WEIGHT * (WideBitboard.count(legal) - WideBitboard.count(mobility));
+        int limit = (layout.returnCells() - 1) * Evaluation.DISC;
+        return Math.max(-limit, Math.min(limit, score));
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible. The search still returns the best move found so far. The
+     * request stays until {@link #resetStop()}, so it also stops a search that had not started yet.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Withdraws a stop, so the searches that follow run to their limits.
+     */
+    public void resetStop() {
+        stopRequested = false;
+    }
+}
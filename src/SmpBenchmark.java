@@ -0,0 +1,71 @@
+import java.util.Random;
+
+/**
+ * Measures how the parallel search scales with the number of threads. Searches a fixed set of positions to a fixed
+ * depth at 1, 2, 4, 8 and 16 threads and prints the time to depth, the node rate and the speedup of each over one
+ * thread.
+ */
+public class SmpBenchmark {
+    private static final int POSITIONS = 6;
+    private static final int HASH_MB = 128;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional search depth (default 12) and largest thread count (default 16).
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        Othello[] positions = new Othello[POSITIONS];
+        Random random = new Random(20240601L);
+        for (int i = 0; i < POSITIONS; i++) {
+            positions[i] = randomPosition(random, 8 + 4 * i);
+        }
+
+        System.out.printf("depth %d, %d positions, %d cores%n", depth, POSITIONS,
+                Runtime.getRuntime().availableProcessors());
+        System.out.println("threads    time ms        nodes      nodes/s  time speedup  nps speedup");
+        double baseTime = 0;
+        double baseRate = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            SearchEngine engine = new SearchEngine(depth, 0, HASH_MB, threads);
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (Othello position : positions) {
+                engine.returnTable().clear();
+                nodes += engine.search(position).returnNodes();
+            }
+            long elapsed = System.nanoTime() - start;
+            engine.shutdown();
+            double rate = nodes * 1e9 / elapsed;
+            if (threads == 1) {
+                baseTime = elapsed;
+                baseRate = rate;
+            }
+            System.out.printf("%7d %10d %12d %12.0f %13.2f %12.2f%n", threads, elapsed / 1_000_000, nodes, rate,
+                    baseTime / elapsed, rate / baseRate);
+        }
+    }
+
+    /**
+     * Plays random legal moves from the start position.
+     * @param random The source of randomness.
+     * @param plies The number of moves to play.
+     * @return The position reached, or the last position before the game ended.
+     */
+    static Othello randomPosition(Random random, int plies) {
+        Othello othello = new Othello();
+        for (int i = 0; i < plies && othello.areThereAnyMoves(); i++) {
+            if (!othello.playerHasMoves()) {
+                continue;
+            }
+            long moves = othello.legalMoves();
+            for (int skip = random.nextInt(Long.bitCount(moves)); skip > 0; skip--) {
+                moves &= moves - 1;
+            }
+            int square = Long.numberOfTrailingZeros(moves);
+            othello.makeMove(square >>> 3, square & 7);
+        }
+        return othello;
+    }
+}
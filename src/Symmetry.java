@@ -0,0 +1,154 @@
+/**
+ * The eight symmetries of the board (rotations and reflections) applied to bitboards and squares. Symmetry number s
+ * transposes the board if bit 0 of s is set, then mirrors the columns if bit 1 is set, then mirrors the rows if bit 2
+ * is set; 0 is the identity.
+ */
+public final class Symmetry {
+    /** The number of board symmetries. */
+    public static final int COUNT = 8;
+    private static final int[][] SQUARES = new int[COUNT][65];
+    private static final int[] INVERSE = new int[COUNT];
+
+    static {
+        for (int s = 0; s < COUNT; s++) {
+            for (int square = 0; square < 64; square++) {
+                SQUARES[s][square] = Long.numberOfTrailingZeros(transform(1L << square, s));
+            }
+            SQUARES[s][Bitboard.PASS] = Bitboard.PASS;
+        }
+        for (int s = 0; s < COUNT; s++) {
+            for (int t = 0; t < COUNT; t++) {
+                if (SQUARES[t][SQUARES[s][1]] == 1 && SQUARES[t][SQUARES[s][2]] == 2
+                        && SQUARES[t][SQUARES[s][8]] == 8) {
+                    INVERSE[s] = t;
+                }
+            }
+        }
+    }
+
+    private Symmetry() {
+    }
+
+    /**
+     * Applies a symmetry to a bitboard.
+     * @param board The bitboard.
+     * @param symmetry The symmetry number, from 0 to 7.
+     * @return The transformed bitboard.
+     */
+    public static long transform(long board, int symmetry) {
+        if ((symmetry & 1) != 0) {
+            board = transpose(board);
+        }
+        if ((symmetry & 2) != 0) {
+            board = mirrorColumns(board);
+        }
+        if ((symmetry & 4) != 0) {
+            board = Long.reverseBytes(board);
+        }
+        return board;
+    }
+
+    /**
+     * Applies a symmetry to a square.
+     * @param square The index of the square, or {@link Bitboard#PASS}.
+     * @param symmetry The symmetry number, from 0 to 7.
+     * @return The index of the square it maps to.
+     */
+    public static int transformSquare(int square, int symmetry) {
+        return SQUARES[symmetry][square];
+    }
+
+    /**
+     * Returns the symmetry that undoes another one.
+     * @param symmetry The symmetry number, from 0 to 7.
+     * @return The number of its inverse.
+     */
+    public static int inverse(int symmetry) {
+        return INVERSE[symmetry];
+    }
+
+    /**
+     * Finds the symmetry that gives a position its smallest form: the smallest player bitboard as an unsigned number,
+     * then the smallest opponent bitboard. Every position that is a rotation or reflection of another has the same
+     * smallest form.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @return The number of the symmetry to apply to reach the smallest form.
+     */
+    public static int canonicalSymmetry(long player, long opponent) {
+        return canonicalize(player, opponent, null);
+    }
+
+    /**
+     * Reduces a position to its smallest form, as {@link #canonicalSymmetry(long, long)} defines it, without
+     * allocating. Map a move of the position to the smallest form with {@link #transformSquare(int, int)} and the
+     * returned symmetry, and back with its {@link #inverse(int)}.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @param canonical Filled with the player's and then the opponent's pieces in the smallest form, or null if only
+     *                  the symmetry is wanted.
+     * @return The number of the symmetry that reaches the smallest form.
+     */
+    public static int canonicalize(long player, long opponent, long[] canonical) {
+        // The eight forms of the player's pieces share their work: the rows are mirrored last, by one byte swap.
+        long transposed = transpose(player);
+        long mirrored = mirrorColumns(player);
+        long both = mirrorColumns(transposed);
+        int best = 0;
+        long bestPlayer = player;
+        long bestOpponent = opponent;
+        // The opponent's pieces only break ties, which only symmetric player bitboards have.
+        boolean opponentKnown = true;
+        for (int s = 1; s < COUNT; s++) {
+            long p = (s & 3) == 0 ? player : (s & 3) == 1 ? transposed : (s & 3) == 2 ? mirrored : both;
+            if ((s & 4) != 0) {
+                p = Long.reverseBytes(p);
+            }
+            int order = Long.compareUnsigned(p, bestPlayer);
+            if (order < 0) {
+                best = s;
+                bestPlayer = p;
+                opponentKnown = false;
+            }
+            else if (order == 0) {
+                if (!opponentKnown) {
+                    bestOpponent = transform(opponent, best);
+                    opponentKnown = true;
+                }
+                long o = transform(opponent, s);
+                if (Long.compareUnsigned(o, bestOpponent) < 0) {
+                    best = s;
+                    bestOpponent = o;
+                }
+            }
+        }
+        if (canonical != null) {
+            canonical[0] = bestPlayer;
+            canonical[1] = opponentKnown ? bestOpponent : transform(opponent, best);
+        }
+        return best;
+    }
+
+    /**
+     * Swaps rows and columns: square (row, column) goes to (column, row).
+     */
+    private static long transpose(long b) {
+        long t = 0x0F0F0F0F00000000L & (b ^ (b << 28));
+        b ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (b ^ (b << 14));
+        b ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (b ^ (b << 7));
+        b ^= t ^ (t >>> 7);
+        return b;
+    }
+
+    /**
+     * Reverses the columns of every row: square (row, column) goes to (row, 7 - column).
+     */
+    private static long mirrorColumns(long b) {
+        b = ((b >>> 1) & 0x5555555555555555L) | ((b & 0x5555555555555555L) << 1);
+        b = ((b >>> 2) & 0x3333333333333333L) | ((b & 0x3333333333333333L) << 2);
+        b = ((b >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((b & 0x0F0F0F0F0F0F0F0FL) << 4);
+        return b;
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads games from text with one game per line, written as a list of moves in the standard notation such as
+ * "f5d6c3d3c4". Whitespace between moves is allowed, and blank lines and lines starting with '#' are skipped.
+ */
+public class TextGameReader implements GameReader {
+    private final BufferedReader in;
+    private long line;
+
+    /**
+     * Constructor for a reader of a text game file.
+     * @param file The file to read.
+     * @throws IOException If the file cannot be opened.
+     */
+    public TextGameReader(Path file) throws IOException {
+        in = Files.newBufferedReader(file, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int next(int[] moves) throws IOException {
+        String text;
+        do {
+            text = in.readLine();
+            line++;
+            if (text == null) {
+                return -1;
+            }
+            text = text.trim();
+        } while (text.isEmpty() || text.charAt(0) == '#');
+
+        int count = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (i + 1 >= text.length() || c < 'a' || c > 'h' || text.charAt(i + 1) < '1' || text.charAt(i + 1) > '8'
+                    || count == GameReader.MAX_MOVES) {
+                throw new IOException("Bad move list on line " + line + ": " + text);
+            }
+            moves[count++] = GameReader.fromStandard(text.charAt(i + 1) - '1', c - 'a');
+            i += 2;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
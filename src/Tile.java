@@ -11,6 +11,8 @@ public class Tile extends JPanel {
     private final OthelloFrame parent;
     private final int i;
     private final int j;
+    private final int inset;
+    private final int diameter;
     private int color;
 
     /**
@@ -20,12 +22,26 @@ public class Tile extends JPanel {
      * @param p The frame it is attached to.
      */
     public Tile(int posI, int posJ, OthelloFrame p) {
+        this(posI, posJ, p, 75);
+    }
+
+    /**
+     * Constructor for a Tile of a given size, for boards with more squares than fit at the default size.
+     * @param posI The row it exists in in the frame.
+     * @param posJ The column it exists in in the frame.
+     * @param p The frame it is attached to.
+     * @param pixels The width and height of the Tile's button.
+     */
+    public Tile(int posI, int posJ, OthelloFrame p, int pixels) {
         super();
         i = posI;
         j = posJ;
         parent = p;
+        // The piece fills the same share of the Tile at every size: 60 pixels, 14 from the corner, at 75.
+        inset = pixels * 14 / 75;
+        diameter = pixels * 60 / 75;
         button = new TileButton(this);
-        button.setPreferredSize(new Dimension(75, 75));
+        button.setPreferredSize(new Dimension(pixels, pixels));
         button.setBackground(new Color(255,255,255,0));
         button.setOpaque(false);
         button.setContentAreaFilled(false);
@@ -41,12 +57,15 @@ public class Tile extends JPanel {
     }
 
     /**
-     * Changes the color of the Tile.
+     * Changes the color of the Tile, and repaints just this Tile if the color is different.
      * @param newColor The new color to set (-2 = a valid move for black, -1 = a black square, 0 = blank, 1 = a white
      * square, 2 = a valid move for white)
      */
     public void setColor(int newColor){
-        color = newColor;
+        if (color != newColor) {
+            color = newColor;
+            repaint();
+        }
     }
 
     /**
@@ -61,33 +80,33 @@ public class Tile extends JPanel {
         g.fillRect(-1, -1, getWidth(), getHeight());
         if (color == -1) {
             g.setColor(Color.black);
-            g.fillOval(14, 14, 60, 60);
+            g.fillOval(inset, inset, diameter, diameter);
             g.setColor(Color.black);
-            g.drawOval(14, 14, 60, 60);
+            g.drawOval(inset, inset, diameter, diameter);
         }
         if (color == 0) {
             g.setColor(myGreen);
-            g.fillOval(14, 14, 60, 60);
+            g.fillOval(inset, inset, diameter, diameter);
             g.setColor(myGreen);
-            g.drawOval(14, 14, 60, 60);
+            g.drawOval(inset, inset, diameter, diameter);
         }
         if (color == 1) {
             g.setColor(Color.white);
-            g.fillOval(14, 14, 60, 60);
+            g.fillOval(inset, inset, diameter, diameter);
             g.setColor(Color.black);
-            g.drawOval(14, 14, 60, 60);
+            g.drawOval(inset, inset, diameter, diameter);
         }
         if (color == 2) {
             g.setColor(validWhiteMove);
-            g.fillOval(14, 14, 60, 60);
+            g.fillOval(inset, inset, diameter, diameter);
             g.setColor(validWhiteMove);
-            g.drawOval(14, 14, 60, 60);
+            g.drawOval(inset, inset, diameter, diameter);
         }
         if (color == -2) {
             g.setColor(validBlackMove);
-            g.fillOval(14, 14, 60, 60);
+            g.fillOval(inset, inset, diameter, diameter);
             g.setColor(validBlackMove);
-            g.drawOval(14, 14, 60, 60);
+            g.drawOval(inset, inset, diameter, diameter);
         }
     }
 }
\ No newline at end of file
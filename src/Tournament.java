@@ -0,0 +1,462 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays bots against each other without a window, to measure strength and speed.
+ * <p>
+ * Games start from random openings, and each opening is played twice with the colors swapped so neither bot gains
+ * from a lucky start. The games run on a fixed pool of worker threads; every worker owns its own pair of bots and
+ * plays one game at a time on its own board, so nothing is shared between games but the counters. The report gives
+ * the first bot's score with an Elo difference and 95% confidence interval, the games per second, and the time each bot
+ * took per move. An optional sequential probability ratio test stops the run as soon as it can tell whether the first
+ * bot is stronger by a given Elo margin.
+ */
+public class Tournament {
+    private final String configA;
+    private final String configB;
+    private final int games;
+    private final int threads;
+    private final int openingPlies;
+    private final long seed;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final AtomicInteger played = new AtomicInteger();
+    private final AtomicInteger winsA = new AtomicInteger();
+    private final AtomicInteger draws = new AtomicInteger();
+    private final AtomicInteger lossesA = new AtomicInteger();
+    private double sprtElo0 = Double.NaN;
+    private double sprtElo1;
+    private final EngineStats statsA = new EngineStats();
+    private final EngineStats statsB = new EngineStats();
+    private Path statsFile;
+    private volatile boolean stopped;
+    private String sprtDecision;
+
+    /**
+     * Constructor for a tournament between two bot configurations.
+     * @param configA The first bot, as described in {@link #createBot(String)}.
+     * @param configB The second bot.
+     * @param games The number of games to play.
+     * @param threads The number of games to play at once.
+     * @param openingPlies The number of random moves each opening starts with.
+     * @param seed The seed the openings are drawn from.
+     */
+    public Tournament(String configA, String configB, int games, int threads, int openingPlies, long seed) {
+        this.configA = configA;
+        this.configB = configB;
+        this.games = games;
+        this.threads = threads;
+        this.openingPlies = openingPlies;
+        this.seed = seed;
+    }
+
+    /**
+     * Turns on the sequential probability ratio test, with 5% false positive and false negative rates.
+     * @param elo0 The Elo difference of the null hypothesis, usually 0.
+     * @param elo1 The Elo difference of the alternative hypothesis, the gain the first bot hopes to show.
+     */
+    public void setSprt(double elo0, double elo1) {
+        sprtElo0 = elo0;
+        sprtElo1 = elo1;
+    }
+
+    /**
+     * Sets a file to write both bots' engine statistics to as JSON when the tournament ends.
+     * @param file The file, or null for none.
+     */
+    public void setStatsFile(Path file) {
+        statsFile = file;
+    }
+
+    /**
+     * Creates a bot from a configuration string. The string is "heuristic" for the bot without search, or a
+     * comma-separated list of "depth=N", "time=MS", "hash=MB", "solve=EMPTIES", "eval=pattern|simple" and
+     * "probcut=off|THRESHOLD" settings for a single-threaded searching bot; any setting left out takes the value shown
+     * in "depth=6,time=0,hash=16,solve=12,eval=pattern", with the default {@link ProbCut} parameters. Those were
+     * fitted on one set of pattern weights, so "eval=simple", or weights they were not fitted on, search without
+     * ProbCut and cannot take a threshold. A string starting with "mcts" makes a single-threaded Monte Carlo bot
+     * instead, with any of "time=MS", "playouts=N", "nodes=N", "solve=EMPTIES" and "priors=on|off" after it; the
+     * defaults are
+     * "mcts,time=0,playouts=10000,nodes=1000000,solve=12,priors=on".
+     * @param config The configuration.
+     * @return A new bot with its own search engine.
+     */
+    public static BotPlayer createBot(String config) {
+        if (config.equals("heuristic")) {
+            return new BotPlayer(null);
+        }
+        if (config.startsWith("mcts")) {
+            return createMctsBot(config);
+        }
+        int depth = 6;
+        long timeMillis = 0;
+        int hashMb = 16;
+        int solve = 12;
+        PatternWeights weights = PatternWeights.defaultWeights();
+        String probCut = null;
+        for (String setting : config.split(",")) {
+            String[] pair = setting.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value in bot configuration: " + config);
+            }
+            switch (pair[0].trim()) {
+                case "depth":
+                    depth = Integer.parseInt(pair[1].trim());
+                    break;
+                case "time":
+                    timeMillis = Long.parseLong(pair[1].trim());
+                    break;
+                case "hash":
+                    hashMb = Integer.parseInt(pair[1].trim());
+                    break;
+                case "solve":
+                    solve = Integer.parseInt(pair[1].trim());
+                    break;
+                case "eval":
+                    weights = pair[1].trim().equals("simple") ? null : PatternWeights.defaultWeights();
+                    break;
+                case "probcut":
+                    probCut = pair[1].trim();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown bot setting '" + pair[0] + "' in " + config);
+            }
+        }
+        SearchEngine engine = new SearchEngine(depth, timeMillis, hashMb, 1, weights);
+        if ("off".equals(probCut)) {
+            engine.setProbCut(null);
+        }
+        else if (probCut != null) {
+            ProbCut fitted = weights != null ? ProbCut.defaultParameters(weights) : null;
+            if (fitted == null) {
+                throw new IllegalArgumentException("No ProbCut parameters are fitted for this evaluation: " + config);
+            }
+            engine.setProbCut(fitted.withThreshold(Double.parseDouble(probCut)));
+        }
+        return new BotPlayer(engine, solve);
+    }
+
+    private static BotPlayer createMctsBot(String config) {
+        long timeMillis = 0;
+        long playouts = 10000;
+        int nodes = 1000000;
+        int solve = 12;
+        boolean priors = true;
+        String[] settings = config.split(",");
+        if (!settings[0].trim().equals("mcts")) {
+            throw new IllegalArgumentException("Expected mcts first in bot configuration: " + config);
+        }
+        for (int i = 1; i < settings.length; i++) {
+            String[] pair = settings[i].split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value in bot configuration: " + config);
+            }
+            switch (pair[0].trim()) {
+                case "time":
+                    timeMillis = Long.parseLong(pair[1].trim());
+                    break;
+                case "playouts":
+                    playouts = Long.parseLong(pair[1].trim());
+                    break;
+                case "nodes":
+                    nodes = Integer.parseInt(pair[1].trim());
+                    break;
+                case "solve":
+                    solve = Integer.parseInt(pair[1].trim());
+                    break;
+                case "priors":
+                    priors = !pair[1].trim().equals("off");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown bot setting '" + pair[0] + "' in " + config);
+            }
+        }
+        MctsEngine mcts = new MctsEngine(timeMillis, nodes, 1);
+        mcts.setPlayoutLimit(playouts);
+        mcts.setPriors(priors);
+        return new BotPlayer(mcts, solve);
+    }
+
+    /**
+     * Plays the tournament and prints progress and the final report.
+     */
+    public void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Worker[] workers = new Worker[threads];
+        Future<?>[] futures = new Future<?>[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+            futures[i] = pool.submit(workers[i]);
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Tournament game failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Latencies latencyA = new Latencies();
+        Latencies latencyB = new Latencies();
+        for (Worker worker : workers) {
+            latencyA.addAll(worker.latencyA);
+            latencyB.addAll(worker.latencyB);
+        }
+        report(elapsed, latencyA, latencyB);
+        if (statsFile != null) {
+            String json = "{\"A\": " + statsA.snapshot().toJson() + ",\n \"B\": " + statsB.snapshot().toJson() + "}\n";
+            try {
+                Files.write(statsFile, json.getBytes(StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                System.err.println("Cannot write " + statsFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records the result of one game and checks whether the test can stop.
+     * @param marginA The final disc margin of the first bot.
+     */
+    private void record(int marginA) {
+        if (marginA > 0) {
+            winsA.incrementAndGet();
+        }
+        else if (marginA < 0) {
+            lossesA.incrementAndGet();
+        }
+        else {
+            draws.incrementAndGet();
+        }
+        int count = played.incrementAndGet();
+        if (count % 100 == 0) {
+            System.out.printf("%d games: +%d =%d -%d%n", count, winsA.get(), draws.get(), lossesA.get());
+        }
+        if (!Double.isNaN(sprtElo0) && !stopped) {
+            double llr = llr(winsA.get(), draws.get(), lossesA.get(), sprtElo0, sprtElo1);
+            double lower = Math.log(0.05 / 0.95);
+            double upper = Math.log(0.95 / 0.05);
+            if (llr >= upper || llr <= lower) {
+                synchronized (this) {
+                    if (!stopped) {
+                        sprtDecision = String.format("%s after %d games (LLR %.2f)",
+                                llr >= upper ? "H1 accepted" : "H0 accepted", count, llr);
+                        stopped = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void report(long elapsedNanos, Latencies latencyA, Latencies latencyB) {
+        int w = winsA.get();
+        int d = draws.get();
+        int l = lossesA.get();
+        int n = w + d + l;
+        System.out.println("A: " + configA);
+        System.out.println("B: " + configB);
+        System.out.printf("games %d: A +%d =%d -%d%n", n, w, d, l);
+        if (n > 0) {
+            double score = (w + 0.5 * d) / n;
+            double variance = (w * Math.pow(1 - score, 2) + d * Math.pow(0.5 - score, 2) + l * Math.pow(score, 2)) / n;
+            double margin = 1.96 * Math.sqrt(variance / n);
+            System.out.printf("score %.1f%% +- %.1f%%, Elo %s [%s, %s]%n", score * 100, margin * 100,
+                    formatElo(elo(score)), formatElo(elo(score - margin)), formatElo(elo(score + margin)));
+        }
+        if (sprtDecision != null) {
+            System.out.println("SPRT: " + sprtDecision);
+        }
+        else if (!Double.isNaN(sprtElo0)) {
+            System.out.printf("SPRT: no decision (LLR %.2f)%n", llr(w, d, l, sprtElo0, sprtElo1));
+        }
+        System.out.printf("%.1f s, %.2f games/s on %d threads%n", elapsedNanos / 1e9, n * 1e9 / elapsedNanos, threads);
+        System.out.println("move time ms      moves     p50     p90     p99     max");
+        latencyA.print("A");
+        latencyB.print("B");
+    }
+
+    /**
+     * Converts an expected score to an Elo difference.
+     */
+    private static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static String formatElo(double elo) {
+        return Double.isInfinite(elo) ? (elo > 0 ? "+inf" : "-inf") : String.format("%+.0f", elo);
+    }
+
+    /**
+     * Computes the log-likelihood ratio of the results under two Elo hypotheses, using the normal approximation of
+     * the game score.
+     */
+    static double llr(int wins, int draws, int losses, double elo0, double elo1) {
+        int n = wins + draws + losses;
+        if (n == 0) {
+            return 0;
+        }
+        double score = (wins + 0.5 * draws) / n;
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + losses * Math.pow(score, 2)) / n;
+        if (variance == 0) {
+            return 0;
+        }
+        double s0 = 1 / (1 + Math.pow(10, -elo0 / 400));
+        double s1 = 1 / (1 + Math.pow(10, -elo1 / 400));
+        return n * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+    }
+
+    /**
+     * Plays games until the tournament has enough of them, with one pair of bots and one board.
+     */
+    private class Worker implements Runnable {
+        private final BotPlayer botA = createBot(configA);
+        private final BotPlayer botB = createBot(configB);
+        private final Latencies latencyA = new Latencies();
+        private final Latencies latencyB = new Latencies();
+
+        Worker() {
+            botA.setStats(statsA);
+            botB.setStats(statsB);
+        }
+
+        @Override
+        public void run() {
+            for (int game = nextGame.getAndIncrement(); game < games && !stopped; game = nextGame.getAndIncrement()) {
+                // Both games of a pair share an opening; the first bot is white in the even one.
+                Othello othello = SmpBenchmark.randomPosition(new Random(seed + game / 2), openingPlies);
+                boolean aIsWhite = (game & 1) == 0;
+                while (!othello.isGameOver()) {
+                    if (othello.legalMoves() == 0) {
+                        othello.pass();
+                        continue;
+                    }
+                    boolean aToMove = othello.returnPlayer() == aIsWhite;
+                    long moveStart = System.nanoTime();
+                    int[] move = (aToMove ? botA : botB).chooseMove(othello);
+                    (aToMove ? latencyA : latencyB).add(System.nanoTime() - moveStart);
+                    othello.makeMove(move[0], move[1]);
+                }
+                int[] scores = othello.returnFinalScores();
+                record(aIsWhite ? scores[0] - scores[1] : scores[1] - scores[0]);
+            }
+        }
+    }
+
+    /**
+     * A growable list of move times in nanoseconds.
+     */
+    private static class Latencies {
+        private long[] nanos = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = value;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.nanos[i]);
+            }
+        }
+
+        void print(String name) {
+            if (size == 0) {
+                System.out.printf("%-12s %10d%n", name, 0);
+                return;
+            }
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            System.out.printf("%-12s %10d %7.2f %7.2f %7.2f %7.2f%n", name, size, percentile(sorted, 0.5),
+                    percentile(sorted, 0.9), percentile(sorted, 0.99), sorted[size - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double fraction) {
+            return sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))] / 1e6;
+        }
+    }
+
+    /**
+     * Runs a tournament from the command line.
+     * @param args "-a CONFIG" and "-b CONFIG" for the two bots (see {@link #createBot(String)}; defaults "depth=4" and
+     *             "heuristic"), "-games N" (default 200), "-threads N" (default all cores), "-opening-plies N"
+     *             (default 4), "-seed N", "-sprt ELO0 ELO1" to stop early once the test decides and "-stats FILE"
+     *             to write the engine statistics of both bots as JSON.
+     */
+    public static void main(String[] args) {
+        String configA = "depth=4";
+        String configB = "heuristic";
+        int games = 200;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingPlies = 4;
+        long seed = 1;
+        double elo0 = Double.NaN;
+        double elo1 = 0;
+        Path statsFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-a":
+                    configA = args[++i];
+                    break;
+                case "-b":
+                    configB = args[++i];
+                    break;
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-opening-plies":
+                    openingPlies = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-sprt":
+                    elo0 = Double.parseDouble(args[++i]);
+                    elo1 = Double.parseDouble(args[++i]);
+                    break;
+                case "-stats":
+                    statsFile = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Tournament tournament = new Tournament(configA, configB, games, threads, openingPlies, seed);
+        if (!Double.isNaN(elo0)) {
+            tournament.setSprt(elo0, elo1);
+        }
+        tournament.setStatsFile(statsFile);
+        tournament.run();
+    }
+}
@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fits the {@link PatternWeights} to a file of scored positions by mini-batch gradient descent on the squared error.
+ * <p>
+ * The positions are streamed from disk one chunk at a time and shuffled within the chunk, so the file can be far larger
+ * than the heap. Each mini-batch is split across a fixed pool of threads, which read the pattern codes of their
+ * positions and the error of the current weights in parallel; the updates are then applied in one pass. Every table
+ * entry moves by the learning rate times its mean error over the batch, so rare patterns learn as fast as common ones.
+ * One position in {@link #VALIDATION_INTERVAL} is held out to measure the error on positions the weights were not
+ * fitted to.
+ */
+public class Trainer {
+    /** One position in this many is used for validation instead of training. */
+    static final int VALIDATION_INTERVAL = 16;
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int FEATURES = PatternEvaluator.PATTERNS.length;
+
+    private final int threads;
+    private final int batchSize;
+    private final double learningRate;
+    private final int[] typeOffsets = new int[PatternEvaluator.TYPES];
+    private final int stageSize;
+    private final float[] weights;
+    private final float[] mobilityWeights = new float[PatternWeights.STAGES];
+    private final float[] errorSums;
+    private final int[] counts;
+    private final int[] touched;
+    private final double[] mobilityErrorSums = new double[PatternWeights.STAGES];
+    private final double[] mobilitySquares = new double[PatternWeights.STAGES];
+    // Per-position results of the parallel phase of a mini-batch.
+    private final int[] indices;
+    private final int[] mobilities;
+    private final int[] stages;
+    private final float[] errors;
+    private final ExecutorService pool;
+
+    /**
+     * Constructor for a trainer that starts from a set of weights.
+     * @param initial The weights to start from.
+     * @param threads The number of threads to compute errors on.
+     * @param batchSize The number of positions in a mini-batch.
+     * @param learningRate The fraction of its mean error each table entry moves by per mini-batch.
+     */
+    public Trainer(PatternWeights initial, int threads, int batchSize, double learningRate) {
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.learningRate = learningRate;
+        int size = 0;
+        for (int type = 0; type < PatternEvaluator.TYPES; type++) {
+            typeOffsets[type] = size;
+            size += PatternEvaluator.TYPE_SIZES[type];
+        }
+        stageSize = size;
+        weights = new float[PatternWeights.STAGES * stageSize];
+        for (int stage = 0; stage < PatternWeights.STAGES; stage++) {
+            short[][] tables = initial.tables(stage);
+            for (int type = 0; type < PatternEvaluator.TYPES; type++) {
+                for (int code = 0; code < tables[type].length; code++) {
+                    weights[stage * stageSize + typeOffsets[type] + code] = tables[type][code];
+                }
+            }
+            mobilityWeights[stage] = initial.mobilityWeight(stage);
+        }
+        errorSums = new float[weights.length];
+        counts = new int[weights.length];
+        touched = new int[batchSize * FEATURES];
+        indices = new int[batchSize * FEATURES];
+        mobilities = new int[batchSize];
+        stages = new int[batchSize];
+        errors = new float[batchSize];
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Runs one pass over a training file.
+     * @param reader The file to train on. It is rewound first.
+     * @param random The source of the shuffle within each chunk.
+     * @return The root mean squared error of the training and validation positions during the pass, in discs.
+     * @throws IOException If the file cannot be read.
+     */
+    public double[] epoch(TrainingPositions.Reader reader, Random random) throws IOException {
+        reader.rewind();
+        int[] order = new int[CHUNK_SIZE];
+        long[] batchPlayers = new long[batchSize];
+        long[] batchOpponents = new long[batchSize];
+        int[] batchScores = new int[batchSize];
+        double trainSquares = 0;
+        double validationSquares = 0;
+        long trainCount = 0;
+        long validationCount = 0;
+        long position = 0;
+        for (int count = reader.next(); count > 0; count = reader.next()) {
+            int trainSize = 0;
+            for (int i = 0; i < count; i++, position++) {
+                if (position % VALIDATION_INTERVAL == 0) {
+                    double error = reader.scores[i] - predict(reader.players[i], reader.opponents[i]);
+                    validationSquares += error * error;
+                    validationCount++;
+                }
+                else {
+                    order[trainSize++] = i;
+                }
+            }
+            for (int i = trainSize - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            for (int start = 0; start < trainSize; start += batchSize) {
+                int size = Math.min(batchSize, trainSize - start);
+                for (int i = 0; i < size; i++) {
+                    int index = order[start + i];
+                    batchPlayers[i] = reader.players[index];
+                    batchOpponents[i] = reader.opponents[index];
+                    batchScores[i] = reader.scores[index];
+                }
+                trainSquares += step(batchPlayers, batchOpponents, batchScores, size);
+                trainCount += size;
+            }
+        }
+        return new double[] {
+                Math.sqrt(trainSquares / Math.max(1, trainCount)) / Evaluation.DISC,
+                Math.sqrt(validationSquares / Math.max(1, validationCount)) / Evaluation.DISC
+        };
+    }
+
+    /**
+     * Takes one gradient step on a mini-batch.
+     * @return The sum of the squared errors of the batch before the step.
+     */
+    private double step(long[] players, long[] opponents, int[] scores, int size) {
+        List<Callable<Double>> tasks = new ArrayList<>(threads);
+        int slice = (size + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = t * slice;
+            int to = Math.min(size, from + slice);
+            if (from < to) {
+                tasks.add(() -> computeErrors(players, opponents, scores, from, to));
+            }
+        }
+        double squares = 0;
+        try {
+            for (Future<Double> future : pool.invokeAll(tasks)) {
+                squares += future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return squares;
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Training step failed", e.getCause());
+        }
+
+        int touchedCount = 0;
+        for (int i = 0; i < size; i++) {
+            float error = errors[i];
+            for (int f = i * FEATURES; f < (i + 1) * FEATURES; f++) {
+                int index = indices[f];
+                if (counts[index]++ == 0) {
+                    touched[touchedCount++] = index;
+                }
+                errorSums[index] += error;
+            }
+            mobilityErrorSums[stages[i]] += error * mobilities[i];
+            mobilitySquares[stages[i]] += mobilities[i] * mobilities[i];
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            int index = touched[i];
+            weights[index] += (float) (learningRate * errorSums[index] / counts[index]);
+            errorSums[index] = 0;
+            counts[index] = 0;
+        }
+        for (int stage = 0; stage < PatternWeights.STAGES; stage++) {
+            if (mobilitySquares[stage] > 0) {
+                mobilityWeights[stage] += (float) (learningRate * mobilityErrorSums[stage] / mobilitySquares[stage]);
+            }
+            mobilityErrorSums[stage] = 0;
+            mobilitySquares[stage] = 0;
+        }
+        return squares;
+    }
+
+    /**
+     * Reads the features of part of a mini-batch and its errors under the current weights.
+     * @return The sum of the squared errors.
+     */
+    private double computeErrors(long[] players, long[] opponents, int[] scores, int from, int to) {
+        int[] codes = new int[FEATURES];
+        double squares = 0;
+        for (int i = from; i < to; i++) {
+            int stage = PatternWeights.stage(Long.bitCount(~(players[i] | opponents[i])));
+            int mobility = Long.bitCount(Bitboard.legalMoves(players[i], opponents[i]))
+                    - Long.bitCount(Bitboard.legalMoves(opponents[i], players[i]));
+            PatternEvaluator.codes(players[i], opponents[i], codes);
+            float prediction = mobilityWeights[stage] * mobility;
+            for (int f = 0; f < FEATURES; f++) {
+                int index = stage * stageSize + typeOffsets[PatternEvaluator.PATTERN_TYPES[f]] + codes[f];
+                indices[i * FEATURES + f] = index;
+                prediction += weights[index];
+            }
+            float error = scores[i] - prediction;
+            errors[i] = error;
+            stages[i] = stage;
+            mobilities[i] = mobility;
+            squares += (double) error * error;
+        }
+        return squares;
+    }
+
+    /**
+     * Evaluates a position with the current weights, without rounding or clamping.
+     */
+    private float predict(long player, long opponent) {
+        int[] codes = new int[FEATURES];
+        int stage = PatternWeights.stage(Long.bitCount(~(player | opponent)));
+        int mobility = Long.bitCount(Bitboard.legalMoves(player, opponent))
+                - Long.bitCount(Bitboard.legalMoves(opponent, player));
+        PatternEvaluator.codes(player, opponent, codes);
+        float prediction = mobilityWeights[stage] * mobility;
+        for (int f = 0; f < FEATURES; f++) {
+            prediction += weights[stage * stageSize + typeOffsets[PatternEvaluator.PATTERN_TYPES[f]] + codes[f]];
+        }
+        return prediction;
+    }
+
+    /**
+     * Rounds the current weights to the form the evaluator uses.
+     * @return The trained weights.
+     */
+    public PatternWeights returnWeights() {
+        short[][][] tables = new short[PatternWeights.STAGES][PatternEvaluator.TYPES][];
+        int[] mobility = new int[PatternWeights.STAGES];
+        for (int stage = 0; stage < PatternWeights.STAGES; stage++) {
+            for (int type = 0; type < PatternEvaluator.TYPES; type++) {
+                short[] table = new short[PatternEvaluator.TYPE_SIZES[type]];
+                for (int code = 0; code < table.length; code++) {
+                    float weight = weights[stage * stageSize + typeOffsets[type] + code];
+                    table[code] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(weight)));
+                }
+                tables[stage][type] = table;
+            }
+            mobility[stage] = Math.round(mobilityWeights[stage]);
+        }
+        return new PatternWeights(tables, mobility);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Trains weights from the command line.
+     * @param args "-in FILE" for the positions (default positions.bin), "-out FILE" for the weights (default
+     *             weights.bin), "-init FILE" for weights to start from (default the bot's current weights), "-epochs N"
+     *             (default 10), "-batch N" (default 4096), "-rate R" (default 0.02) and "-threads N" (default all
+     *             cores).
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path in = Paths.get("positions.bin");
+        Path out = Paths.get(PatternWeights.DEFAULT_FILE);
+        Path init = null;
+        int epochs = 10;
+        int batch = 4096;
+        double rate = 0.02;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-in":
+                    in = Paths.get(args[++i]);
+                    break;
+                case "-out":
+                    out = Paths.get(args[++i]);
+                    break;
+                case "-init":
+                    init = Paths.get(args[++i]);
+                    break;
+                case "-epochs":
+                    epochs = Integer.parseInt(args[++i]);
+                    break;
+                case "-batch":
+                    batch = Integer.parseInt(args[++i]);
+                    break;
+                case "-rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        PatternWeights initial = init != null ? PatternWeights.load(init) : PatternWeights.defaultWeights();
+        Trainer trainer = new Trainer(initial, threads, batch, rate);
+        System.out.printf("%d positions, %d threads%n", TrainingPositions.count(in), threads);
+        System.out.println("epoch  train rmse  validation rmse  time s");
+        Random random = new Random(1);
+        try (TrainingPositions.Reader reader = new TrainingPositions.Reader(in, CHUNK_SIZE)) {
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                long start = System.nanoTime();
+                double[] rmse = trainer.epoch(reader, random);
+                System.out.printf("%5d %11.3f %16.3f %7.1f%n", epoch, rmse[0], rmse[1],
+                        (System.nanoTime() - start) / 1e9);
+            }
+        }
+        finally {
+            trainer.shutdown();
+        }
+        trainer.returnWeights().save(out);
+        System.out.println("Wrote " + out);
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates training positions by self-play. Each game starts with a few random moves and is then played by a
+ * shallow-searching {@link BotPlayer}, with an occasional random move so the games cover more than the bot's favourite
+ * lines. Every position where the player to move has a choice is scored by a deeper search, or solved exactly once few
+ * enough squares are empty, and appended to a {@link TrainingPositions} file as soon as its game ends.
+ * <p>
+ * Games are played on a fixed pool of threads, each with its own bot, search engine and solver.
+ */
+public class TrainingGenerator {
+    private final int games;
+    private final int threads;
+    private final int playDepth;
+    private final int labelDepth;
+    private final int solveEmpties;
+    private final int randomPlies;
+    private final double randomMoveRate;
+    private final long seed;
+    private final AtomicInteger nextGame = new AtomicInteger();
+
+    /**
+     * Constructor for a generator.
+     * @param games The number of games to play.
+     * @param threads The number of games to play at once.
+     * @param playDepth The search depth the games are played at.
+     * @param labelDepth The search depth positions are scored at.
+     * @param solveEmpties The number of empty squares at or below which positions are solved exactly.
+     * @param randomPlies The number of random moves each game starts with.
+     * @param randomMoveRate The chance of playing a random move instead of the bot's move afterwards.
+     * @param seed The seed of the random moves.
+     */
+    public TrainingGenerator(int games, int threads, int playDepth, int labelDepth, int solveEmpties, int randomPlies,
+                             double randomMoveRate, long seed) {
+        this.games = games;
+        this.threads = threads;
+        this.playDepth = playDepth;
+        this.labelDepth = labelDepth;
+        this.solveEmpties = solveEmpties;
+        this.randomPlies = randomPlies;
+        this.randomMoveRate = randomMoveRate;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays the games and writes their scored positions.
+     * @param out The writer to append the positions to.
+     * @throws IOException If the positions cannot be written.
+     */
+    public void generate(TrainingPositions.Writer out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Future<?>[] futures = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            futures[i] = pool.submit(() -> {
+                playGames(out);
+                return null;
+            });
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Training game failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void playGames(TrainingPositions.Writer out) throws IOException {
+        PatternWeights weights = PatternWeights.defaultWeights();
+        BotPlayer bot = new BotPlayer(new SearchEngine(playDepth, 0, 16, 1, weights), 0);
+        SearchEngine labeller = new SearchEngine(labelDepth, 0, 32, 1, weights);
+        EndgameSolver solver = new EndgameSolver(16);
+        long[] players = new long[Searcher.MAX_PLY];
+        long[] opponents = new long[Searcher.MAX_PLY];
+        int[] scores = new int[Searcher.MAX_PLY];
+        for (int game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+            Random random = new Random(seed + game);
+            Othello othello = SmpBenchmark.randomPosition(random, randomPlies);
+            int count = 0;
+            while (!othello.isGameOver()) {
+                long moves = othello.legalMoves();
+                if (moves == 0) {
+                    othello.pass();
+                    continue;
+                }
+                boolean white = othello.returnPlayer();
+                players[count] = white ? othello.returnWhiteDiscs() : othello.returnBlackDiscs();
+                opponents[count] = white ? othello.returnBlackDiscs() : othello.returnWhiteDiscs();
+                int empties = Long.bitCount(~(players[count] | opponents[count]));
+                scores[count] = empties <= solveEmpties ? solver.solve(othello, true).returnScore()
+                        : labeller.search(othello).returnScore();
+                count++;
+
+                int square = random.nextDouble() < randomMoveRate
+                        ? Bitboard.nthSquare(moves, random.nextInt(Long.bitCount(moves)))
+                        : bot.chooseSquare(othello);
+                othello.makeMove(square >>> 3, square & 7);
+            }
+            for (int i = 0; i < count; i++) {
+                out.write(players[i], opponents[i], scores[i]);
+            }
+            if ((game + 1) % 100 == 0) {
+                System.out.printf("%d games, %d positions%n", game + 1, out.returnCount());
+            }
+        }
+    }
+
+    /**
+     * Generates training positions from the command line.
+     * @param args "-games N" (default 1000), "-out FILE" (default positions.bin, appended to), "-threads N" (default
+     *             all cores), "-play-depth N" (default 4), "-label-depth N" (default 8), "-solve EMPTIES" (default
+     *             14), "-random-plies N" (default 8), "-random-rate P" (default 0.1) and "-seed N".
+     * @throws IOException If the positions cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int games = 1000;
+        Path out = Paths.get("positions.bin");
+        int threads = Runtime.getRuntime().availableProcessors();
+        int playDepth = 4;
+        int labelDepth = 8;
+        int solveEmpties = 14;
+        int randomPlies = 8;
+        double randomRate = 0.1;
+        long seed = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "-out":
+                    out = Paths.get(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-play-depth":
+                    playDepth = Integer.parseInt(args[++i]);
+                    break;
+                case "-label-depth":
+                    labelDepth = Integer.parseInt(args[++i]);
+                    break;
+                case "-solve":
+                    solveEmpties = Integer.parseInt(args[++i]);
+                    break;
+                case "-random-plies":
+                    randomPlies = Integer.parseInt(args[++i]);
+                    break;
+                case "-random-rate":
+                    randomRate = Double.parseDouble(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        long start = System.nanoTime();
+        try (TrainingPositions.Writer writer = new TrainingPositions.Writer(out)) {
+            new TrainingGenerator(games, threads, playDepth, labelDepth, solveEmpties, randomPlies, randomRate, seed)
+                    .generate(writer);
+            System.out.printf("Wrote %d positions to %s in %.1f s%n", writer.returnCount(), out,
+                    (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of scored positions for training the pattern weights, read and written as a stream so it never has to fit in
+ * memory.
+ * <p>
+ * The file is a 4-byte magic number followed by 18-byte records until the end of the file: the pieces of the player
+ * to move, the pieces of the other player, and the position's score for the player to move in hundredths of a disc.
+ * Files can be appended to and concatenated after the header.
+ */
+public class TrainingPositions {
+    static final int MAGIC = 0x4F545031;
+    static final int RECORD_BYTES = 18;
+
+    private TrainingPositions() {
+    }
+
+    /**
+     * Appends scored positions to a file, writing the header first if the file is new.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private long count;
+
+        /**
+         * Constructor for a writer that appends to a file.
+         * @param file The file to write. It is created if it does not exist.
+         * @throws IOException If the file cannot be opened or is not a training file.
+         */
+        public Writer(Path file) throws IOException {
+            boolean exists = Files.isRegularFile(file) && Files.size(file) > 0;
+            if (exists) {
+                checkHeader(file);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+            if (!exists) {
+                out.writeInt(MAGIC);
+            }
+        }
+
+        /**
+         * Writes one position.
+         * @param player The pieces of the player to move.
+         * @param opponent The pieces of the other player.
+         * @param score The score for the player to move, in hundredths of a disc.
+         * @throws IOException If the position cannot be written.
+         */
+        public synchronized void write(long player, long opponent, int score) throws IOException {
+            out.writeLong(player);
+            out.writeLong(opponent);
+            out.writeShort(Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score)));
+            count++;
+        }
+
+        /**
+         * Returns the number of positions written so far.
+         * @return The count of this writer, not counting positions already in the file.
+         */
+        public synchronized long returnCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a file one chunk of positions at a time into arrays that are reused between chunks.
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        /** The players to move of the current chunk. */
+        final long[] players;
+        /** The other players of the current chunk. */
+        final long[] opponents;
+        /** The scores of the current chunk. */
+        final short[] scores;
+
+        /**
+         * Constructor for a reader.
+         * @param file The file to read.
+         * @param chunkSize The most positions to read at a time.
+         * @throws IOException If the file cannot be opened or is not a training file.
+         */
+        public Reader(Path file, int chunkSize) throws IOException {
+            checkHeader(file);
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(4);
+            buffer = ByteBuffer.allocateDirect(chunkSize * RECORD_BYTES);
+            players = new long[chunkSize];
+            opponents = new long[chunkSize];
+            scores = new short[chunkSize];
+        }
+
+        /**
+         * Reads the next chunk into {@link #players}, {@link #opponents} and {@link #scores}.
+         * @return The number of positions read, or 0 at the end of the file.
+         * @throws IOException If the file cannot be read.
+         */
+        public int next() throws IOException {
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the chunk is full or the file ends.
+            }
+            buffer.flip();
+            int count = buffer.remaining() / RECORD_BYTES;
+            for (int i = 0; i < count; i++) {
+                players[i] = buffer.getLong();
+                opponents[i] = buffer.getLong();
+                scores[i] = buffer.getShort();
+            }
+            return count;
+        }
+
+        /**
+         * Goes back to the first position, to read the file again.
+         * @throws IOException If the file cannot be read.
+         */
+        public void rewind() throws IOException {
+            channel.position(4);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Counts the positions in a file without reading them.
+     * @param file The training file.
+     * @return The number of complete records.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long count(Path file) throws IOException {
+        return (Files.size(file) - 4) / RECORD_BYTES;
+    }
+
+    private static void checkHeader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new EOFException(file + " is too short to be a training file");
+                }
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not a training file");
+            }
+        }
+    }
+}
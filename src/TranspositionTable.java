@@ -0,0 +1,193 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table stored in two primitive arrays, shared by every search thread without locks.
+ * <p>
+ * Each entry is a pair of longs: the packed data (score, depth, bound, best move and generation) and the hash XOR the
+ * data. A reader recomputes the hash from both words, so an entry that was torn by two threads writing at once simply
+ * fails to match instead of returning another position's data. Entries are grouped in buckets of two; a store
+ * replaces the entry of the same position if there is one, otherwise the entry from the oldest search, then the
+ * shallowest one.
+ */
+public class TranspositionTable {
+    /** The score is at most the stored value. */
+    public static final int UPPER_BOUND = 1;
+    /** The score is at least the stored value. */
+    public static final int LOWER_BOUND = 2;
+    /** The score is exactly the stored value. */
+    public static final int EXACT = 3;
+    /** Returned by {@link #probe(long)} when the position is not in the table. */
+    public static final long MISS = 0;
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final int NO_MOVE = 127;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private volatile int generation;
+
+    /**
+     * Constructor for a table using about a given amount of memory.
+     * @param sizeMb The memory to use in megabytes. The number of entries is rounded down to a power of two.
+     */
+    public TranspositionTable(int sizeMb) {
+        if (sizeMb < 1) {
+            throw new IllegalArgumentException("sizeMb must be at least 1");
+        }
+        long entries = Long.highestOneBit(sizeMb * (1L << 20) / BYTES_PER_ENTRY);
+        entries = Math.min(entries, 1L << 30);
+        keys = new long[(int) entries];
+        data = new long[(int) entries];
+        mask = (int) entries - 2;
+    }
+
+    /**
+     * Marks the start of a new search, so entries from earlier searches are replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Looks up a position.
+     * @param hash The Zobrist hash of the position.
+     * @return The packed entry, to be read with {@link #score(long)}, {@link #depth(long)}, {@link #bound(long)} and
+     * {@link #move(long)}, or {@link #MISS}.
+     */
+    public long probe(long hash) {
+        int index = (int) hash & mask;
+        long d = data[index];
+        if ((keys[index] ^ d) == hash && d != MISS) {
+            return d;
+        }
+        d = data[index + 1];
+        if ((keys[index + 1] ^ d) == hash && d != MISS) {
+            return d;
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     * @param hash The Zobrist hash of the position.
+     * @param depth The depth the position was searched to.
+     * @param bound {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}.
+     * @param score The score found.
+     * @param move The best move found, or -1 if there is none.
+     */
+    public void store(long hash, int depth, int bound, int score, int move) {
+        int index = (int) hash & mask;
+        int slot;
+        long first = data[index];
+        long second = data[index + 1];
+        if ((keys[index] ^ first) == hash) {
+            slot = index;
+        }
+        else if ((keys[index + 1] ^ second) == hash) {
+            slot = index + 1;
+        }
+        else {
+            slot = priority(first) <= priority(second) ? index : index + 1;
+        }
+        long entry = pack(depth, bound, score, move, generation);
+        data[slot] = entry;
+        keys[slot] = hash ^ entry;
+    }
+
+    /**
+     * Returns how valuable an entry is to keep; empty and stale entries are worth the least.
+     */
+    private int priority(long entry) {
+        if (entry == MISS) {
+            return Integer.MIN_VALUE;
+        }
+        int age = (generation - generation(entry)) & 0xFF;
+        return depth(entry) - 8 * age;
+    }
+
+    /**
+     * Returns how full the table is, sampled from its first thousand entries.
+     * @return The fraction of sampled entries written during the current search, in permille.
+     */
+    public int hashFull() {
+        int sample = Math.min(1000, data.length);
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            if (data[i] != MISS && generation(data[i]) == generation) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    /**
+     * Returns the number of entries in the table.
+     * @return The capacity of the table.
+     */
+    public int capacity() {
+        return data.length;
+    }
+
+    /**
+     * Packs the fields of an entry into the word {@link #probe(long)} returns. The entry uses the low 41 bits.
+     * @param move The best move, or -1 if there is none.
+     * @param generation The search, or for {@link AnalysisCache} the run, that stored the entry.
+     */
+    static long pack(int depth, int bound, int score, int move, int generation) {
+        return (score & 0xFFFFL)
+                | ((long) (depth & 0xFF) << 16)
+                | ((long) bound << 24)
+                | ((long) (move < 0 ? NO_MOVE : move) << 26)
+                | ((long) generation << 33);
+    }
+
+    /**
+     * Reads the score of an entry.
+     * @param entry An entry returned by {@link #probe(long)}.
+     * @return The stored score.
+     */
+    public static int score(long entry) {
+        return (short) entry;
+    }
+
+    /**
+     * Reads the depth of an entry.
+     * @param entry An entry returned by {@link #probe(long)}.
+     * @return The depth the position was searched to.
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    /**
+     * Reads the bound type of an entry.
+     * @param entry An entry returned by {@link #probe(long)}.
+     * @return {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}.
+     */
+    public static int bound(long entry) {
+        return (int) (entry >>> 24) & 0x3;
+    }
+
+    /**
+     * Reads the best move of an entry.
+     * @param entry An entry returned by {@link #probe(long)}.
+     * @return The square of the best move, or -1 if none was stored.
+     */
+    public static int move(long entry) {
+        int move = (int) (entry >>> 26) & 0x7F;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    static int generation(long entry) {
+        return (int) (entry >>> 33) & 0xFF;
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SIMD kernels behind {@link BatchMoves}, written with the incubating Vector API. Each lane of a vector holds the
+ * bitboard of one position, so the shifts that {@link Bitboard} applies to one position are applied to a whole
+ * register of them per instruction. The kernels have no branches that depend on a position: where the scalar flip
+ * code stops walking a line at the first empty square, these walk every line its full six steps and keep the result
+ * only in the lanes where the line is closed.
+ * <p>
+ * Each direction is a separate pass over the batch with its shift operator written out, rather than one loop over
+ * all eight: the JIT only keeps vectors in registers when every operation in a loop is known when compiling, and a
+ * vector chosen between two shifts, or a loop body with every direction inlined, makes it fall back to allocating
+ * them as objects, which is slower than the scalar code.
+ * <p>
+ * This class is only loaded when the module is present, so the rest of the engine runs without it.
+ */
+final class VectorBatchMoves {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    /** Half as wide as {@link #LONGS}, so it has as many int lanes as that has long lanes. */
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+    private static final long INNER_COLUMNS = Bitboard.NOT_COLUMN_0 & Bitboard.NOT_COLUMN_7;
+    /** The four axes as shifts: vertical, horizontal and the two diagonals. Each is walked both ways. */
+    private static final int[] SHIFTS = {8, 1, 9, 7};
+    /**
+     * The squares a line along each axis can run through. Horizontal and diagonal lines cannot run through the edge
+     * columns, which also stops them wrapping from one row to the next.
+     */
+    private static final long[] LINE_MASKS = {-1L, INNER_COLUMNS, INNER_COLUMNS, INNER_COLUMNS};
+    /** The most opposing pieces a line can hold between a move and the piece that closes it. */
+    private static final int MAX_RUN = 6;
+
+    private VectorBatchMoves() {
+    }
+
+    /**
+     * Checks if the processor's vectors hold more than one position, so the kernels are worth using.
+     * @return true if a vector has at least two long lanes.
+     */
+    static boolean isUseful() {
+        return LONGS.length() >= 2;
+    }
+
+    /**
+     * Finds the legal moves of every position that fills a whole vector.
+     * @return The number of positions done; the rest are left to the scalar code.
+     */
+    static int legalMoves(long[] players, long[] opponents, long[] moves, int count) {
+        int bound = LONGS.loopBound(count);
+        Arrays.fill(moves, 0, bound, 0);
+        for (int d = 0; d < SHIFTS.length; d++) {
+            legalMovesDown(players, opponents, moves, bound, SHIFTS[d], LINE_MASKS[d]);
+            legalMovesUp(players, opponents, moves, bound, SHIFTS[d], LINE_MASKS[d]);
+        }
+        return bound;
+    }
+
+    /**
+     * Adds the legal moves along lines towards higher squares to every position. Each direction is its own pass over
+     * the batch, which keeps the loop small enough for the JIT to hold every vector in a register.
+     * @param lineMask The squares a line in this direction can run through.
+     */
+    private static void legalMovesDown(long[] players, long[] opponents, long[] moves, int bound, int shift,
+            long lineMask) {
+        for (int i = 0; i < bound; i += LONGS.length()) {
+            LongVector player = LongVector.fromArray(LONGS, players, i);
+            LongVector opponent = LongVector.fromArray(LONGS, opponents, i);
+            LongVector line = opponent.and(lineMask);
+            LongVector run = line.and(player.lanewise(VectorOperators.LSHL, shift));
+            for (int length = 1; length < MAX_RUN; length++) {
+                run = run.or(line.and(run.lanewise(VectorOperators.LSHL, shift)));
+            }
+            LongVector found = run.lanewise(VectorOperators.LSHL, shift).and(player.or(opponent).not());
+            LongVector.fromArray(LONGS, moves, i).or(found).intoArray(moves, i);
+        }
+    }
+
+    /**
+     * Adds the legal moves along lines towards lower squares to every position.
+     * @param lineMask The squares a line in this direction can run through.
+     */
+    private static void legalMovesUp(long[] players, long[] opponents, long[] moves, int bound, int shift,
+            long lineMask) {
+        for (int i = 0; i < bound; i += LONGS.length()) {
+            LongVector player = LongVector.fromArray(LONGS, players, i);
+            LongVector opponent = LongVector.fromArray(LONGS, opponents, i);
+            LongVector line = opponent.and(lineMask);
+            LongVector run = line.and(player.lanewise(VectorOperators.LSHR, shift));
+            for (int length = 1; length < MAX_RUN; length++) {
+                run = run.or(line.and(run.lanewise(VectorOperators.LSHR, shift)));
+            }
+            LongVector found = run.lanewise(VectorOperators.LSHR, shift).and(player.or(opponent).not());
+            LongVector.fromArray(LONGS, moves, i).or(found).intoArray(moves, i);
+        }
+    }
+
+    /**
+     * Finds the flips of one move in every position that fills a whole vector.
+     * @return The number of positions done; the rest are left to the scalar code.
+     */
+    static int flips(long[] players, long[] opponents, int[] squares, long[] flipped, int count) {
+        int bound = LONGS.loopBound(count);
+        Arrays.fill(flipped, 0, bound, 0);
+        for (int d = 0; d < SHIFTS.length; d++) {
+            flipsDown(players, opponents, squares, flipped, bound, SHIFTS[d], LINE_MASKS[d]);
+            flipsUp(players, opponents, squares, flipped, bound, SHIFTS[d], LINE_MASKS[d]);
+        }
+        return bound;
+    }
+
+    /**
+     * Loads the squares moved to as single-square bitboards.
+     * @param i The first position to load.
+     */
+    private static LongVector moves(int[] squares, int i) {
+        LongVector square = (LongVector) IntVector.fromArray(INTS, squares, i)
+                .convertShape(VectorOperators.I2L, LONGS, 0);
+        // A pass has no square to start from, so it starts from nothing and flips nothing.
+        return LongVector.broadcast(LONGS, 1L).lanewise(VectorOperators.LSHL, square)
+                .blend(0L, square.compare(VectorOperators.GE, Bitboard.PASS));
+    }
+
+    /**
+     * Adds the flips along lines towards higher squares to every position, keeping the run of opposing pieces next to
+     * the move only in the lanes where one of the player's pieces closes it.
+     * @param lineMask The squares a line in this direction can run through.
+     */
+    private static void flipsDown(long[] players, long[] opponents, int[] squares, long[] flipped, int bound,
+            int shift, long lineMask) {
+        for (int i = 0; i < bound; i += LONGS.length()) {
+            LongVector player = LongVector.fromArray(LONGS, players, i);
+            LongVector line = LongVector.fromArray(LONGS, opponents, i).and(lineMask);
+            LongVector run = line.and(moves(squares, i).lanewise(VectorOperators.LSHL, shift));
+            for (int length = 1; length < MAX_RUN; length++) {
+                run = run.or(line.and(run.lanewise(VectorOperators.LSHL, shift)));
+            }
+            LongVector end = run.lanewise(VectorOperators.LSHL, shift).and(player);
+            LongVector closed = run.blend(0L, end.compare(VectorOperators.EQ, 0L));
+            LongVector.fromArray(LONGS, flipped, i).or(closed).intoArray(flipped, i);
+        }
+    }
+
+    /**
+     * Adds the flips along lines towards lower squares to every position.
+     * @param lineMask The squares a line in this direction can run through.
+     */
+    private static void flipsUp(long[] players, long[] opponents, int[] squares, long[] flipped, int bound,
+            int shift, long lineMask) {
+        for (int i = 0; i < bound; i += LONGS.length()) {
+            LongVector player = LongVector.fromArray(LONGS, players, i);
+            LongVector line = LongVector.fromArray(LONGS, opponents, i).and(lineMask);
+            LongVector run = line.and(moves(squares, i).lanewise(VectorOperators.LSHR, shift));
+            for (int length = 1; length < MAX_RUN; length++) {
+                run = run.or(line.and(run.lanewise(VectorOperators.LSHR, shift)));
+            }
+            LongVector end = run.lanewise(VectorOperators.LSHR, shift).and(player);
+            LongVector closed = run.blend(0L, end.compare(VectorOperators.EQ, 0L));
+            LongVector.fromArray(LONGS, flipped, i).or(closed).intoArray(flipped, i);
+        }
+    }
+
+    /**
+     * Counts the squares of every bitboard that fills a whole vector.
+     * @return The number of bitboards done; the rest are left to the scalar code.
+     */
+    static int counts(long[] boards, int[] counts, int count) {
+        int bound = LONGS.loopBound(count);
+        for (int i = 0; i < bound; i += LONGS.length()) {
+            LongVector bits = LongVector.fromArray(LONGS, boards, i).lanewise(VectorOperators.BIT_COUNT);
+            ((IntVector) bits.convertShape(VectorOperators.L2I, INTS, 0)).intoArray(counts, i);
+        }
+        return bound;
+    }
+}
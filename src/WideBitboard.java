@@ -0,0 +1,346 @@
+/**
+ * Bitboards for square boards of any even size from 4 to 26, where one 64-bit word is not enough. A board is a long
+ * array of {@link #returnWords()} words holding one bit per square, square = row * size + column, in the same order
+ * as {@link Bitboard} uses for 8 by 8.
+ * <p>
+ * Legal moves are generated the same way as on the 8 by 8 board, by shifting whole boards at once: for each of the
+ * eight directions, the opponent pieces next to the player's are found with one shift of every word, then the line is
+ * extended one step per shift until it reaches empty squares, so the work grows with the number of words and the
+ * length of the longest line rather than with the number of squares. Every direction has a mask of the squares a step
+ * can land on, which stops lines wrapping from one edge of the board to the other.
+ */
+public final class WideBitboard {
+    /** The smallest supported board size. */
+    public static final int MIN_SIZE = 4;
+    /** The largest supported board size, the last one with a column letter for every column. */
+    public static final int MAX_SIZE = 26;
+    private static final int[][] DIRECTIONS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    private static final WideBitboard[] BY_SIZE = new WideBitboard[MAX_SIZE + 1];
+
+    private final int size;
+    private final int cells;
+    private final int words;
+    private final int[] shifts = new int[DIRECTIONS.length];
+    private final long[][] targets = new long[DIRECTIONS.length][];
+    private final long[] valid;
+    private final long[] corners;
+    private final long[] xSquares;
+    private final int[] squareWeights;
+
+    private WideBitboard(int size) {
+        this.size = size;
+        cells = size * size;
+        words = (cells + 63) >>> 6;
+        valid = new long[words];
+        corners = new long[words];
+        xSquares = new long[words];
+        squareWeights = new int[cells];
+        for (int square = 0; square < cells; square++) {
+            set(valid, square);
+        }
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            shifts[d] = DIRECTIONS[d][0] * size + DIRECTIONS[d][1];
+            targets[d] = new long[words];
+            for (int square = 0; square < cells; square++) {
+                int from = square % size - DIRECTIONS[d][1];
+                if (from >= 0 && from < size) {
+                    set(targets[d], square);
+                }
+            }
+        }
+        int last = size - 1;
+        for (int row = 0; row <= last; row += last) {
+            for (int column = 0; column <= last; column += last) {
+                int rowStep = row == 0 ? 1 : -1;
+                int columnStep = column == 0 ? 1 : -1;
+                set(corners, square(row, column));
+                set(xSquares, square(row + rowStep, column + columnStep));
+                set(xSquares, square(row + rowStep, column));
+                set(xSquares, square(row, column + columnStep));
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int region = Bitboard.square(region(row), region(column));
+                squareWeights[square(row, column)] = Evaluation.squareWeight(region);
+            }
+        }
+    }
+
+    /**
+     * Maps a row or column to the 8 by 8 one whose square weights it takes: the three lines nearest each edge keep
+     * their place, and every line further in counts as one of the middle ones.
+     */
+    private int region(int line) {
+        if (line < 3 && line < size - 1 - line) {
+            return line;
+        }
+        int fromEnd = size - 1 - line;
+        return fromEnd < 3 ? 7 - fromEnd : 3;
+    }
+
+    /**
+     * Returns the bitboard layout of a board size, creating it on first use.
+     * @param size The number of rows and columns, even and from {@link #MIN_SIZE} to {@link #MAX_SIZE}.
+     * @return The layout, shared by every board of that size.
+     */
+    public static synchronized WideBitboard forSize(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE || (size & 1) != 0) {
+            throw new IllegalArgumentException("Board size must be even and from " + MIN_SIZE + " to " + MAX_SIZE
+                    + ": " + size);
+        }
+        if (BY_SIZE[size] == null) {
+            BY_SIZE[size] = new WideBitboard(size);
+        }
+        return BY_SIZE[size];
+    }
+
+    /**
+     * Returns the number of rows and columns.
+     * @return The board size.
+     */
+    public int returnSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of squares.
+     * @return The size squared.
+     */
+    public int returnCells() {
+        return cells;
+    }
+
+    /**
+     * Returns the number of words a bitboard of this size takes.
+     * @return The length of the arrays this layout works on.
+     */
+    public int returnWords() {
+        return words;
+    }
+
+    /**
+     * Returns the square index for a row and column.
+     * @param row The row of the square.
+     * @param column The column of the square.
+     * @return The index of the square.
+     */
+    public int square(int row, int column) {
+        return row * size + column;
+    }
+
+    /**
+     * Returns the usual name of a square, with columns from a and rows from 1.
+     * @param square The index of the square, or {@link SizedOthello#PASS}.
+     * @return The name of the square, for example "j10", or "pass".
+     */
+    public String squareName(int square) {
+        if (square == SizedOthello.PASS) {
+            return "pass";
+        }
+        return "" + (char) ('a' + square % size) + (square / size + 1);
+    }
+
+    /**
+     * Returns the four corners.
+     * @return A bitboard of the corners. It must not be modified.
+     */
+    public long[] returnCorners() {
+        return corners;
+    }
+
+    /**
+     * Returns the squares next to a corner, diagonally and along the edges.
+     * @return A bitboard of those squares. It must not be modified.
+     */
+    public long[] returnXSquares() {
+        return xSquares;
+    }
+
+    /**
+     * Returns the weight of holding a square, taken from the 8 by 8 square weights by distance from the edges.
+     * @param square The index of the square.
+     * @return The value of a disc on that square, in hundredths of a disc.
+     */
+    public int squareWeight(int square) {
+        return squareWeights[square];
+    }
+
+    /**
+     * Finds the legal moves of a player.
+     * @param player The pieces of the player to move.
+     * @param opponent The pieces of the other player.
+     * @param moves Filled with the squares where the player can move.
+     * @param scratch Working space of at least twice {@link #returnWords()} words, so nothing is allocated.
+     */
+    public void legalMoves(long[] player, long[] opponent, long[] moves, long[] scratch) {
+        for (int i = 0; i < words; i++) {
+            moves[i] = 0;
+        }
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            int shift = shifts[d];
+            long[] target = targets[d];
+            // The opponent pieces next to the player's in this direction.
+            shift(player, 0, scratch, 0, shift);
+            long frontier = 0;
+            for (int i = 0; i < words; i++) {
+                scratch[i] &= opponent[i] & target[i];
+                frontier |= scratch[i];
+            }
+            // Each step past the line either reaches an empty square, a move, or extends the line.
+            while (frontier != 0) {
+                shift(scratch, 0, scratch, words, shift);
+                frontier = 0;
+                for (int i = 0; i < words; i++) {
+                    long step = scratch[words + i] & target[i];
+                    moves[i] |= step & ~(player[i] | opponent[i]);
+                    scratch[i] = step & opponent[i];
+                    frontier |= scratch[i];
+                }
+            }
+        }
+        for (int i = 0; i < words; i++) {
+            moves[i] &= valid[i];
+        }
+    }
+
+    /**
+     * Shifts a bitboard towards higher squares, or lower ones for a negative shift, by less than 64 squares.
+     */
+    private void shift(long[] from, int fromOffset, long[] to, int toOffset, int shift) {
+        if (shift > 0) {
+            int back = 64 - shift;
+            for (int i = words - 1; i > 0; i--) {
+                to[toOffset + i] = (from[fromOffset + i] << shift) | (from[fromOffset + i - 1] >>> back);
+            }
+            to[toOffset] = from[fromOffset] << shift;
+        }
+        else {
+            int right = -shift;
+            int back = 64 - right;
+            for (int i = 0; i < words - 1; i++) {
+                to[toOffset + i] = (from[fromOffset + i] >>> right) | (from[fromOffset + i + 1] << back);
+            }
+            to[toOffset + words - 1] = from[fromOffset + words - 1] >>> right;
+        }
+    }
+
+    /**
+     * Finds the opposing pieces that would be flipped by a player moving to a square. The square is assumed to be
+     * empty.
+     * @param square The index of the square moved to.
+     * @param player The pieces of the player moving.
+     * @param opponent The pieces of the other player.
+     * @param flipped Filled with the pieces the move flips.
+     * @return true if the move flips anything, and so is legal.
+     */
+    public boolean flips(int square, long[] player, long[] opponent, long[] flipped) {
+        for (int i = 0; i < words; i++) {
+            flipped[i] = 0;
+        }
+        boolean any = false;
+        int row = square / size;
+        int column = square % size;
+        for (int[] direction : DIRECTIONS) {
+            int r = row + direction[0];
+            int c = column + direction[1];
+            int count = 0;
+            while (r >= 0 && r < size && c >= 0 && c < size && get(opponent, r * size + c)) {
+                r += direction[0];
+                c += direction[1];
+                count++;
+            }
+            if (count > 0 && r >= 0 && r < size && c >= 0 && c < size && get(player, r * size + c)) {
+                any = true;
+                for (int step = 1; step <= count; step++) {
+                    set(flipped, square + step * (direction[0] * size + direction[1]));
+                }
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Checks if a square is set.
+     * @param board The bitboard.
+     * @param square The index of the square.
+     * @return true if the square's bit is set.
+     */
+    public static boolean get(long[] board, int square) {
+        return (board[square >>> 6] & (1L << square)) != 0;
+    }
+
+    /**
+     * Sets a square.
+     * @param board The bitboard.
+     * @param square The index of the square.
+     */
+    public static void set(long[] board, int square) {
+        board[square >>> 6] |= 1L << square;
+    }
+
+    /**
+     * Counts the squares that are set.
+     * @param board The bitboard.
+     * @return The number of set bits.
+     */
+    public static int count(long[] board) {
+        int count = 0;
+        for (long word : board) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Checks if no square is set.
+     * @param board The bitboard.
+     * @return true if every word is zero.
+     */
+    public static boolean isEmpty(long[] board) {
+        for (long word : board) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first set square at or after a square, to walk a bitboard in order.
+     * @param board The bitboard.
+     * @param from The index of the square to start at.
+     * @return The index of the next set square, or -1 if there is none.
+     */
+    public static int nextSquare(long[] board, int from) {
+        int i = from >>> 6;
+        if (i >= board.length) {
+            return -1;
+        }
+        long word = board[i] & (-1L << from);
+        while (word == 0) {
+            if (++i == board.length) {
+                return -1;
+            }
+            word = board[i];
+        }
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Finds the nth set square, counting from the lowest index.
+     * @param board The bitboard.
+     * @param n Which square to return, from 0 to one less than {@link #count(long[])}.
+     * @return The index of the square.
+     */
+    public static int nthSquare(long[] board, int n) {
+        for (int i = 0; i < board.length; i++) {
+            int bits = Long.bitCount(board[i]);
+            if (n < bits) {
+                return (i << 6) + Bitboard.nthSquare(board[i], n);
+            }
+            n -= bits;
+        }
+        throw new IllegalArgumentException("Not enough squares set");
+    }
+}
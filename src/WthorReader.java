@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads games from a WTHOR game file (".wtb"), decoding records straight from the file channel through a small
+ * buffer. The file is a 16-byte header followed by 68-byte game records; each record holds the tournament and player
+ * numbers, the first player's final disc count and its theoretical score, and 60 move bytes of the form
+ * 10 * row + column counted from 1, with 0 after the last move.
+ */
+public class WthorReader implements GameReader {
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 68;
+    private static final int SCORE_OFFSET = 6;
+    private static final int MOVES_OFFSET = 8;
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final long games;
+    private long read;
+    private int result = NO_RESULT;
+
+    /**
+     * Constructor for a reader of a WTHOR game file.
+     * @param file The file to read.
+     * @throws IOException If the file cannot be opened or is not an 8 by 8 WTHOR game file.
+     */
+    public WthorReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException(file + " is too short to be a WTHOR file");
+                }
+            }
+            int boardSize = header.get(12);
+            if (boardSize != 0 && boardSize != 8) {
+                throw new IOException(file + " is for a " + boardSize + " by " + boardSize + " board");
+            }
+            long declared = header.getInt(4) & 0xFFFFFFFFL;
+            long available = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+            games = Math.min(declared, available);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        buffer.limit(0);
+    }
+
+    /**
+     * Returns the number of games in the file.
+     * @return The game count from the header, or fewer if the file is truncated.
+     */
+    public long returnGameCount() {
+        return games;
+    }
+
+    @Override
+    public int next(int[] moves) throws IOException {
+        if (read == games) {
+            return -1;
+        }
+        if (buffer.remaining() < RECORD_BYTES) {
+            buffer.compact();
+            while (buffer.position() < RECORD_BYTES && channel.read(buffer) >= 0) {
+                // Read until at least one whole record is buffered.
+            }
+            buffer.flip();
+            if (buffer.remaining() < RECORD_BYTES) {
+                throw new IOException("Truncated WTHOR record " + read);
+            }
+        }
+        int start = buffer.position();
+        int count = 0;
+        for (int i = 0; i < GameReader.MAX_MOVES; i++) {
+            int move = buffer.get(start + MOVES_OFFSET + i) & 0xFF;
+            if (move == 0) {
+                break;
+            }
+            int row = move / 10 - 1;
+            int column = move % 10 - 1;
+            if (row < 0 || row > 7 || column < 0 || column > 7) {
+                throw new IOException("Bad move " + move + " in WTHOR record " + read);
+            }
+            moves[count++] = GameReader.fromStandard(row, column);
+        }
+        result = buffer.get(start + SCORE_OFFSET) & 0xFF;
+        if (result > 64) {
+            throw new IOException("Bad score " + result + " in WTHOR record " + read);
+        }
+        buffer.position(start + RECORD_BYTES);
+        read++;
+        return count;
+    }
+
+    @Override
+    public int returnResult() {
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist hashing of an Othello position. Every (square, color) pair and the side to move get a fixed random key, and
+ * the hash of a position is the XOR of the keys of everything on it, so a move updates it in a handful of XORs.
+ */
+public final class Zobrist {
+    private static final long[] WHITE_KEYS = new long[64];
+    private static final long[] BLACK_KEYS = new long[64];
+    /** XOR of the white and black key of a square: turns a piece of one color into the other. */
+    private static final long[] FLIP_KEYS = new long[64];
+    /** Included in the hash when it is white's turn. */
+    public static final long WHITE_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x0DD5EEDL);
+        for (int square = 0; square < 64; square++) {
+            WHITE_KEYS[square] = random.nextLong();
+            BLACK_KEYS[square] = random.nextLong();
+            FLIP_KEYS[square] = WHITE_KEYS[square] ^ BLACK_KEYS[square];
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Computes the hash of a position from scratch.
+     * @param white The white pieces.
+     * @param black The black pieces.
+     * @param whiteToMove true if it is white's turn.
+     * @return The Zobrist hash of the position.
+     */
+    public static long hash(long white, long black, boolean whiteToMove) {
+        long hash = whiteToMove ? WHITE_TO_MOVE : 0;
+        for (long b = white; b != 0; b &= b - 1) {
+            hash ^= WHITE_KEYS[Long.numberOfTrailingZeros(b)];
+        }
+        for (long b = black; b != 0; b &= b - 1) {
+            hash ^= BLACK_KEYS[Long.numberOfTrailingZeros(b)];
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the change in hash caused by a move, including the change of side to move.
+     * @param square The square the piece is placed on, or {@link Bitboard#PASS}.
+     * @param flipped The pieces that flip.
+     * @param white true if white is making the move.
+     * @return The value to XOR into the hash of the position before the move.
+     */
+    public static long moveDelta(int square, long flipped, boolean white) {
+        long delta = WHITE_TO_MOVE;
+        if (square != Bitboard.PASS) {
+            delta ^= white ? WHITE_KEYS[square] : BLACK_KEYS[square];
+        }
+        for (long b = flipped; b != 0; b &= b - 1) {
+            delta ^= FLIP_KEYS[Long.numberOfTrailingZeros(b)];
+        }
+        return delta;
+    }
+}